@@ -24,6 +24,16 @@ public interface Authenticator {
      */
     void destroy();
 
+    /**
+     * Register the invalidator of cached authorization results
+     * Authenticator should use it to discard cached PUBLISH and SUBSCRIBE authorization results when policies changed
+     * Default implementation ignores it, for authenticators whose policies never change
+     *
+     * @param invalidator Authorize Invalidator
+     */
+    default void registerInvalidator(AuthorizeInvalidator invalidator) {
+    }
+
     /**
      * Authorize client CONNECT
      *
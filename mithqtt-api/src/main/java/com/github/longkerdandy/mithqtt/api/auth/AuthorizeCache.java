@@ -0,0 +1,76 @@
+package com.github.longkerdandy.mithqtt.api.auth;
+
+import io.netty.handler.codec.mqtt.MqttGrantedQoS;
+import org.apache.commons.configuration.AbstractConfiguration;
+
+/**
+ * Authorize Cache
+ * Caches Authenticator's PUBLISH and SUBSCRIBE authorization results for each client session
+ */
+@SuppressWarnings("unused")
+public interface AuthorizeCache extends AuthorizeInvalidator {
+
+    /**
+     * Init the authorize cache
+     *
+     * @param config Authorize Cache Configuration
+     */
+    void init(AbstractConfiguration config);
+
+    /**
+     * Get the current invalidation generation, which changes on every invalidation
+     * Capture it before calling the Authenticator and pass it to the put methods,
+     * so a result authorized before an invalidation is never cached after it
+     *
+     * @return Generation
+     */
+    long generation();
+
+    /**
+     * Get cached PUBLISH authorization result
+     *
+     * @param clientId  Client Id
+     * @param userName  User Name
+     * @param topicName Topic Name
+     * @param qos       QoS
+     * @param retain    Retain
+     * @return Authorize Result, Null if not cached
+     */
+    AuthorizeResult getPublish(String clientId, String userName, String topicName, int qos, boolean retain);
+
+    /**
+     * Cache PUBLISH authorization result
+     *
+     * @param clientId   Client Id
+     * @param userName   User Name
+     * @param topicName  Topic Name
+     * @param qos        QoS
+     * @param retain     Retain
+     * @param result     Authorize Result
+     * @param generation Generation captured before calling the Authenticator
+     */
+    void putPublish(String clientId, String userName, String topicName, int qos, boolean retain, AuthorizeResult result, long generation);
+
+    /**
+     * Get cached SUBSCRIBE authorization result
+     *
+     * @param clientId    Client Id
+     * @param userName    User Name
+     * @param topicFilter Topic Filter
+     * @param qos         Requested QoS
+     * @return Granted QoS, Null if not cached
+     */
+    MqttGrantedQoS getSubscribe(String clientId, String userName, String topicFilter, int qos);
+
+    /**
+     * Cache SUBSCRIBE authorization result
+     *
+     * @param clientId    Client Id
+     * @param userName    User Name
+     * @param topicFilter Topic Filter
+     * @param qos         Requested QoS
+     * @param grantedQoS  Granted QoS
+     * @param generation  Generation captured before calling the Authenticator
+     */
+    void putSubscribe(String clientId, String userName, String topicFilter, int qos, MqttGrantedQoS grantedQoS, long generation);
+}
@@ -0,0 +1,28 @@
+package com.github.longkerdandy.mithqtt.api.auth;
+
+/**
+ * Authorize Invalidator
+ * Used by Authenticator to discard cached authorization results when its policies changed
+ */
+@SuppressWarnings("unused")
+public interface AuthorizeInvalidator {
+
+    /**
+     * Discard all cached authorization results of the client
+     *
+     * @param clientId Client Id
+     */
+    void invalidateClient(String clientId);
+
+    /**
+     * Discard all cached authorization results of the user
+     *
+     * @param userName User Name
+     */
+    void invalidateUser(String userName);
+
+    /**
+     * Discard all cached authorization results
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,106 @@
+package com.github.longkerdandy.mithqtt.api.cluster;
+
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.util.Topics;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Application Router
+ * Decides which messages should be forwarded to application, and which partition of the application topic they go
+ */
+@SuppressWarnings("unused")
+public class ApplicationRouter {
+
+    // Message types forwarded to application
+    private final Set<MqttMessageType> types = EnumSet.noneOf(MqttMessageType.class);
+    // Topic filters of forwarded PUBLISH messages, empty means all
+    private final List<List<String>> topicFilters = new ArrayList<>();
+    // Number of partitions
+    private final int partitions;
+    // Partition PUBLISH messages by topic name instead of client id
+    private final boolean partitionByTopic;
+
+    public ApplicationRouter(AbstractConfiguration config) {
+        for (String type : config.getStringArray("application.forward.types")) {
+            if (StringUtils.isNotBlank(type)) this.types.add(MqttMessageType.valueOf(type.trim().toUpperCase()));
+        }
+        // absent or blank means the default types
+        if (this.types.isEmpty()) {
+            this.types.addAll(EnumSet.of(MqttMessageType.CONNECT, MqttMessageType.PUBLISH, MqttMessageType.SUBSCRIBE, MqttMessageType.UNSUBSCRIBE, MqttMessageType.DISCONNECT));
+        }
+        for (String topic : config.getStringArray("application.forward.topics")) {
+            if (StringUtils.isNotBlank(topic)) this.topicFilters.add(Topics.sanitize(topic.trim()));
+        }
+        this.partitions = Math.max(config.getInt("application.partitions", 1), 1);
+        this.partitionByTopic = "topic".equalsIgnoreCase(config.getString("application.partition.key", "clientId"));
+    }
+
+    /**
+     * Should the message be forwarded to application
+     *
+     * @param message Message
+     * @return True if forward
+     */
+    public boolean accept(Message message) {
+        MqttMessageType type = message.fixedHeader().messageType();
+        if (!this.types.contains(type)) return false;
+        if (type != MqttMessageType.PUBLISH || this.topicFilters.isEmpty()) return true;
+
+        List<String> topicLevels = Topics.sanitizeTopicName(((MqttPublishVariableHeader) message.variableHeader()).topicName());
+        for (List<String> topicFilter : this.topicFilters) {
+            if (Topics.match(topicFilter, topicLevels)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the application topic partition the message should be sent to
+     * The same client id (or topic name) always goes to the same partition, so the order is preserved
+     *
+     * @param topic   Application Topic
+     * @param message Message
+     * @return Partition Topic like {application.topic}.{partition}, or Application Topic if not partitioned
+     */
+    public String partition(String topic, Message message) {
+        if (this.partitions <= 1) return topic;
+        return topic + "." + Math.floorMod(partitionKey(message).hashCode(), this.partitions);
+    }
+
+    /**
+     * Get the topics of the specific partitions
+     * Used by application to listen to its assigned partitions
+     *
+     * @param topic      Application Topic
+     * @param partitions Partitions, empty means not partitioned
+     * @return List of topics like {application.topic}.{partition}, or Application Topic if not partitioned
+     */
+    public static List<String> partitionTopics(String topic, String[] partitions) {
+        List<String> topics = new ArrayList<>();
+        for (String partition : partitions) {
+            if (StringUtils.isNotBlank(partition)) topics.add(topic + "." + partition.trim());
+        }
+        if (topics.isEmpty()) topics.add(topic);
+        return topics;
+    }
+
+    /**
+     * Get the partition key of the message
+     *
+     * @param message Message
+     * @return Topic Name if partitioned by topic and message is PUBLISH, otherwise Client Id
+     */
+    public String partitionKey(Message message) {
+        if (this.partitionByTopic && message.fixedHeader().messageType() == MqttMessageType.PUBLISH) {
+            return ((MqttPublishVariableHeader) message.variableHeader()).topicName();
+        }
+        return StringUtils.defaultString(message.additionalHeader().clientId());
+    }
+}
@@ -3,6 +3,9 @@ package com.github.longkerdandy.mithqtt.api.cluster;
 import com.github.longkerdandy.mithqtt.api.message.Message;
 import org.apache.commons.configuration.AbstractConfiguration;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * Cluster
  */
@@ -30,6 +33,29 @@ public interface Cluster {
      */
     void sendToBroker(String brokerId, Message message);
 
+    /**
+     * Get all brokers known to the cluster
+     * Implementations should override it if they support {@link #sendToBrokers(Message)}
+     *
+     * @return Set of Broker Id
+     */
+    default Set<String> brokers() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Send message to all brokers
+     * The sender broker may receive the message as well
+     * Default implementation sends to each of {@link #brokers()}
+     *
+     * @param message Message
+     */
+    default void sendToBrokers(Message message) {
+        for (String brokerId : brokers()) {
+            sendToBroker(brokerId, message);
+        }
+    }
+
     /**
      * Send message to outside
      * Other application can pick up the message from there
@@ -0,0 +1,46 @@
+package com.github.longkerdandy.mithqtt.api.cluster;
+
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cluster Listener Utils
+ */
+public class ClusterListeners {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClusterListeners.class);
+
+    private ClusterListeners() {
+    }
+
+    /**
+     * Pass the message to the corresponding method of cluster listener based on message type
+     *
+     * @param listener Cluster Listener
+     * @param m        Message
+     */
+    @SuppressWarnings("unchecked")
+    public static void dispatch(ClusterListener listener, Message m) {
+        logger.debug("Cluster received: Received {} message for client {}", m.fixedHeader().messageType(), m.additionalHeader().clientId());
+        switch (m.fixedHeader().messageType()) {
+            case CONNECT:
+                listener.onConnect(m);
+                break;
+            case SUBSCRIBE:
+                listener.onSubscribe(m);
+                break;
+            case UNSUBSCRIBE:
+                listener.onUnsubscribe(m);
+                break;
+            case PUBLISH:
+                listener.onPublish(m);
+                break;
+            case DISCONNECT:
+                listener.onDisconnect(m);
+                break;
+            default:
+                logger.warn("Cluster Error: Received message with unknown type {}", m.fixedHeader().messageType());
+        }
+    }
+}
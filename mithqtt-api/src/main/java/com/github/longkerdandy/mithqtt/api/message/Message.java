@@ -53,8 +53,13 @@ public class Message<V, P> {
         byte[] bytes = new byte[0];
         if (msg.payload() != null && msg.payload().readableBytes() > 0) {
             ByteBuf buf = msg.payload().duplicate();
-            bytes = new byte[buf.readableBytes()];
-            buf.readBytes(bytes);
+            if (buf.hasArray() && buf.arrayOffset() == 0 && buf.readerIndex() == 0 && buf.readableBytes() == buf.array().length) {
+                // payload is backed by an array of the exact size (like aggregated streamed PUBLISH), take it without copying
+                bytes = buf.array();
+            } else {
+                bytes = new byte[buf.readableBytes()];
+                buf.readBytes(bytes);
+            }
         }
         return new Message<>(msg.fixedHeader(), new MqttAdditionalHeader(version, clientId, userName, brokerId), msg.variableHeader(), new MqttPublishPayload(bytes));
     }
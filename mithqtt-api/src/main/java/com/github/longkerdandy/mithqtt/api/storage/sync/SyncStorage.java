@@ -8,6 +8,8 @@ import org.apache.commons.configuration.AbstractConfiguration;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Synchronized Storage
@@ -117,6 +119,27 @@ public interface SyncStorage {
      */
     void removeAllSessionState(String clientId);
 
+    /**
+     * Set the session existence for the disconnected client to expire after a timeout
+     * The rest of the session state will be removed by {@link #sweepSessions(int, int)} once expired
+     *
+     * @param clientId Client Id
+     * @param seconds  TTL
+     * @return Expiry set? (Exist)
+     */
+    boolean expireSessionExist(String clientId, int seconds);
+
+    /**
+     * Incrementally scan the stored client state, and remove the state whose session no longer exist
+     * Session of a disconnected client without expiry (for example the broker crashed) will be set to expire
+     * This should be invoked repeatedly, each invocation continues from the last position
+     *
+     * @param count   Approximate number of keys to scan
+     * @param seconds Session expiry TTL
+     * @return Number of removed sessions
+     */
+    int sweepSessions(int count, int seconds);
+
     /**
      * Get next packet id for the client
      *
@@ -155,6 +178,39 @@ public interface SyncStorage {
      */
     void addInFlightMessage(String clientId, int packetId, Message msg, boolean dup, long ttl);
 
+    /**
+     * Add in-flight message for the client without waiting for the result
+     * The message is applied in order with later storage commands issued by the same broker
+     * Default implementation waits for the result
+     *
+     * @param clientId Client Id
+     * @param packetId Packet Id
+     * @param msg      In-Flight Message
+     * @param dup      Duplicated
+     * @return Future completed when the message has been stored, or completed exceptionally if failed
+     */
+    default CompletableFuture<Void> addInFlightMessageAsync(String clientId, int packetId, Message msg, boolean dup) {
+        addInFlightMessage(clientId, packetId, msg, dup);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Add in-flight message for the client but expires in certain duration, without waiting for the result
+     * The message is applied in order with later storage commands issued by the same broker
+     * Default implementation waits for the result
+     *
+     * @param clientId Client Id
+     * @param packetId Packet Id
+     * @param msg      In-Flight Message
+     * @param dup      Duplicated
+     * @param ttl      Time To Live in seconds
+     * @return Future completed when the message has been stored, or completed exceptionally if failed
+     */
+    default CompletableFuture<Void> addInFlightMessageAsync(String clientId, int packetId, Message msg, boolean dup, long ttl) {
+        addInFlightMessage(clientId, packetId, msg, dup, ttl);
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Remove specific in-flight message for the client
      *
@@ -226,7 +282,7 @@ public interface SyncStorage {
 
     /**
      * Update topic subscription for the client
-     * Topic Levels must been sanitized
+     * Topic Levels must been sanitized, could be shared subscription $share/{group}/{filter}
      *
      * @param clientId    Client Id
      * @param topicLevels List of topic levels
@@ -259,28 +315,39 @@ public interface SyncStorage {
      */
     void getMatchSubscriptions(List<String> topicLevels, Map<String, MqttQoS> map);
 
+    /**
+     * Get all subscriptions matching the topic
+     * Only one member of each shared subscription group $share/{group}/{filter} is returned,
+     * members connected to the given broker are preferred
+     *
+     * @param topicLevels List of topic levels
+     * @param brokerId    Broker Id, the broker delivering the message
+     * @param map         RETURN VALUE! Subscriptions: Key - Client Id, Value - QoS
+     */
+    void getMatchSubscriptions(List<String> topicLevels, String brokerId, Map<String, MqttQoS> map);
+
     /**
      * Add retain message for the topic name
-     * Retain id will be generated
+     * Replace the existing retain message of the topic name
      *
      * @param topicLevels Topic Levels
      * @param msg         Retain Message
-     * @return Retain Id
      */
-    int addRetainMessage(List<String> topicLevels, Message<MqttPublishVariableHeader, MqttPublishPayload> msg);
+    void addRetainMessage(List<String> topicLevels, Message<MqttPublishVariableHeader, MqttPublishPayload> msg);
 
     /**
-     * Remove all retain messages for the topic name
+     * Remove the retain message for the topic name
      *
      * @param topicLevels Topic Levels
      */
     void removeAllRetainMessage(List<String> topicLevels);
 
     /**
-     * Get all retain messages the topic name
+     * Get all retain messages matching the topic name or topic filter
+     * Retain messages are passed to the consumer one by one as they are fetched
      *
      * @param topicLevels Topic Levels
-     * @return List of Retain Message
+     * @param consumer    Retain Message Consumer
      */
-    List<Message<MqttPublishVariableHeader, MqttPublishPayload>> getMatchRetainMessages(List<String> topicLevels);
+    void getMatchRetainMessages(List<String> topicLevels, Consumer<Message<MqttPublishVariableHeader, MqttPublishPayload>> consumer);
 }
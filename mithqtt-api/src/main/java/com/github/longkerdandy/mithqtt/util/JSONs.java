@@ -3,6 +3,8 @@ package com.github.longkerdandy.mithqtt.util;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.*;
 import com.github.longkerdandy.mithqtt.api.message.Message;
 import com.github.longkerdandy.mithqtt.api.message.MqttPublishPayload;
@@ -30,6 +32,56 @@ public class JSONs {
     private JSONs() {
     }
 
+    /**
+     * Read client id from bytes (json data) of Message, without decoding the whole Message
+     * Parsing stops once the client id is found, so payload is usually skipped
+     *
+     * @param data Bytes (json data) of Message
+     * @return Client Id, Null if not exist
+     */
+    public static String peekClientId(byte[] data) throws IOException {
+        return peekAdditionalHeader(data, "clientId");
+    }
+
+    /**
+     * Read broker id from bytes (json data) of Message, without decoding the whole Message
+     * Parsing stops once the broker id is found, so payload is usually skipped
+     *
+     * @param data Bytes (json data) of Message
+     * @return Broker Id, Null if not exist
+     */
+    public static String peekBrokerId(byte[] data) throws IOException {
+        return peekAdditionalHeader(data, "brokerId");
+    }
+
+    /**
+     * Read a string field of the additional header from bytes (json data) of Message
+     *
+     * @param data  Bytes (json data) of Message
+     * @param field Field name in the additional header
+     * @return Field value, Null if not exist
+     */
+    private static String peekAdditionalHeader(byte[] data, String field) throws IOException {
+        try (JsonParser parser = Mapper.getFactory().createParser(data)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String header = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (header.equals("additionalHeader") && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.getCurrentName();
+                        token = parser.nextToken();
+                        if (name.equals(field)) return token == JsonToken.VALUE_STRING ? parser.getText() : null;
+                        parser.skipChildren();
+                    }
+                    return null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+    }
+
     /**
      * Decode bytes (json data) to Message
      */
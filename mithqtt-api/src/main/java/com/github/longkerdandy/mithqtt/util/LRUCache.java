@@ -0,0 +1,131 @@
+package com.github.longkerdandy.mithqtt.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Thread safe LRU Cache
+ * Bounded by maximum size, entries optionally expire after a time to live
+ */
+@SuppressWarnings("unused")
+public class LRUCache<K, V> {
+
+    // Maximum number of entries, 0 means cache disabled
+    private final int maxSize;
+    // Time to live in milliseconds, 0 means never expire
+    private final long ttl;
+    // Access ordered map (Key : Entry)
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    /**
+     * Create LRU Cache
+     *
+     * @param maxSize Maximum number of entries, 0 means cache disabled
+     * @param ttl     Time to live in milliseconds, 0 means never expire
+     */
+    public LRUCache(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, LRUCache.Entry<V>> eldest) {
+                return size() > LRUCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Is the cache enabled
+     *
+     * @return True if maximum size larger than 0
+     */
+    public boolean enabled() {
+        return this.maxSize > 0;
+    }
+
+    /**
+     * Get the cached value
+     *
+     * @param key Key
+     * @return Value, Null if not cached or expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = this.map.get(key);
+        if (entry == null) return null;
+        if (this.ttl > 0 && entry.expire < System.currentTimeMillis()) {
+            this.map.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Get the cached value, or compute and cache it if not cached or expired
+     * The computation happens outside the lock, concurrent callers may compute the same key
+     *
+     * @param key      Key
+     * @param function Function to compute the value
+     * @return Value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            if (value != null) put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Cache the value
+     *
+     * @param key   Key
+     * @param value Value
+     */
+    public synchronized void put(K key, V value) {
+        if (this.maxSize <= 0) return;
+        this.map.put(key, new Entry<>(value, this.ttl > 0 ? System.currentTimeMillis() + this.ttl : Long.MAX_VALUE));
+    }
+
+    /**
+     * Remove the cached value
+     *
+     * @param key Key
+     * @return Removed Value, Null if not cached
+     */
+    public synchronized V remove(K key) {
+        Entry<V> entry = this.map.remove(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Remove all cached values
+     */
+    public synchronized void clear() {
+        this.map.clear();
+    }
+
+    /**
+     * Number of cached entries, including expired but not yet removed
+     *
+     * @return Size
+     */
+    public synchronized int size() {
+        return this.map.size();
+    }
+
+    /**
+     * Cache Entry
+     */
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expire;
+
+        Entry(V value, long expire) {
+            this.value = value;
+            this.expire = expire;
+        }
+    }
+}
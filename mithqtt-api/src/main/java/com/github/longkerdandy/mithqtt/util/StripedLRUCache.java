@@ -0,0 +1,134 @@
+package com.github.longkerdandy.mithqtt.util;
+
+import java.util.function.Function;
+
+/**
+ * Thread safe LRU Cache split into stripes by key hash
+ * Each stripe is an independent {@link LRUCache} with its own lock, so concurrent threads rarely contend
+ * Least recently used entries are dropped per stripe, not across the whole cache
+ */
+@SuppressWarnings("unused")
+public class StripedLRUCache<K, V> {
+
+    // Minimum number of entries each stripe holds
+    private static final int MIN_STRIPE_SIZE = 64;
+
+    private final LRUCache<K, V>[] stripes;
+    private final int mask;
+
+    /**
+     * Create Striped LRU Cache
+     * Number of stripes scales with available processors, as long as each stripe holds enough entries
+     *
+     * @param maxSize Maximum number of entries, 0 means cache disabled
+     * @param ttl     Time to live in milliseconds, 0 means never expire
+     */
+    public StripedLRUCache(int maxSize, long ttl) {
+        this(maxSize, ttl, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Create Striped LRU Cache
+     *
+     * @param maxSize    Maximum number of entries, 0 means cache disabled
+     * @param ttl        Time to live in milliseconds, 0 means never expire
+     * @param maxStripes Maximum number of stripes
+     */
+    @SuppressWarnings("unchecked")
+    public StripedLRUCache(int maxSize, long ttl, int maxStripes) {
+        int n = 1;
+        while (n * 2 <= maxStripes && maxSize / (n * 2) >= MIN_STRIPE_SIZE) n *= 2;
+        this.stripes = new LRUCache[n];
+        this.mask = n - 1;
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new LRUCache<>(maxSize <= 0 ? 0 : (maxSize + n - 1) / n, ttl);
+        }
+    }
+
+    private LRUCache<K, V> stripe(K key) {
+        int h = key.hashCode();
+        return this.stripes[(h ^ (h >>> 16)) & this.mask];
+    }
+
+    /**
+     * Is the cache enabled
+     *
+     * @return True if maximum size larger than 0
+     */
+    public boolean enabled() {
+        return this.stripes[0].enabled();
+    }
+
+    /**
+     * Number of stripes
+     *
+     * @return Stripes
+     */
+    public int stripes() {
+        return this.stripes.length;
+    }
+
+    /**
+     * Get the cached value
+     *
+     * @param key Key
+     * @return Value, Null if not cached or expired
+     */
+    public V get(K key) {
+        return stripe(key).get(key);
+    }
+
+    /**
+     * Get the cached value, or compute and cache it if not cached or expired
+     * The computation happens outside the lock, concurrent callers may compute the same key
+     *
+     * @param key      Key
+     * @param function Function to compute the value
+     * @return Value
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        return stripe(key).computeIfAbsent(key, function);
+    }
+
+    /**
+     * Cache the value
+     *
+     * @param key   Key
+     * @param value Value
+     */
+    public void put(K key, V value) {
+        stripe(key).put(key, value);
+    }
+
+    /**
+     * Remove the cached value
+     *
+     * @param key Key
+     * @return Removed Value, Null if not cached
+     */
+    public V remove(K key) {
+        return stripe(key).remove(key);
+    }
+
+    /**
+     * Remove all cached values
+     */
+    public void clear() {
+        for (LRUCache<K, V> stripe : this.stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * Number of cached entries, including expired but not yet removed
+     *
+     * @return Size
+     */
+    public int size() {
+        int size = 0;
+        for (LRUCache<K, V> stripe : this.stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+}
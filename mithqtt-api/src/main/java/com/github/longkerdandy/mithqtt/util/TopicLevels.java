@@ -0,0 +1,78 @@
+package com.github.longkerdandy.mithqtt.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interned Topic Levels
+ * Immutable sanitized topic levels with precomputed hash code, and cached joined topic strings
+ */
+public final class TopicLevels extends AbstractList<String> implements RandomAccess {
+
+    private final String[] levels;
+    private final int hash;
+    // Sanitized topic levels joined by /
+    private final String joined;
+    // Joined topic with prefix, usually storage keys (Prefix : Prefixed Topic)
+    private final Map<String, String> prefixed = new ConcurrentHashMap<>(4);
+
+    TopicLevels(List<String> levels) {
+        this.levels = levels.toArray(new String[levels.size()]);
+        this.hash = Arrays.hashCode(this.levels);
+        this.joined = String.join("/", levels);
+    }
+
+    @Override
+    public String get(int index) {
+        return this.levels[index];
+    }
+
+    @Override
+    public int size() {
+        return this.levels.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o instanceof TopicLevels) {
+            TopicLevels that = (TopicLevels) o;
+            return this.hash == that.hash && Arrays.equals(this.levels, that.levels);
+        }
+        return super.equals(o);
+    }
+
+    /**
+     * Get the sanitized topic levels joined by /
+     *
+     * @return Joined Topic
+     */
+    public String joined() {
+        return this.joined;
+    }
+
+    /**
+     * Get the sanitized topic levels joined by / with prefix
+     * The result is cached for each prefix
+     *
+     * @param prefix Prefix
+     * @return Prefixed Topic
+     */
+    public String prefixed(String prefix) {
+        String s = this.prefixed.get(prefix);
+        if (s == null) {
+            s = prefix + this.joined;
+            this.prefixed.put(prefix, s);
+        }
+        return s;
+    }
+}
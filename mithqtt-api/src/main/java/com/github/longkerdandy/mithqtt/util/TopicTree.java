@@ -0,0 +1,168 @@
+package com.github.longkerdandy.mithqtt.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Topic Filter Tree
+ * Indexes values by sanitized topic filter levels, so topic filters matching a topic name are found by walking the
+ * levels of the topic name, instead of testing every topic filter
+ * <p>
+ * Lookups are lock free and may run concurrently with modifications, modifications are serialized
+ *
+ * @param <V> Value Type
+ */
+@SuppressWarnings("unused")
+public class TopicTree<V> {
+
+    private final Node<V> root = new Node<>();
+
+    /**
+     * Get the value of the topic filter
+     *
+     * @param topicFilterLevels Sanitized Topic Filter Levels
+     * @return Value, Null if not exist
+     */
+    public V get(List<String> topicFilterLevels) {
+        Node<V> node = this.root;
+        for (String level : topicFilterLevels) {
+            node = node.children.get(level);
+            if (node == null) return null;
+        }
+        return node.value;
+    }
+
+    /**
+     * Set the value of the topic filter
+     *
+     * @param topicFilterLevels Sanitized Topic Filter Levels
+     * @param value             Value
+     */
+    public synchronized void put(List<String> topicFilterLevels, V value) {
+        Node<V> node = this.root;
+        for (String level : topicFilterLevels) {
+            node = node.children.computeIfAbsent(level, l -> new Node<>());
+        }
+        node.value = value;
+    }
+
+    /**
+     * Get the value of the topic filter, create a new one by the function if not exist
+     *
+     * @param topicFilterLevels Sanitized Topic Filter Levels
+     * @param function          Function creates the value
+     * @return Value
+     */
+    public synchronized V computeIfAbsent(List<String> topicFilterLevels, Function<List<String>, ? extends V> function) {
+        V value = get(topicFilterLevels);
+        if (value == null) {
+            value = function.apply(topicFilterLevels);
+            put(topicFilterLevels, value);
+        }
+        return value;
+    }
+
+    /**
+     * Remove the topic filter, and the tree nodes no longer used
+     *
+     * @param topicFilterLevels Sanitized Topic Filter Levels
+     * @return Removed Value, Null if not exist
+     */
+    public synchronized V remove(List<String> topicFilterLevels) {
+        List<Node<V>> path = new ArrayList<>(topicFilterLevels.size() + 1);
+        Node<V> node = this.root;
+        path.add(node);
+        for (String level : topicFilterLevels) {
+            node = node.children.get(level);
+            if (node == null) return null;
+            path.add(node);
+        }
+        V value = node.value;
+        node.value = null;
+        for (int i = topicFilterLevels.size(); i > 0; i--) {
+            Node<V> n = path.get(i);
+            if (n.value != null || !n.children.isEmpty()) break;
+            path.get(i - 1).children.remove(topicFilterLevels.get(i - 1));
+        }
+        return value;
+    }
+
+    /**
+     * Is the tree empty
+     *
+     * @return True if no topic filter in the tree
+     */
+    public boolean isEmpty() {
+        return this.root.children.isEmpty();
+    }
+
+    /**
+     * Perform the action for values of all topic filters matching the topic name
+     *
+     * @param topicNameLevels Sanitized Topic Name Levels
+     * @param action          Action
+     */
+    public void forEachMatch(List<String> topicNameLevels, Consumer<? super V> action) {
+        match(this.root, topicNameLevels, 0, v -> {
+            action.accept(v);
+            return false;
+        });
+    }
+
+    /**
+     * Is there any topic filter matching the topic name
+     *
+     * @param topicNameLevels Sanitized Topic Name Levels
+     * @return True if matches
+     */
+    public boolean anyMatch(List<String> topicNameLevels) {
+        return match(this.root, topicNameLevels, 0, v -> true);
+    }
+
+    /**
+     * Walk the tree by topic name levels, same semantics as {@link Topics#match(List, List)}
+     *
+     * @param node    Current Node
+     * @param levels  Sanitized Topic Name Levels
+     * @param i       Current Level Index
+     * @param visitor Visitor of matched values, returns true to stop walking
+     * @return True if the visitor stopped walking
+     */
+    private static <V> boolean match(Node<V> node, List<String> levels, int i, Predicate<V> visitor) {
+        if (i == levels.size()) {
+            V value = node.value;
+            return value != null && visitor.test(value);
+        }
+
+        String level = levels.get(i);
+        // The Server MUST NOT match Topic Filters starting with a wildcard character (# or +) with Topic Names
+        // beginning with a $ character
+        if (i > 0 || !level.startsWith("$")) {
+            Node<V> multi = node.children.get("#");
+            if (multi != null) {
+                Node<V> end = multi.children.get(Topics.END);
+                V value = end == null ? null : end.value;
+                if (value != null && visitor.test(value)) return true;
+            }
+            Node<V> single = level.equals(Topics.END) ? null : node.children.get("+");
+            if (single != null && match(single, levels, i + 1, visitor)) return true;
+        }
+
+        Node<V> exact = node.children.get(level);
+        return exact != null && match(exact, levels, i + 1, visitor);
+    }
+
+    /**
+     * Tree node of a topic level
+     */
+    private static class Node<V> {
+
+        private final ConcurrentMap<String, Node<V>> children = new ConcurrentHashMap<>();
+        private volatile V value;
+    }
+}
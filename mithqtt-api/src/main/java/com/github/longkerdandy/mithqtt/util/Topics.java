@@ -15,10 +15,49 @@ public class Topics {
     public static final String EMPTY = "Ø";
     // Present the end of the wildcard topic filter
     public static final String END = "†";
+    // First level of the shared subscription topic filter $share/{group}/{filter}
+    public static final String SHARE = "$share";
+
+    // Interned sanitized topic names (Topic Name : Topic Levels), disabled by default
+    private static volatile StripedLRUCache<String, TopicLevels> cache = new StripedLRUCache<>(0, 0);
 
     private Topics() {
     }
 
+    /**
+     * Init the interned topic names cache
+     * Publishers usually reuse a small set of topic names, which then need not be sanitized again
+     * When enabled, {@link #sanitizeTopicName(String)} returns immutable interned Lists
+     *
+     * @param size Maximum number of cached topic names, least recently used will be dropped, 0 means disabled
+     */
+    public static void initCache(int size) {
+        cache = new StripedLRUCache<>(size, 0);
+    }
+
+    /**
+     * Join the sanitized topic levels by /
+     * Cached result is used if the topic levels are interned
+     *
+     * @param topicLevels Sanitized Topic Levels
+     * @return Joined Topic
+     */
+    public static String join(List<String> topicLevels) {
+        return topicLevels instanceof TopicLevels ? ((TopicLevels) topicLevels).joined() : String.join("/", topicLevels);
+    }
+
+    /**
+     * Join the sanitized topic levels by / with prefix
+     * Cached result is used if the topic levels are interned
+     *
+     * @param prefix      Prefix
+     * @param topicLevels Sanitized Topic Levels
+     * @return Prefixed Topic
+     */
+    public static String join(String prefix, List<String> topicLevels) {
+        return topicLevels instanceof TopicLevels ? ((TopicLevels) topicLevels).prefixed(prefix) : prefix + String.join("/", topicLevels);
+    }
+
     /**
      * Restore sanitized topic to original topic
      *
@@ -36,7 +75,7 @@ public class Topics {
      * @return Original Topic Name or Topic Filter
      */
     public static String antidote(List<String> topicLevels) {
-        return antidote(String.join("/", topicLevels));
+        return antidote(join(topicLevels));
     }
 
     /**
@@ -56,11 +95,24 @@ public class Topics {
     /**
      * Validate the topic name, add EMPTY and END, return as a List of levels
      * No wildcard allowed!
+     * If the cache is enabled, the returned List is interned and immutable, otherwise a new mutable List
      *
      * @param topicName Topic Name
      * @return List of levels
      */
     public static List<String> sanitizeTopicName(String topicName) {
+        StripedLRUCache<String, TopicLevels> c = cache;
+        if (!c.enabled()) return sanitizeLevels(topicName);
+        return c.computeIfAbsent(topicName, t -> new TopicLevels(sanitizeLevels(t)));
+    }
+
+    /**
+     * Validate the topic name, add EMPTY and END, return as a List of levels
+     *
+     * @param topicName Topic Name
+     * @return List of levels
+     */
+    private static List<String> sanitizeLevels(String topicName) {
         if (StringUtils.isEmpty(topicName)) throw new IllegalArgumentException("Empty topic name");
         if (topicName.contains("+")) throw new IllegalArgumentException("Topic name contains wildcard");
         if (topicName.contains("#")) throw new IllegalArgumentException("Topic name contains wildcard");
@@ -121,4 +173,61 @@ public class Topics {
     public static boolean isTopicFilter(List<String> topicLevels) {
         return topicLevels.contains("+") || topicLevels.get(topicLevels.size() - 2).equals("#");
     }
+
+    /**
+     * Is sanitized topic levels a shared subscription $share/{group}/{filter}
+     *
+     * @param topicLevels Sanitized Topic Levels
+     * @return True if is shared subscription
+     */
+    public static boolean isShared(List<String> topicLevels) {
+        return topicLevels.size() > 3 && topicLevels.get(0).equals(SHARE);
+    }
+
+    /**
+     * Get the group name of sanitized shared subscription
+     *
+     * @param topicLevels Sanitized Topic Levels of shared subscription
+     * @return Group Name
+     */
+    public static String shareGroup(List<String> topicLevels) {
+        return topicLevels.get(1);
+    }
+
+    /**
+     * Get the topic filter of sanitized shared subscription, or the topic levels itself if not shared
+     *
+     * @param topicLevels Sanitized Topic Levels
+     * @return Sanitized Topic Filter Levels
+     */
+    public static List<String> shareFilter(List<String> topicLevels) {
+        return isShared(topicLevels) ? topicLevels.subList(2, topicLevels.size()) : topicLevels;
+    }
+
+    /**
+     * Is sanitized topic name matching the sanitized topic filter
+     * Topic filter could also be a topic name (without wildcard), which only matches the identical topic name
+     *
+     * @param topicFilterLevels Sanitized Topic Filter Levels
+     * @param topicNameLevels   Sanitized Topic Name Levels
+     * @return True if matches
+     */
+    public static boolean match(List<String> topicFilterLevels, List<String> topicNameLevels) {
+        // The Server MUST NOT match Topic Filters starting with a wildcard character (# or +) with Topic Names
+        // beginning with a $ character
+        if (topicNameLevels.get(0).startsWith("$") && (topicFilterLevels.get(0).equals("#") || topicFilterLevels.get(0).equals("+")))
+            return false;
+
+        for (int i = 0; i < topicFilterLevels.size(); i++) {
+            String level = topicFilterLevels.get(i);
+            if (level.equals("#")) return true;
+            if (i >= topicNameLevels.size()) return false;
+            if (level.equals("+")) {
+                if (topicNameLevels.get(i).equals(END)) return false;
+            } else if (!level.equals(topicNameLevels.get(i))) {
+                return false;
+            }
+        }
+        return topicFilterLevels.size() == topicNameLevels.size();
+    }
 }
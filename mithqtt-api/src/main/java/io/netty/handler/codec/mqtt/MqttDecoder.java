@@ -17,6 +17,7 @@
 package io.netty.handler.codec.mqtt;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.ReplayingDecoder;
@@ -35,6 +36,7 @@ public class MqttDecoder extends ReplayingDecoder<DecoderState> {
 
     private static final int DEFAULT_MAX_BYTES_IN_MESSAGE = 8092;
     private final int maxBytesInMessage;
+    private final int maxChunkSize;
     private MqttFixedHeader mqttFixedHeader;
     private Object variableHeader;
     private int bytesRemainingInVariablePart;
@@ -44,8 +46,22 @@ public class MqttDecoder extends ReplayingDecoder<DecoderState> {
     }
 
     public MqttDecoder(int maxBytesInMessage) {
+        this(maxBytesInMessage, 0);
+    }
+
+    /**
+     * Create MQTT decoder
+     * PUBLISH message larger than maxBytesInMessage is streamed if maxChunkSize is larger than 0:
+     * decoded as a {@link MqttStreamedPublishMessage} header followed by {@link MqttPublishChunk}s,
+     * so the payload is never buffered as a whole by the decoder
+     *
+     * @param maxBytesInMessage Maximum bytes of a message buffered by the decoder
+     * @param maxChunkSize      Maximum bytes of a streamed payload chunk, 0 means streaming disabled
+     */
+    public MqttDecoder(int maxBytesInMessage, int maxChunkSize) {
         super(DecoderState.READ_FIXED_HEADER);
         this.maxBytesInMessage = maxBytesInMessage;
+        this.maxChunkSize = maxChunkSize;
     }
 
     /**
@@ -168,7 +184,7 @@ public class MqttDecoder extends ReplayingDecoder<DecoderState> {
     private static Result<MqttPublishVariableHeader> decodePublishVariableHeader(
             ByteBuf buffer,
             MqttFixedHeader mqttFixedHeader) {
-        final Result<String> decodedTopic = decodeString(buffer);
+        final Result<String> decodedTopic = decodeTopicName(buffer);
         int numberOfBytesConsumed = decodedTopic.numberOfBytesConsumed;
 
         int packetId = 0;
@@ -336,6 +352,14 @@ public class MqttDecoder extends ReplayingDecoder<DecoderState> {
         return new Result<>(s, numberOfBytesConsumed);
     }
 
+    private static Result<String> decodeTopicName(ByteBuf buffer) {
+        final Result<Integer> decodedSize = decodeMsbLsb(buffer);
+        int size = decodedSize.value;
+        String s = MqttTopicCache.INSTANCE.decode(buffer, buffer.readerIndex(), size);
+        buffer.skipBytes(size);
+        return new Result<>(s, decodedSize.numberOfBytesConsumed + size);
+    }
+
     private static Result<Integer> decodeMsbLsb(ByteBuf buffer) {
         return decodeMsbLsb(buffer, 0, 65535);
     }
@@ -367,12 +391,23 @@ public class MqttDecoder extends ReplayingDecoder<DecoderState> {
 
             case READ_VARIABLE_HEADER:
                 try {
-                    if (bytesRemainingInVariablePart > maxBytesInMessage) {
+                    boolean streamed = bytesRemainingInVariablePart > maxBytesInMessage;
+                    if (streamed && (maxChunkSize <= 0 || mqttFixedHeader.messageType() != MqttMessageType.PUBLISH)) {
                         throw new DecoderException("message size exceeds limit: " + bytesRemainingInVariablePart + " bytes");
                     }
                     final Result<?> decodedVariableHeader = decodeVariableHeader(buffer, mqttFixedHeader);
                     variableHeader = decodedVariableHeader.value;
                     bytesRemainingInVariablePart -= decodedVariableHeader.numberOfBytesConsumed;
+                    if (streamed) {
+                        checkpoint(DecoderState.READ_PAYLOAD_CHUNK);
+                        MqttMessage message = new MqttStreamedPublishMessage(mqttFixedHeader,
+                                (MqttPublishVariableHeader) variableHeader, bytesRemainingInVariablePart);
+                        mqttFixedHeader = null;
+                        variableHeader = null;
+                        Mqtts.sanitize(message);    // sanitize message
+                        out.add(message);
+                        return;
+                    }
                     checkpoint(DecoderState.READ_PAYLOAD);
                     // fall through
                 } catch (Exception cause) {
@@ -407,6 +442,23 @@ public class MqttDecoder extends ReplayingDecoder<DecoderState> {
                     return;
                 }
 
+            case READ_PAYLOAD_CHUNK:
+                // Only the bytes already received are read, without replaying
+                int toRead = Math.min(Math.min(actualReadableBytes(), bytesRemainingInVariablePart), maxChunkSize);
+                if (toRead == 0 && bytesRemainingInVariablePart > 0) {
+                    return;
+                }
+                ByteBuf chunk = toRead > 0 ? buffer.readRetainedSlice(toRead) : Unpooled.EMPTY_BUFFER;
+                bytesRemainingInVariablePart -= toRead;
+                if (bytesRemainingInVariablePart == 0) {
+                    checkpoint(DecoderState.READ_FIXED_HEADER);
+                    out.add(new MqttPublishChunk(chunk, true));
+                } else {
+                    checkpoint();
+                    out.add(new MqttPublishChunk(chunk, false));
+                }
+                break;
+
             case BAD_MESSAGE:
                 // Keep discarding until disconnection.
                 buffer.skipBytes(actualReadableBytes());
@@ -422,12 +474,14 @@ public class MqttDecoder extends ReplayingDecoder<DecoderState> {
     /**
      * States of the decoder.
      * We start at READ_FIXED_HEADER, followed by
-     * READ_VARIABLE_HEADER and finally READ_PAYLOAD.
+     * READ_VARIABLE_HEADER and finally READ_PAYLOAD,
+     * or READ_PAYLOAD_CHUNK repeatedly if the PUBLISH payload is streamed.
      */
     enum DecoderState {
         READ_FIXED_HEADER,
         READ_VARIABLE_HEADER,
         READ_PAYLOAD,
+        READ_PAYLOAD_CHUNK,
         BAD_MESSAGE,
     }
 
@@ -23,6 +23,7 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.util.CharsetUtil;
 import io.netty.util.internal.EmptyArrays;
+import io.netty.util.internal.SystemPropertyUtil;
 
 import java.util.List;
 
@@ -36,6 +37,10 @@ public class MqttEncoder extends MessageToMessageEncoder<MqttMessage> {
     // singleton
     public static final MqttEncoder INSTANCE = new MqttEncoder();
 
+    // PUBLISH payload smaller than this is copied into the header buffer,
+    // larger payload is appended as a retained slice without copying
+    static final int PUBLISH_COPY_THRESHOLD = SystemPropertyUtil.getInt("io.netty.handler.codec.mqtt.publishCopyThreshold", 1024);
+
     private MqttEncoder() {
     }
 
@@ -291,10 +296,12 @@ public class MqttEncoder extends MessageToMessageEncoder<MqttMessage> {
             MqttPublishMessage message) {
         MqttFixedHeader mqttFixedHeader = message.fixedHeader();
         MqttPublishVariableHeader variableHeader = message.variableHeader();
-        ByteBuf payload = message.payload().duplicate();
+        ByteBuf payload = message.payload();
 
-        String topicName = variableHeader.topicName();
-        byte[] topicNameBytes = encodeStringUtf8(topicName);
+        // topic name of pre-encoded frame is not encoded again
+        byte[] topicNameBytes = message instanceof MqttPublishFrame.FramedMessage ?
+                ((MqttPublishFrame.FramedMessage) message).frame().topicNameBytes() :
+                MqttTopicCache.INSTANCE.encode(variableHeader.topicName());
 
         int variableHeaderBufferSize = 2 + topicNameBytes.length +
                 (mqttFixedHeader.qos().value() > 0 ? 2 : 0);
@@ -302,7 +309,10 @@ public class MqttEncoder extends MessageToMessageEncoder<MqttMessage> {
         int variablePartSize = variableHeaderBufferSize + payloadBufferSize;
         int fixedHeaderBufferSize = 1 + getVariableLengthInt(variablePartSize);
 
-        ByteBuf buf = byteBufAllocator.buffer(fixedHeaderBufferSize + variablePartSize);
+        // large payload is not copied, the header buffer and a retained slice of the payload are composed
+        // so the same payload can be written to many recipients without a memory copy for each
+        boolean copy = payloadBufferSize < PUBLISH_COPY_THRESHOLD;
+        ByteBuf buf = byteBufAllocator.buffer(fixedHeaderBufferSize + variableHeaderBufferSize + (copy ? payloadBufferSize : 0));
         buf.writeByte(getFixedHeaderByte1(mqttFixedHeader));
         writeVariableLengthInt(buf, variablePartSize);
         buf.writeShort(topicNameBytes.length);
@@ -310,9 +320,12 @@ public class MqttEncoder extends MessageToMessageEncoder<MqttMessage> {
         if (mqttFixedHeader.qos().value() > 0) {
             buf.writeShort(variableHeader.packetId());
         }
-        buf.writeBytes(payload);
+        if (copy) {
+            buf.writeBytes(payload, payload.readerIndex(), payloadBufferSize);
+            return buf;
+        }
 
-        return buf;
+        return byteBufAllocator.compositeBuffer(2).addComponents(true, buf, payload.retainedSlice());
     }
 
     private static ByteBuf encodeMessageWithOnlySingleByteFixedHeaderAndPacketId(
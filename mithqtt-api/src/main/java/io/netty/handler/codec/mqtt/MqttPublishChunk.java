@@ -0,0 +1,42 @@
+package io.netty.handler.codec.mqtt;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.util.internal.StringUtil;
+
+/**
+ * Chunk of a streamed PUBLISH message payload
+ * Follows the {@link MqttStreamedPublishMessage} header
+ */
+public class MqttPublishChunk extends DefaultByteBufHolder {
+
+    private final boolean last;
+
+    public MqttPublishChunk(ByteBuf content, boolean last) {
+        super(content);
+        this.last = last;
+    }
+
+    /**
+     * Is this the last chunk of the payload
+     *
+     * @return True if last
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    @Override
+    public MqttPublishChunk replace(ByteBuf content) {
+        return new MqttPublishChunk(content, this.last);
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this)
+                + '['
+                + "chunk " + content().readableBytes() + " bytes"
+                + ", last=" + last
+                + ']';
+    }
+}
@@ -0,0 +1,69 @@
+package io.netty.handler.codec.mqtt;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Pre-encoded MQTT PUBLISH Frame
+ * Topic name and payload of a PUBLISH message are encoded once, and shared by the messages sent to all recipients
+ * Only the fixed header and packet id are encoded for each recipient
+ */
+public class MqttPublishFrame {
+
+    private final String topicName;
+    private final byte[] topicNameBytes;
+    // Shared payload, each message holds a retained duplicate
+    private final ByteBuf payload;
+
+    /**
+     * Create PUBLISH Frame
+     *
+     * @param topicName Topic Name
+     * @param payload   Payload, should not be released while the frame is in use
+     */
+    public MqttPublishFrame(String topicName, ByteBuf payload) {
+        this.topicName = topicName;
+        this.topicNameBytes = MqttTopicCache.INSTANCE.encode(topicName);
+        this.payload = payload;
+    }
+
+    public String topicName() {
+        return topicName;
+    }
+
+    byte[] topicNameBytes() {
+        return topicNameBytes;
+    }
+
+    /**
+     * Create PUBLISH message for a recipient
+     *
+     * @param qos      QoS
+     * @param retain   Retain
+     * @param packetId Packet Id, 0 if QoS 0
+     * @return MqttPublishMessage
+     */
+    public MqttPublishMessage message(MqttQoS qos, boolean retain, int packetId) {
+        return new FramedMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, qos, retain, 0),
+                packetId > 0 ? MqttPublishVariableHeader.from(this.topicName, packetId) : MqttPublishVariableHeader.from(this.topicName),
+                this,
+                this.payload.retainedDuplicate());
+    }
+
+    /**
+     * PUBLISH message backed by pre-encoded frame
+     */
+    static class FramedMessage extends MqttPublishMessage {
+
+        private final MqttPublishFrame frame;
+
+        FramedMessage(MqttFixedHeader mqttFixedHeader, MqttPublishVariableHeader variableHeader, MqttPublishFrame frame, ByteBuf payload) {
+            super(mqttFixedHeader, variableHeader, payload);
+            this.frame = frame;
+        }
+
+        MqttPublishFrame frame() {
+            return frame;
+        }
+    }
+}
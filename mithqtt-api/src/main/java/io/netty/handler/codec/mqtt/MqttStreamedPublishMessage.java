@@ -0,0 +1,29 @@
+package io.netty.handler.codec.mqtt;
+
+import io.netty.buffer.Unpooled;
+
+/**
+ * Header of a PUBLISH message whose payload is streamed
+ * The payload follows as a sequence of {@link MqttPublishChunk}, the last one is flagged
+ */
+public class MqttStreamedPublishMessage extends MqttPublishMessage {
+
+    private final int payloadLength;
+
+    public MqttStreamedPublishMessage(
+            MqttFixedHeader mqttFixedHeader,
+            MqttPublishVariableHeader variableHeader,
+            int payloadLength) {
+        super(mqttFixedHeader, variableHeader, Unpooled.EMPTY_BUFFER);
+        this.payloadLength = payloadLength;
+    }
+
+    /**
+     * Get the total length of the streamed payload
+     *
+     * @return Payload Length
+     */
+    public int payloadLength() {
+        return payloadLength;
+    }
+}
@@ -0,0 +1,122 @@
+package io.netty.handler.codec.mqtt;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.CharsetUtil;
+import io.netty.util.internal.MathUtil;
+import io.netty.util.internal.SystemPropertyUtil;
+
+/**
+ * MQTT Topic Name Cache
+ * Caches UTF-8 encoded and decoded topic names shared by encoder and decoder, so hot topics are not encoded or decoded again
+ * Entries are direct mapped by hash code, a colliding topic simply replaces the old entry, so the cache is bounded and lock free
+ */
+public class MqttTopicCache {
+
+    // singleton
+    public static final MqttTopicCache INSTANCE = new MqttTopicCache(
+            SystemPropertyUtil.getInt("io.netty.handler.codec.mqtt.topicCacheSize", 16384),
+            SystemPropertyUtil.getInt("io.netty.handler.codec.mqtt.topicCacheMaxLength", 256));
+
+    // Entries mapped by hash code of the encoded bytes
+    private final Entry[] decoded;
+    // Entries mapped by hash code of the topic string
+    private final Entry[] encoded;
+    private final int mask;
+    // Maximum encoded length of cached topic name
+    private final int maxLength;
+
+    /**
+     * Create Topic Name Cache
+     *
+     * @param size      Number of entries for encoding and decoding each, rounded up to power of 2, 0 means disabled
+     * @param maxLength Maximum encoded length of cached topic name, longer topic names are not cached
+     */
+    MqttTopicCache(int size, int maxLength) {
+        int capacity = size > 0 ? MathUtil.findNextPositivePowerOfTwo(size) : 0;
+        this.decoded = new Entry[capacity];
+        this.encoded = new Entry[capacity];
+        this.mask = capacity - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Decode the UTF-8 topic name from buffer, reader index is not changed
+     *
+     * @param buffer Buffer
+     * @param index  Start index of the topic name
+     * @param length Encoded length of the topic name
+     * @return Topic Name
+     */
+    public String decode(ByteBuf buffer, int index, int length) {
+        if (this.decoded.length == 0 || length > this.maxLength) {
+            return buffer.toString(index, length, CharsetUtil.UTF_8);
+        }
+
+        // same as Arrays.hashCode(byte[])
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.getByte(index + i);
+        }
+
+        int slot = hash & this.mask;
+        Entry entry = this.decoded[slot];
+        if (entry != null && entry.bytesHash == hash && contentEquals(entry.bytes, buffer, index, length)) {
+            return entry.string;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.getBytes(index, bytes);
+        String s = new String(bytes, CharsetUtil.UTF_8);
+        this.decoded[slot] = new Entry(s, bytes, hash);
+        return s;
+    }
+
+    /**
+     * Encode the topic name as UTF-8 bytes
+     * The returned bytes are shared and must not be modified
+     *
+     * @param topicName Topic Name
+     * @return UTF-8 Bytes
+     */
+    public byte[] encode(String topicName) {
+        if (this.encoded.length == 0) {
+            return topicName.getBytes(CharsetUtil.UTF_8);
+        }
+
+        int slot = topicName.hashCode() & this.mask;
+        Entry entry = this.encoded[slot];
+        if (entry != null && (entry.string == topicName || entry.string.equals(topicName))) {
+            return entry.bytes;
+        }
+
+        byte[] bytes = topicName.getBytes(CharsetUtil.UTF_8);
+        if (bytes.length <= this.maxLength) {
+            this.encoded[slot] = new Entry(topicName, bytes, 0);
+        }
+        return bytes;
+    }
+
+    private static boolean contentEquals(byte[] bytes, ByteBuf buffer, int index, int length) {
+        if (bytes.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != buffer.getByte(index + i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Immutable entry, safely published through the array without locking
+     */
+    private static final class Entry {
+
+        final String string;
+        final byte[] bytes;
+        final int bytesHash;
+
+        Entry(String string, byte[] bytes, int bytesHash) {
+            this.string = string;
+            this.bytes = bytes;
+            this.bytesHash = bytesHash;
+        }
+    }
+}
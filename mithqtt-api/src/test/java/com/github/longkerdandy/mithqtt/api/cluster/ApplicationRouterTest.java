@@ -0,0 +1,79 @@
+package com.github.longkerdandy.mithqtt.api.cluster;
+
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.api.message.MqttAdditionalHeader;
+import com.github.longkerdandy.mithqtt.api.message.MqttPublishPayload;
+import io.netty.handler.codec.mqtt.*;
+import org.apache.commons.configuration.MapConfiguration;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Application Router Test
+ */
+public class ApplicationRouterTest {
+
+    private static Message publish(String clientId, String topicName) {
+        return new Message<>(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, clientId, "user1", "broker1"),
+                MqttPublishVariableHeader.from(topicName),
+                new MqttPublishPayload(new byte[]{1}));
+    }
+
+    private static Message connect(String clientId) {
+        return new Message<>(
+                new MqttFixedHeader(MqttMessageType.CONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, clientId, "user1", "broker1"),
+                null, null);
+    }
+
+    @Test
+    public void defaultTest() {
+        ApplicationRouter router = new ApplicationRouter(new MapConfiguration(new HashMap<>()));
+        assert router.accept(connect("client1"));
+        assert router.accept(publish("client1", "a/b"));
+        assert router.partition("app", publish("client1", "a/b")).equals("app");
+    }
+
+    @Test
+    public void blankTest() {
+        // as in the shipped cluster.properties
+        Map<String, Object> map = new HashMap<>();
+        map.put("application.forward.types", "");
+        map.put("application.forward.topics", "");
+        ApplicationRouter router = new ApplicationRouter(new MapConfiguration(map));
+        assert router.accept(connect("client1"));
+        assert router.accept(publish("client1", "a/b"));
+    }
+
+    @Test
+    public void forwardTest() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("application.forward.types", "CONNECT,PUBLISH");
+        map.put("application.forward.topics", "a/+,b/#");
+        ApplicationRouter router = new ApplicationRouter(new MapConfiguration(map));
+        assert router.accept(connect("client1"));
+        assert router.accept(publish("client1", "a/b"));
+        assert router.accept(publish("client1", "b/c/d"));
+        assert !router.accept(publish("client1", "a/b/c"));
+        assert !router.accept(publish("client1", "c"));
+    }
+
+    @Test
+    public void partitionTest() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("application.partitions", 4);
+        ApplicationRouter router = new ApplicationRouter(new MapConfiguration(map));
+        String p = router.partition("app", connect("client1"));
+        assert p.startsWith("app.");
+        assert router.partition("app", publish("client1", "a/b")).equals(p);
+        assert router.partition("app", publish("client1", "c/d")).equals(p);
+
+        map.put("application.partition.key", "topic");
+        router = new ApplicationRouter(new MapConfiguration(map));
+        assert router.partition("app", publish("client1", "a/b")).equals(router.partition("app", publish("client2", "a/b")));
+    }
+}
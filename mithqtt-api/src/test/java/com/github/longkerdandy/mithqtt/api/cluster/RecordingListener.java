@@ -0,0 +1,57 @@
+package com.github.longkerdandy.mithqtt.api.cluster;
+
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.api.message.MqttPublishPayload;
+import com.github.longkerdandy.mithqtt.api.message.MqttSubscribePayloadGranted;
+import io.netty.handler.codec.mqtt.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster Listener records all received messages, shared by cluster implementation tests
+ */
+public class RecordingListener implements ClusterListener {
+
+    private final List<Message> received;
+
+    public RecordingListener(List<Message> received) {
+        this.received = received;
+    }
+
+    /**
+     * Wait until the list contains enough messages, or 5 seconds passed
+     *
+     * @param received Received messages
+     * @param count    Expected number of messages
+     */
+    public static void await(List<Message> received, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (received.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(10);
+    }
+
+    @Override
+    public void onConnect(Message<MqttConnectVariableHeader, MqttConnectPayload> msg) {
+        this.received.add(msg);
+    }
+
+    @Override
+    public void onSubscribe(Message<MqttPacketIdVariableHeader, MqttSubscribePayloadGranted> msg) {
+        this.received.add(msg);
+    }
+
+    @Override
+    public void onUnsubscribe(Message<MqttPacketIdVariableHeader, MqttUnsubscribePayload> msg) {
+        this.received.add(msg);
+    }
+
+    @Override
+    public void onPublish(Message<MqttPublishVariableHeader, MqttPublishPayload> msg) {
+        this.received.add(msg);
+    }
+
+    @Override
+    public void onDisconnect(Message<Void, Void> msg) {
+        this.received.add(msg);
+    }
+}
@@ -1,10 +1,13 @@
 package com.github.longkerdandy.mithqtt.api.message;
 
 import com.github.longkerdandy.mithqtt.util.JSONs;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.mqtt.*;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 
 /**
@@ -33,6 +36,8 @@ public class MessageTest {
         assert m.additionalHeader().clientId().equals("Test_Client");
         assert m.additionalHeader().userName().equals("Test_User");
         assert m.additionalHeader().brokerId().equals("Test_Broker");
+        assert JSONs.peekClientId(bytes).equals("Test_Client");
+        assert JSONs.peekBrokerId(bytes).equals("Test_Broker");
         assert m.variableHeader() != null;
         assert ((MqttPacketIdVariableHeader) m.variableHeader()).packetId() == 12345;
         assert m.payload() != null;
@@ -41,4 +46,30 @@ public class MessageTest {
         assert ((MqttSubscribePayloadGranted) m.payload()).subscriptions().get(0).topic().equals("abc/+/g/h");
         assert ((MqttSubscribePayloadGranted) m.payload()).subscriptions().get(0).grantedQos() == MqttGrantedQoS.AT_MOST_ONCE;
     }
+
+    @Test
+    public void fromPublishTest() {
+        MqttFixedHeader fixedHeader = new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0);
+        MqttPublishVariableHeader variableHeader = MqttPublishVariableHeader.from("a/b");
+
+        // exact size array is taken without copying
+        byte[] bytes = new byte[]{1, 2, 3};
+        Message<MqttPublishVariableHeader, MqttPublishPayload> m = Message.fromMqttMessage(
+                new MqttPublishMessage(fixedHeader, variableHeader, Unpooled.wrappedBuffer(bytes)), MqttVersion.MQTT_3_1_1, "client1", "user1", "broker1");
+        assert m.payload().bytes() == bytes;
+
+        // part of an array is copied
+        m = Message.fromMqttMessage(
+                new MqttPublishMessage(fixedHeader, variableHeader, Unpooled.wrappedBuffer(bytes, 1, 2)), MqttVersion.MQTT_3_1_1, "client1", "user1", "broker1");
+        assert m.payload().bytes() != bytes;
+        assert Arrays.equals(m.payload().bytes(), new byte[]{2, 3});
+
+        // direct buffer is copied
+        ByteBuf direct = Unpooled.directBuffer(3).writeBytes(bytes);
+        m = Message.fromMqttMessage(
+                new MqttPublishMessage(fixedHeader, variableHeader, direct), MqttVersion.MQTT_3_1_1, "client1", "user1", "broker1");
+        assert Arrays.equals(m.payload().bytes(), bytes);
+        assert direct.readableBytes() == 3;
+        direct.release();
+    }
 }
@@ -0,0 +1,47 @@
+package com.github.longkerdandy.mithqtt.util;
+
+import org.junit.Test;
+
+/**
+ * LRU Cache Test
+ */
+public class LRUCacheTest {
+
+    @Test
+    public void evictTest() {
+        LRUCache<String, String> cache = new LRUCache<>(2, 0);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assert cache.get("a").equals("1");
+        cache.put("c", "3");
+        assert cache.size() == 2;
+        assert cache.get("a").equals("1");
+        assert cache.get("b") == null;
+        assert cache.get("c").equals("3");
+
+        cache.remove("a");
+        assert cache.get("a") == null;
+        cache.clear();
+        assert cache.size() == 0;
+    }
+
+    @Test
+    public void disabledTest() {
+        LRUCache<String, String> cache = new LRUCache<>(0, 0);
+        assert !cache.enabled();
+        cache.put("a", "1");
+        assert cache.get("a") == null;
+        assert cache.computeIfAbsent("a", k -> "2").equals("2");
+        assert cache.size() == 0;
+    }
+
+    @Test
+    public void expireTest() throws InterruptedException {
+        LRUCache<String, String> cache = new LRUCache<>(10, 50);
+        assert cache.computeIfAbsent("a", k -> "1").equals("1");
+        assert cache.computeIfAbsent("a", k -> "2").equals("1");
+        Thread.sleep(100);
+        assert cache.get("a") == null;
+        assert cache.computeIfAbsent("a", k -> "2").equals("2");
+    }
+}
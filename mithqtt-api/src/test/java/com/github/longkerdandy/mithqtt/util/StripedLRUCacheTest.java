@@ -0,0 +1,41 @@
+package com.github.longkerdandy.mithqtt.util;
+
+import org.junit.Test;
+
+/**
+ * Striped LRU Cache Test
+ */
+public class StripedLRUCacheTest {
+
+    @Test
+    public void stripesTest() {
+        assert !new StripedLRUCache<String, String>(0, 0).enabled();
+        assert new StripedLRUCache<String, String>(2, 0, 16).stripes() == 1;
+        assert new StripedLRUCache<String, String>(64 * 16, 0, 16).stripes() == 16;
+        assert new StripedLRUCache<String, String>(64 * 16, 0, 4).stripes() == 4;
+        assert new StripedLRUCache<String, String>(64 * 5, 0, 16).stripes() == 4;
+    }
+
+    @Test
+    public void cacheTest() {
+        StripedLRUCache<String, Integer> cache = new StripedLRUCache<>(1024, 0, 4);
+        assert cache.enabled();
+        for (int i = 0; i < 1024; i++) {
+            cache.put("key" + i, i);
+        }
+        assert cache.get("key1") == 1;
+        assert cache.computeIfAbsent("key2", k -> 0) == 2;
+        assert cache.computeIfAbsent("other", k -> 5) == 5;
+
+        // bounded per stripe
+        for (int i = 0; i < 10000; i++) {
+            cache.put("more" + i, i);
+        }
+        assert cache.size() <= 1024;
+
+        assert cache.remove("more9999") == 9999;
+        assert cache.get("more9999") == null;
+        cache.clear();
+        assert cache.size() == 0;
+    }
+}
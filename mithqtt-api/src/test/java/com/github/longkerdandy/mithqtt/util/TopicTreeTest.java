@@ -0,0 +1,64 @@
+package com.github.longkerdandy.mithqtt.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Topic Filter Tree Test
+ */
+public class TopicTreeTest {
+
+    private static Set<String> matches(TopicTree<String> tree, String topicName) {
+        Set<String> set = new HashSet<>();
+        tree.forEachMatch(Topics.sanitize(topicName), set::add);
+        return set;
+    }
+
+    @Test
+    public void matchTest() {
+        List<String> filters = Arrays.asList("a/b/c", "a/+/c", "a/+", "a/#", "+/+", "#", "$SYS/#", "+/a", "/+");
+        TopicTree<String> tree = new TopicTree<>();
+        filters.forEach(f -> tree.put(Topics.sanitize(f), f));
+
+        // same results as testing every topic filter
+        for (String name : Arrays.asList("a/b/c", "a/b", "a", "a/b/c/d", "/a", "$SYS/a", "b/a", "b", "/")) {
+            Set<String> expected = new HashSet<>();
+            for (String f : filters) {
+                if (Topics.match(Topics.sanitize(f), Topics.sanitize(name))) expected.add(f);
+            }
+            assert matches(tree, name).equals(expected) : name;
+            assert tree.anyMatch(Topics.sanitize(name)) == !expected.isEmpty();
+        }
+    }
+
+    @Test
+    public void removeTest() {
+        TopicTree<String> tree = new TopicTree<>();
+        tree.put(Topics.sanitize("a/+"), "a/+");
+        tree.put(Topics.sanitize("a/+/c"), "a/+/c");
+        assert tree.get(Topics.sanitize("a/+")).equals("a/+");
+        assert tree.get(Topics.sanitize("a")) == null;
+
+        assert tree.remove(Topics.sanitize("a/+")).equals("a/+");
+        assert tree.remove(Topics.sanitize("a/+")) == null;
+        assert matches(tree, "a/b").isEmpty();
+        assert matches(tree, "a/b/c").contains("a/+/c");
+
+        assert tree.remove(Topics.sanitize("a/+/c")).equals("a/+/c");
+        assert tree.isEmpty();
+
+        List<String> created = new ArrayList<>();
+        tree.computeIfAbsent(Topics.sanitize("a/#"), l -> {
+            created.add(Topics.join(l));
+            return "a/#";
+        });
+        tree.computeIfAbsent(Topics.sanitize("a/#"), l -> "other");
+        assert created.size() == 1;
+        assert tree.get(Topics.sanitize("a/#")).equals("a/#");
+    }
+}
@@ -3,6 +3,7 @@ package com.github.longkerdandy.mithqtt.util;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.List;
 
 import static com.github.longkerdandy.mithqtt.util.Topics.EMPTY;
 import static com.github.longkerdandy.mithqtt.util.Topics.END;
@@ -107,6 +108,22 @@ public class TopicsTest {
         assert !Topics.isTopicFilter(Arrays.asList(EMPTY, "abc", "def", "g", "h", END));
     }
 
+    @Test
+    public void matchTest() {
+        assert Topics.match(Topics.sanitize("a/b/c"), Topics.sanitize("a/b/c"));
+        assert !Topics.match(Topics.sanitize("a/b/c"), Topics.sanitize("a/b"));
+        assert Topics.match(Topics.sanitize("a/+/c"), Topics.sanitize("a/b/c"));
+        assert !Topics.match(Topics.sanitize("a/+"), Topics.sanitize("a"));
+        assert !Topics.match(Topics.sanitize("a/+"), Topics.sanitize("a/b/c"));
+        assert Topics.match(Topics.sanitize("a/#"), Topics.sanitize("a"));
+        assert Topics.match(Topics.sanitize("a/#"), Topics.sanitize("a/b/c"));
+        assert Topics.match(Topics.sanitize("+/+"), Topics.sanitize("/a"));
+        assert Topics.match(Topics.sanitize("#"), Topics.sanitize("a/b/c"));
+        assert !Topics.match(Topics.sanitize("#"), Topics.sanitize("$SYS/a"));
+        assert !Topics.match(Topics.sanitize("+/a"), Topics.sanitize("$SYS/a"));
+        assert Topics.match(Topics.sanitize("$SYS/#"), Topics.sanitize("$SYS/a"));
+    }
+
     @Test
     public void antidoteTest() {
         assert Topics.antidote(Arrays.asList(new String[]{"abc", "+", "g", "h", END})).equals("abc/+/g/h");
@@ -122,4 +139,43 @@ public class TopicsTest {
         assert Topics.antidote(Arrays.asList(new String[]{EMPTY, "abc", "def", "g", "h", EMPTY, END})).equals("/abc/def/g/h/");
         assert Topics.antidote(Arrays.asList(new String[]{EMPTY, "abc", "def", EMPTY, "g", "h", END})).equals("/abc/def//g/h");
     }
+
+    @Test
+    public void internTest() {
+        Topics.initCache(0);
+        assert Topics.sanitizeTopicName("a/b") != Topics.sanitizeTopicName("a/b");
+
+        Topics.initCache(2);
+        try {
+            List<String> levels = Topics.sanitizeTopicName("/a/b/");
+            assert levels == Topics.sanitizeTopicName("/a/b/");
+            assert levels.equals(Arrays.asList(EMPTY, "a", "b", EMPTY, END));
+            assert levels.hashCode() == Arrays.asList(EMPTY, "a", "b", EMPTY, END).hashCode();
+            assert Topics.join(levels).equals(String.join("/", levels));
+            assert Topics.join("topic:n:", levels) == Topics.join("topic:n:", levels);
+            assert Topics.join("topic:n:", levels).equals("topic:n:" + String.join("/", levels));
+
+            // least recently used dropped
+            Topics.sanitizeTopicName("c");
+            Topics.sanitizeTopicName("d");
+            assert levels != Topics.sanitizeTopicName("/a/b/");
+        } finally {
+            Topics.initCache(0);
+        }
+    }
+
+    @Test
+    public void internImmutableTest() {
+        // mutable if not interned
+        Topics.sanitizeTopicName("a/b").add("c");
+
+        Topics.initCache(2);
+        try {
+            Topics.sanitizeTopicName("a/b").add("c");
+            assert false;
+        } catch (UnsupportedOperationException ignore) {
+        } finally {
+            Topics.initCache(0);
+        }
+    }
 }
@@ -18,9 +18,11 @@ package io.netty.handler.codec.mqtt;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.util.CharsetUtil;
 import org.easymock.Mock;
 import org.junit.Before;
@@ -324,6 +326,99 @@ public class MqttCodecTest {
         validatePublishPayload(message.payload(), decodedMessage.payload());
     }
 
+    @Test
+    public void testLargePublishMessage() throws Exception {
+        MqttFixedHeader mqttFixedHeader =
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_LEAST_ONCE, false, 0);
+        MqttPublishVariableHeader mqttPublishVariableHeader = MqttPublishVariableHeader.from("/abc", 1234);
+        ByteBuf payload = ALLOCATOR.buffer();
+        payload.writeBytes(new byte[MqttEncoder.PUBLISH_COPY_THRESHOLD * 4]);
+        final MqttPublishMessage message = new MqttPublishMessage(mqttFixedHeader, mqttPublishVariableHeader, payload);
+
+        // payload is not copied but retained by the encoded buffer
+        ByteBuf byteBuf = MqttEncoder.doEncode(ALLOCATOR, message);
+        assertEquals(true, byteBuf instanceof CompositeByteBuf);
+        assertEquals(2, payload.refCnt());
+        assertEquals(0, payload.readerIndex());
+
+        final List<Object> out = new LinkedList<>();
+        mqttDecoder.decode(ctx, byteBuf, out);
+
+        assertEquals("Expected one object bout got " + out.size(), 1, out.size());
+
+        final MqttPublishMessage decodedMessage = (MqttPublishMessage) out.get(0);
+        validateFixedHeaders(message.fixedHeader(), decodedMessage.fixedHeader());
+        validatePublishVariableHeader(message.variableHeader(), decodedMessage.variableHeader());
+        validatePublishPayload(message.payload(), decodedMessage.payload());
+
+        decodedMessage.release();
+        byteBuf.release();
+        assertEquals(1, payload.refCnt());
+    }
+
+    @Test
+    public void testPublishFrame() throws Exception {
+        ByteBuf payload = ALLOCATOR.buffer();
+        payload.writeBytes("whatever".getBytes(CharsetUtil.UTF_8));
+        MqttPublishFrame frame = new MqttPublishFrame("/abc", payload);
+
+        // the same frame encoded for recipients with different QoS and packet id
+        for (int i = 0; i < 3; i++) {
+            final MqttPublishMessage message = frame.message(MqttQoS.valueOf(i), false, i);
+            ByteBuf byteBuf = MqttEncoder.doEncode(ALLOCATOR, message);
+            message.release();
+
+            final List<Object> out = new LinkedList<>();
+            mqttDecoder.decode(ctx, byteBuf, out);
+
+            assertEquals("Expected one object bout got " + out.size(), 1, out.size());
+
+            final MqttPublishMessage decodedMessage = (MqttPublishMessage) out.get(0);
+            validateFixedHeaders(message.fixedHeader(), decodedMessage.fixedHeader());
+            validatePublishVariableHeader(message.variableHeader(), decodedMessage.variableHeader());
+            validatePublishPayload(payload, decodedMessage.payload());
+        }
+        assertEquals(1, payload.refCnt());
+    }
+
+    @Test
+    public void testStreamedPublishMessage() throws Exception {
+        MqttFixedHeader mqttFixedHeader =
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_LEAST_ONCE, false, 0);
+        MqttPublishVariableHeader mqttPublishVariableHeader = MqttPublishVariableHeader.from("/abc", 1234);
+        ByteBuf payload = ALLOCATOR.buffer();
+        for (int i = 0; i < 1000; i++) {
+            payload.writeByte(i);
+        }
+        final MqttPublishMessage message = new MqttPublishMessage(mqttFixedHeader, mqttPublishVariableHeader, payload);
+        ByteBuf byteBuf = MqttEncoder.doEncode(ALLOCATOR, message);
+
+        // feed the decoder in pieces, payload is emitted as chunks when available
+        EmbeddedChannel channel = new EmbeddedChannel(new MqttDecoder(100, 256));
+        channel.writeInbound(byteBuf.readRetainedSlice(20));
+        final MqttStreamedPublishMessage header = channel.readInbound();
+        validateFixedHeaders(message.fixedHeader(), header.fixedHeader());
+        validatePublishVariableHeader(message.variableHeader(), header.variableHeader());
+        assertEquals(1000, header.payloadLength());
+
+        ByteBuf received = ALLOCATOR.buffer();
+        channel.writeInbound(byteBuf.readRetainedSlice(500));
+        channel.writeInbound(byteBuf);
+        MqttPublishChunk chunk;
+        while ((chunk = channel.readInbound()) != null) {
+            assertEquals(true, chunk.content().readableBytes() <= 256);
+            received.writeBytes(chunk.content());
+            assertEquals(received.readableBytes() == 1000, chunk.isLast());
+            chunk.release();
+        }
+        validatePublishPayload(payload, received);
+
+        // not streamed if disabled
+        channel = new EmbeddedChannel(new MqttDecoder(100));
+        channel.writeInbound(MqttEncoder.doEncode(ALLOCATOR, message));
+        assertEquals(true, ((MqttMessage) channel.readInbound()).decoderResult().isFailure());
+    }
+
     @Test
     public void testPubAckMessage() throws Exception {
         testMessageWithOnlyFixedHeaderAndMessageIdVariableHeader(MqttMessageType.PUBACK);
@@ -0,0 +1,50 @@
+package io.netty.handler.codec.mqtt;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * MQTT Topic Name Cache Test
+ */
+public class MqttTopicCacheTest {
+
+    @Test
+    public void encodeTest() {
+        MqttTopicCache cache = new MqttTopicCache(16, 256);
+        byte[] bytes = cache.encode("a/b/中文");
+        assert Arrays.equals(bytes, "a/b/中文".getBytes(CharsetUtil.UTF_8));
+        assert bytes == cache.encode(new String("a/b/中文"));
+
+        // long topic name not cached
+        String longTopic = new String(new char[300]).replace('\0', 'a');
+        assert cache.encode(longTopic) != cache.encode(longTopic);
+
+        // disabled
+        MqttTopicCache disabled = new MqttTopicCache(0, 256);
+        assert disabled.encode("a/b") != disabled.encode("a/b");
+    }
+
+    @Test
+    public void decodeTest() {
+        MqttTopicCache cache = new MqttTopicCache(16, 256);
+        ByteBuf buf = Unpooled.buffer();
+        buf.writeBytes("xxa/b/中文".getBytes(CharsetUtil.UTF_8));
+        int length = buf.readableBytes() - 2;
+
+        String s = cache.decode(buf, 2, length);
+        assert s.equals("a/b/中文");
+        assert s == cache.decode(Unpooled.copiedBuffer("a/b/中文", CharsetUtil.UTF_8), 0, length);
+        assert buf.readerIndex() == 0;
+
+        // collision replaces the entry, content is always compared
+        for (int i = 0; i < 100; i++) {
+            String topic = "topic/" + i;
+            assert cache.decode(Unpooled.copiedBuffer(topic, CharsetUtil.UTF_8), 0, topic.length()).equals(topic);
+        }
+        assert cache.decode(buf, 2, length).equals("a/b/中文");
+    }
+}
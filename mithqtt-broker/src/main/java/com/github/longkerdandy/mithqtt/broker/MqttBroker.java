@@ -1,33 +1,45 @@
 package com.github.longkerdandy.mithqtt.broker;
 
 import com.github.longkerdandy.mithqtt.api.auth.Authenticator;
+import com.github.longkerdandy.mithqtt.api.auth.AuthorizeCache;
 import com.github.longkerdandy.mithqtt.api.cluster.Cluster;
 import com.github.longkerdandy.mithqtt.api.storage.sync.SyncStorage;
 import com.github.longkerdandy.mithqtt.broker.cluster.BrokerClusterListenerFactoryImpl;
+import com.github.longkerdandy.mithqtt.broker.cluster.InterestRegistry;
+import com.github.longkerdandy.mithqtt.broker.handler.FanOutExecutor;
+import com.github.longkerdandy.mithqtt.broker.handler.KeepAliveHandler;
+import com.github.longkerdandy.mithqtt.broker.handler.PublishAggregator;
 import com.github.longkerdandy.mithqtt.broker.handler.SyncStorageHandler;
+import com.github.longkerdandy.mithqtt.broker.handler.WebSocketFrameCodec;
+import com.github.longkerdandy.mithqtt.broker.session.KeepAliveSupervisor;
+import com.github.longkerdandy.mithqtt.broker.session.SessionMeter;
 import com.github.longkerdandy.mithqtt.broker.session.SessionRegistry;
+import com.github.longkerdandy.mithqtt.broker.session.SessionSweeper;
+import com.github.longkerdandy.mithqtt.broker.util.SslSupport;
 import com.github.longkerdandy.mithqtt.broker.util.Validator;
+import com.github.longkerdandy.mithqtt.util.Topics;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
 import io.netty.handler.codec.mqtt.MqttDecoder;
 import io.netty.handler.codec.mqtt.MqttEncoder;
-import io.netty.handler.logging.LogLevel;
-import io.netty.handler.logging.LoggingHandler;
-import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.Slf4JLoggerFactory;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * MQTT Bridge
@@ -60,42 +72,117 @@ public class MqttBroker {
 
         final String brokerId = brokerConfig.getString("broker.id");
 
+        // interned topic names
+        Topics.initCache(brokerConfig.getInt("mqtt.topic.cache.size", 0));
+
         // validator
         logger.debug("Initializing validator ...");
         Validator validator = new Validator(brokerConfig);
 
         // session registry
         logger.debug("Initializing session registry ...");
-        SessionRegistry registry = new SessionRegistry();
+        SessionRegistry registry = new SessionRegistry(brokerConfig.getInt("mqtt.session.registry.capacity", 16));
 
         // storage
         logger.debug("Initializing storage storage ...");
         SyncStorage storage = (SyncStorage) Class.forName(storageConfig.getString("storage.sync.class")).newInstance();
         storage.init(storageConfig);
 
+        // cluster-wide subscription interest
+        InterestRegistry interestRegistry = null;
+        final long interestInterval = brokerConfig.getLong("mqtt.interest.sync.interval", 5000);
+        if (brokerConfig.getBoolean("mqtt.interest.enabled", false)) {
+            logger.debug("Initializing interest registry ...");
+            interestRegistry = new InterestRegistry(brokerId, interestInterval * 3);
+        }
+        final InterestRegistry interests = interestRegistry;
+
         // cluster
         logger.debug("Initializing cluster ...");
         Cluster cluster = (Cluster) Class.forName(clusterConfig.getString("cluster.class")).newInstance();
-        cluster.init(clusterConfig, new BrokerClusterListenerFactoryImpl(registry));
+        cluster.init(clusterConfig, new BrokerClusterListenerFactoryImpl(registry, interests));
+        if (interests != null) interests.setCluster(cluster);
 
         // authenticator
         logger.debug("Initializing authenticator...");
         Authenticator authenticator = (Authenticator) Class.forName(authenticatorConfig.getString("authenticator.class")).newInstance();
         authenticator.init(authenticatorConfig);
 
+        // authorize cache
+        AuthorizeCache authorizeCache = null;
+        if (StringUtils.isNotBlank(brokerConfig.getString("mqtt.authorize.cache.class"))) {
+            logger.debug("Initializing authorize cache ...");
+            authorizeCache = (AuthorizeCache) Class.forName(brokerConfig.getString("mqtt.authorize.cache.class")).newInstance();
+            authorizeCache.init(brokerConfig);
+            authenticator.registerInvalidator(authorizeCache);
+        }
+        final AuthorizeCache cache = authorizeCache;
+
+        // session sweeper
+        final int sessionExpiry = brokerConfig.getInt("mqtt.session.expiry", 0);
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor();
+        if (sessionExpiry > 0) {
+            logger.debug("Initializing session sweeper ...");
+            long sweepInterval = brokerConfig.getLong("mqtt.session.sweep.interval", 1000);
+            sweeper.scheduleWithFixedDelay(new SessionSweeper(storage, sessionExpiry, brokerConfig.getInt("mqtt.session.sweep.count", 100)),
+                    sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+        }
+
+        // interest sync
+        if (interests != null) {
+            sweeper.scheduleWithFixedDelay(interests::sync, 0, interestInterval, TimeUnit.MILLISECONDS);
+        }
+
+        // session meter
+        final long meterInterval = brokerConfig.getLong("mqtt.session.metrics.interval", 0);
+        if (meterInterval > 0) {
+            SessionMeter meter = new SessionMeter(registry);
+            sweeper.scheduleWithFixedDelay(meter::report, meterInterval, meterInterval, TimeUnit.MILLISECONDS);
+        }
+
+        // fan-out executor
+        final FanOutExecutor fanOut = new FanOutExecutor(brokerConfig.getInt("mqtt.fanout.threads", Runtime.getRuntime().availableProcessors()),
+                brokerConfig.getInt("mqtt.fanout.threshold", 0), brokerConfig.getInt("mqtt.fanout.queue", 1024));
+
         // broker
         final int keepAlive = brokerConfig.getInt("mqtt.keepalive.default");
         final int keepAliveMax = brokerConfig.getInt("mqtt.keepalive.max");
-        final boolean ssl = brokerConfig.getBoolean("mqtt.ssl.enabled");
-        final SslContext sslContext = ssl ? SslContextBuilder.forServer(new File(brokerConfig.getString("mqtt.ssl.certPath")), new File(brokerConfig.getString("mqtt.ssl.keyPath")), brokerConfig.getString("mqtt.ssl.keyPassword")).build() : null;
-        final String host = brokerConfig.getString("mqtt.host");
-        final int port = ssl ? brokerConfig.getInt("mqtt.ssl.port") : brokerConfig.getInt("mqtt.port");
+        final KeepAliveSupervisor keepAliveSupervisor = new KeepAliveSupervisor(brokerConfig.getLong("mqtt.keepalive.tick", 1000),
+                brokerConfig.getInt("mqtt.keepalive.wheel", 512));
+        final List<MqttListener> listeners = MqttListener.fromConfig(brokerConfig);
+        final SslSupport sslSupport = listeners.stream().anyMatch(MqttListener::ssl) ? new SslSupport(brokerConfig) : null;
+        if (sslSupport != null) {
+            long sslReportInterval = brokerConfig.getLong("mqtt.ssl.metrics.interval", 60000);
+            sweeper.scheduleWithFixedDelay(() -> sslSupport.report(sslReportInterval), sslReportInterval, sslReportInterval, TimeUnit.MILLISECONDS);
+        }
+        final int maxBytesInMessage = brokerConfig.getInt("mqtt.message.max.bytes", 8092);
+        final int maxChunkSize = brokerConfig.getInt("mqtt.message.chunk.bytes", 0);
+        final int streamBudget = brokerConfig.getInt("mqtt.message.stream.budget", 4194304);
+        final Semaphore streamBudgetTotal = new Semaphore(brokerConfig.getInt("mqtt.message.stream.budget.total", 268435456));
+
+        // mqtt handlers shared by all transports
+        final SyncStorageHandler logicHandler = new SyncStorageHandler(authenticator, cache, cluster, storage, registry, validator, interests, fanOut, brokerId, keepAlive, keepAliveMax, sessionExpiry);
+        final Consumer<ChannelPipeline> mqttHandlers = p -> {
+            // idle
+            p.addFirst("idleHandler", new KeepAliveHandler(keepAliveSupervisor, keepAlive));
+            // mqtt encoder & decoder
+            p.addLast("encoder", MqttEncoder.INSTANCE);
+            p.addLast("decoder", new MqttDecoder(maxBytesInMessage, maxChunkSize));
+            // streamed publish aggregator
+            if (maxChunkSize > 0) {
+                p.addLast("aggregator", new PublishAggregator(streamBudget, streamBudgetTotal));
+            }
+            // logic handler, shared by all connections
+            p.addLast("logicHandler", logicHandler);
+        };
 
         // tcp server
         logger.debug("Initializing tcp server ...");
         InternalLoggerFactory.setDefaultFactory(Slf4JLoggerFactory.INSTANCE);
-        EventLoopGroup bossGroup = brokerConfig.getBoolean("netty.useEpoll") ? new EpollEventLoopGroup() : new NioEventLoopGroup();
-        EventLoopGroup workerGroup = brokerConfig.getBoolean("netty.useEpoll") ? new EpollEventLoopGroup() : new NioEventLoopGroup();
+        final NettyTransport transport = new NettyTransport(brokerConfig);
+        logger.info("Netty transport: {}", transport);
+        EventLoopGroup bossGroup = transport.newBossGroup();
+        EventLoopGroup workerGroup = transport.newWorkerGroup();
         // EventLoopGroup handlerGroup = brokerConfig.getBoolean("netty.useEpoll") ? new EpollEventLoopGroup() : new NioEventLoopGroup();
 
         // shutdown hook
@@ -105,6 +192,9 @@ public class MqttBroker {
 
                 workerGroup.shutdownGracefully();
                 bossGroup.shutdownGracefully();
+                sweeper.shutdownNow();
+                keepAliveSupervisor.stop();
+                fanOut.shutdown();
                 cluster.destroy();
                 authenticator.destroy();
                 storage.destroy();
@@ -113,38 +203,48 @@ public class MqttBroker {
             }
         });
 
-        ServerBootstrap b = new ServerBootstrap();
-        b.group(bossGroup, workerGroup)
-                .channel(brokerConfig.getBoolean("netty.useEpoll") ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
-                .handler(new LoggingHandler(LogLevel.INFO))
-                .childHandler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    public void initChannel(SocketChannel ch) throws Exception {
-                        ChannelPipeline p = ch.pipeline();
-                        // ssl
-                        if (ssl) {
-                            p.addLast("ssl", sslContext.newHandler(ch.alloc()));
+        List<ChannelFuture> futures = new ArrayList<>();
+        for (MqttListener listener : listeners) {
+            logger.debug("Initializing listener {} ...", listener);
+            ServerBootstrap b = new ServerBootstrap();
+            transport.configure(b);
+            b.group(bossGroup, workerGroup)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        public void initChannel(SocketChannel ch) throws Exception {
+                            ChannelPipeline p = ch.pipeline();
+                            // ssl
+                            if (listener.ssl()) {
+                                p.addLast("ssl", sslSupport.newHandler(ch.alloc()));
+                            }
+                            // websocket
+                            if (listener.websocket()) {
+                                // http upgrade, only the handshake request is aggregated
+                                p.addLast("httpCodec", new HttpServerCodec());
+                                p.addLast("httpAggregator", new HttpObjectAggregator(65536));
+                                p.addLast("websocketHandler", new WebSocketServerProtocolHandler(listener.websocketPath(), "mqtt,mqttv3.1,mqttv3.1.1", true, listener.websocketMaxFrameSize()));
+                                // websocket binary frames <-> bytes
+                                p.addLast("websocketCodec", WebSocketFrameCodec.INSTANCE);
+                            }
+                            // mqtt
+                            mqttHandlers.accept(p);
                         }
-                        // idle
-                        p.addFirst("idleHandler", new IdleStateHandler(0, 0, keepAlive));
-                        // mqtt encoder & decoder
-                        p.addLast("encoder", MqttEncoder.INSTANCE);
-                        p.addLast("decoder", new MqttDecoder());
-                        // logic handler
-                        // p.addLast(handlerGroup, "logicHandler", new SyncRedisHandler(authenticator, cluster, storage, registry, validator, brokerId, keepAlive, keepAliveMax));
-                        p.addLast("logicHandler", new SyncStorageHandler(authenticator, cluster, storage, registry, validator, brokerId, keepAlive, keepAliveMax));
-                    }
-                })
-                .option(ChannelOption.SO_BACKLOG, brokerConfig.getInt("netty.soBacklog"))
-                .childOption(ChannelOption.SO_KEEPALIVE, brokerConfig.getBoolean("netty.soKeepAlive"));
-
-        // Bind and start to accept incoming connections.
-        ChannelFuture f = b.bind(host, port).sync();
+                    });
+
+            // Bind and start to accept incoming connections.
+            // With epoll, each listener binds multiple acceptor channels to the same port by SO_REUSEPORT,
+            // the kernel distributes incoming connections among them, each served by its own boss thread
+            for (int i = 0; i < transport.acceptors(); i++) {
+                futures.add(b.bind(listener.host(), listener.port()).sync());
+            }
+        }
 
         logger.info("MQTT broker is up and running.");
 
-        // Wait until the server socket is closed.
+        // Wait until the server sockets are closed.
         // Do this to gracefully shut down the server.
-        f.channel().closeFuture().sync();
+        for (ChannelFuture f : futures) {
+            f.channel().closeFuture().sync();
+        }
     }
 }
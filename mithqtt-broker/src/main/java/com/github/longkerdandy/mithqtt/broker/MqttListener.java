@@ -0,0 +1,97 @@
+package com.github.longkerdandy.mithqtt.broker;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MQTT Listener
+ * A network endpoint the broker accepts connections on
+ */
+public class MqttListener {
+
+    private final String name;
+    private final String host;
+    private final int port;
+    private final boolean ssl;
+    // WebSocket path, null if plain MQTT over TCP
+    private final String websocketPath;
+    private final int websocketMaxFrameSize;
+
+    public MqttListener(String name, String host, int port, boolean ssl, String websocketPath, int websocketMaxFrameSize) {
+        this.name = name;
+        this.host = host;
+        this.port = port;
+        this.ssl = ssl;
+        this.websocketPath = websocketPath;
+        this.websocketMaxFrameSize = websocketMaxFrameSize;
+    }
+
+    /**
+     * Load listeners from broker configuration
+     * Listeners are named by mqtt.listeners and configured by mqtt.listener.{name}.*
+     * If mqtt.listeners is absent, a single listener is configured by mqtt.port, mqtt.ssl.* and mqtt.websocket.*
+     *
+     * @param config Broker Configuration
+     * @return List of Listeners
+     */
+    public static List<MqttListener> fromConfig(AbstractConfiguration config) {
+        String host = config.getString("mqtt.host");
+        List<MqttListener> listeners = new ArrayList<>();
+        String[] names = config.getStringArray("mqtt.listeners");
+        if (names.length == 0) {
+            boolean ssl = config.getBoolean("mqtt.ssl.enabled", false);
+            listeners.add(new MqttListener("mqtt", host, ssl ? config.getInt("mqtt.ssl.port") : config.getInt("mqtt.port"), ssl, null, 0));
+            if (config.getBoolean("mqtt.websocket.enabled", false)) {
+                listeners.add(new MqttListener("websocket", host, config.getInt("mqtt.websocket.port", 8080), ssl,
+                        config.getString("mqtt.websocket.path", "/mqtt"), config.getInt("mqtt.websocket.maxFrameSize", 65536)));
+            }
+            return listeners;
+        }
+        for (String name : names) {
+            String prefix = "mqtt.listener." + name + ".";
+            boolean websocket = "websocket".equalsIgnoreCase(config.getString(prefix + "protocol", "mqtt"));
+            listeners.add(new MqttListener(name,
+                    config.getString(prefix + "host", host),
+                    config.getInt(prefix + "port"),
+                    config.getBoolean(prefix + "ssl", false),
+                    websocket ? config.getString(prefix + "path", "/mqtt") : null,
+                    config.getInt(prefix + "maxFrameSize", 65536)));
+        }
+        return listeners;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String host() {
+        return host;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public boolean ssl() {
+        return ssl;
+    }
+
+    public boolean websocket() {
+        return websocketPath != null;
+    }
+
+    public String websocketPath() {
+        return websocketPath;
+    }
+
+    public int websocketMaxFrameSize() {
+        return websocketMaxFrameSize;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + (websocket() ? (ssl ? "wss://" : "ws://") : (ssl ? "ssl://" : "tcp://")) + host + ":" + port + (websocket() ? websocketPath : "");
+    }
+}
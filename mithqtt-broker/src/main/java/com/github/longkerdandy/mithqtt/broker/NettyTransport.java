@@ -0,0 +1,170 @@
+package com.github.longkerdandy.mithqtt.broker;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.logging.LogLevel;
+import io.netty.handler.logging.LoggingHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.commons.configuration.AbstractConfiguration;
+
+/**
+ * Netty Transport
+ * Event loops, allocator and socket options of the broker's server channels, loaded from configuration
+ */
+public class NettyTransport {
+
+    private final boolean epoll;
+    private final int acceptors;
+    private final int bossThreads;
+    private final int workerThreads;
+    private final int ioRatio;
+    private final boolean logging;
+
+    private final ByteBufAllocator allocator;
+    private final String allocatorDesc;
+
+    private final int soBacklog;
+    private final boolean soKeepAlive;
+    private final boolean tcpNoDelay;
+    private final int soSndBuf;
+    private final int soRcvBuf;
+    private final WriteBufferWaterMark waterMark;
+    private final EpollMode epollMode;
+
+    public NettyTransport(AbstractConfiguration config) {
+        this.epoll = config.getBoolean("netty.useEpoll");
+        // SO_REUSEPORT acceptors only work with epoll
+        this.acceptors = this.epoll ? config.getInt("netty.acceptors", 1) : 1;
+        // 0 means Netty default (2 * available processors)
+        this.bossThreads = config.getInt("netty.bossThreads", this.acceptors > 1 ? this.acceptors : 0);
+        this.workerThreads = config.getInt("netty.workerThreads", 0);
+        this.ioRatio = config.getInt("netty.ioRatio", 50);
+        this.logging = config.getBoolean("netty.logging", true);
+
+        if ("unpooled".equalsIgnoreCase(config.getString("netty.allocator", "pooled"))) {
+            boolean preferDirect = config.getBoolean("netty.allocator.preferDirect", true);
+            this.allocator = new UnpooledByteBufAllocator(preferDirect);
+            this.allocatorDesc = "unpooled(preferDirect=" + preferDirect + ")";
+        } else {
+            boolean preferDirect = config.getBoolean("netty.allocator.preferDirect", true);
+            int heapArenas = config.getInt("netty.allocator.heapArenas", PooledByteBufAllocator.defaultNumHeapArena());
+            int directArenas = config.getInt("netty.allocator.directArenas", PooledByteBufAllocator.defaultNumDirectArena());
+            int pageSize = config.getInt("netty.allocator.pageSize", PooledByteBufAllocator.defaultPageSize());
+            int maxOrder = config.getInt("netty.allocator.maxOrder", PooledByteBufAllocator.defaultMaxOrder());
+            this.allocator = new PooledByteBufAllocator(preferDirect, heapArenas, directArenas, pageSize, maxOrder);
+            this.allocatorDesc = "pooled(preferDirect=" + preferDirect + ", heapArenas=" + heapArenas + ", directArenas=" + directArenas
+                    + ", pageSize=" + pageSize + ", maxOrder=" + maxOrder + ")";
+        }
+
+        this.soBacklog = config.getInt("netty.soBacklog");
+        this.soKeepAlive = config.getBoolean("netty.soKeepAlive");
+        this.tcpNoDelay = config.getBoolean("netty.tcpNoDelay", true);
+        // 0 means operating system default
+        this.soSndBuf = config.getInt("netty.soSndBuf", 0);
+        this.soRcvBuf = config.getInt("netty.soRcvBuf", 0);
+        this.waterMark = new WriteBufferWaterMark(config.getInt("netty.writeBufferLowWaterMark", 32 * 1024),
+                config.getInt("netty.writeBufferHighWaterMark", 64 * 1024));
+        this.epollMode = "level".equalsIgnoreCase(config.getString("netty.epollMode", "edge")) ? EpollMode.LEVEL_TRIGGERED : EpollMode.EDGE_TRIGGERED;
+    }
+
+    /**
+     * Create event loop group for acceptor channels
+     *
+     * @return EventLoopGroup
+     */
+    public EventLoopGroup newBossGroup() {
+        return newGroup(this.bossThreads, "mqtt-boss");
+    }
+
+    /**
+     * Create event loop group for connections
+     * Threads are named mqtt-worker-*, so they can be pinned to cores by operating system tools
+     *
+     * @return EventLoopGroup
+     */
+    public EventLoopGroup newWorkerGroup() {
+        return newGroup(this.workerThreads, "mqtt-worker");
+    }
+
+    private EventLoopGroup newGroup(int threads, String name) {
+        if (this.epoll) {
+            EpollEventLoopGroup group = new EpollEventLoopGroup(threads, new DefaultThreadFactory(name));
+            group.setIoRatio(this.ioRatio);
+            return group;
+        } else {
+            NioEventLoopGroup group = new NioEventLoopGroup(threads, new DefaultThreadFactory(name));
+            group.setIoRatio(this.ioRatio);
+            return group;
+        }
+    }
+
+    /**
+     * Number of acceptor channels bound to each listener
+     *
+     * @return Acceptors
+     */
+    public int acceptors() {
+        return this.acceptors;
+    }
+
+    /**
+     * Apply server channel class, allocator and socket options to the bootstrap
+     *
+     * @param b ServerBootstrap
+     */
+    public void configure(ServerBootstrap b) {
+        Class<? extends ServerChannel> channel = this.epoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+        b.channel(channel)
+                .option(ChannelOption.SO_BACKLOG, this.soBacklog)
+                .option(ChannelOption.ALLOCATOR, this.allocator)
+                .childOption(ChannelOption.ALLOCATOR, this.allocator)
+                .childOption(ChannelOption.SO_KEEPALIVE, this.soKeepAlive)
+                .childOption(ChannelOption.TCP_NODELAY, this.tcpNoDelay)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, this.waterMark);
+        if (this.logging) {
+            b.handler(new LoggingHandler(LogLevel.INFO));
+        }
+        if (this.soSndBuf > 0) {
+            b.childOption(ChannelOption.SO_SNDBUF, this.soSndBuf);
+        }
+        if (this.soRcvBuf > 0) {
+            b.childOption(ChannelOption.SO_RCVBUF, this.soRcvBuf);
+        }
+        if (this.epoll) {
+            b.option(EpollChannelOption.EPOLL_MODE, this.epollMode)
+                    .childOption(EpollChannelOption.EPOLL_MODE, this.epollMode);
+            if (this.acceptors > 1) {
+                b.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "transport=" + (this.epoll ? "epoll(" + this.epollMode + ")" : "nio")
+                + ", acceptors=" + this.acceptors
+                + ", bossThreads=" + (this.bossThreads > 0 ? this.bossThreads : "default")
+                + ", workerThreads=" + (this.workerThreads > 0 ? this.workerThreads : "default")
+                + ", ioRatio=" + this.ioRatio
+                + ", allocator=" + this.allocatorDesc
+                + ", soBacklog=" + this.soBacklog
+                + ", soKeepAlive=" + this.soKeepAlive
+                + ", tcpNoDelay=" + this.tcpNoDelay
+                + ", soSndBuf=" + (this.soSndBuf > 0 ? this.soSndBuf : "default")
+                + ", soRcvBuf=" + (this.soRcvBuf > 0 ? this.soRcvBuf : "default")
+                + ", writeBufferWaterMark=" + this.waterMark.low() + "/" + this.waterMark.high()
+                + ", logging=" + this.logging;
+    }
+}
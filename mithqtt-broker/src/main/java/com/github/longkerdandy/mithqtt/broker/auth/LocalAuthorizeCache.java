@@ -0,0 +1,150 @@
+package com.github.longkerdandy.mithqtt.broker.auth;
+
+import com.github.longkerdandy.mithqtt.api.auth.AuthorizeCache;
+import com.github.longkerdandy.mithqtt.api.auth.AuthorizeResult;
+import com.github.longkerdandy.mithqtt.util.LRUCache;
+import io.netty.handler.codec.mqtt.MqttGrantedQoS;
+import org.apache.commons.configuration.AbstractConfiguration;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local Authorize Cache
+ * Keeps a size and time bounded LRU cache for each client session in memory
+ */
+@SuppressWarnings("unused")
+public class LocalAuthorizeCache implements AuthorizeCache {
+
+    // Session caches (Client Id : Session)
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    // Invalidation generation, bumped before every invalidation removes anything
+    private final AtomicLong generation = new AtomicLong();
+
+    // Max cached results per session
+    private int size;
+    // Cached results time to live in milliseconds
+    private long ttl;
+
+    @Override
+    public void init(AbstractConfiguration config) {
+        this.size = config.getInt("mqtt.authorize.cache.size", 100);
+        this.ttl = config.getLong("mqtt.authorize.cache.ttl", 60000);
+    }
+
+    @Override
+    public long generation() {
+        return this.generation.get();
+    }
+
+    @Override
+    public AuthorizeResult getPublish(String clientId, String userName, String topicName, int qos, boolean retain) {
+        Session session = getSession(clientId, userName);
+        return session == null ? null : (AuthorizeResult) session.cache.get(publishKey(topicName, qos, retain));
+    }
+
+    @Override
+    public void putPublish(String clientId, String userName, String topicName, int qos, boolean retain, AuthorizeResult result, long generation) {
+        put(clientId, userName, publishKey(topicName, qos, retain), result, generation);
+    }
+
+    @Override
+    public MqttGrantedQoS getSubscribe(String clientId, String userName, String topicFilter, int qos) {
+        Session session = getSession(clientId, userName);
+        return session == null ? null : (MqttGrantedQoS) session.cache.get(subscribeKey(topicFilter, qos));
+    }
+
+    @Override
+    public void putSubscribe(String clientId, String userName, String topicFilter, int qos, MqttGrantedQoS grantedQoS, long generation) {
+        put(clientId, userName, subscribeKey(topicFilter, qos), grantedQoS, generation);
+    }
+
+    @Override
+    public void invalidateClient(String clientId) {
+        this.generation.incrementAndGet();
+        this.sessions.remove(clientId);
+    }
+
+    @Override
+    public void invalidateUser(String userName) {
+        this.generation.incrementAndGet();
+        this.sessions.values().removeIf(session -> userName == null ? session.userName == null : userName.equals(session.userName));
+    }
+
+    @Override
+    public void invalidateAll() {
+        this.generation.incrementAndGet();
+        this.sessions.clear();
+    }
+
+    /**
+     * Cache the result unless an invalidation happened since the generation was captured
+     * The generation is checked again after the put, an invalidation racing with it
+     * either bumped the generation before the check or removes the entry after the put
+     *
+     * @param clientId   Client Id
+     * @param userName   User Name
+     * @param key        Cache Key
+     * @param value      Cache Value
+     * @param generation Generation captured before calling the Authenticator
+     */
+    private void put(String clientId, String userName, String key, Object value, long generation) {
+        if (this.generation.get() != generation) return;
+        LRUCache<String, Object> cache = createSession(clientId, userName).cache;
+        cache.put(key, value);
+        if (this.generation.get() != generation) cache.remove(key);
+    }
+
+    /**
+     * Get the session cache, which must belong to the same user
+     *
+     * @param clientId Client Id
+     * @param userName User Name
+     * @return Session, Null if not exist
+     */
+    private Session getSession(String clientId, String userName) {
+        Session session = this.sessions.get(clientId);
+        if (session == null) return null;
+        if (userName == null ? session.userName != null : !userName.equals(session.userName)) return null;
+        return session;
+    }
+
+    /**
+     * Get the session cache, create a new one if not exist or belongs to a different user
+     *
+     * @param clientId Client Id
+     * @param userName User Name
+     * @return Session
+     */
+    private Session createSession(String clientId, String userName) {
+        Session session = getSession(clientId, userName);
+        if (session == null) {
+            session = new Session(userName, new LRUCache<>(this.size, this.ttl));
+            this.sessions.put(clientId, session);
+        }
+        return session;
+    }
+
+    private static String publishKey(String topicName, int qos, boolean retain) {
+        return "p:" + qos + ":" + (retain ? "1" : "0") + ":" + topicName;
+    }
+
+    private static String subscribeKey(String topicFilter, int qos) {
+        return "s:" + qos + ":" + topicFilter;
+    }
+
+    /**
+     * Cached authorization results of a client session
+     */
+    private static class Session {
+
+        private final String userName;
+        private final LRUCache<String, Object> cache;
+
+        Session(String userName, LRUCache<String, Object> cache) {
+            this.userName = userName;
+            this.cache = cache;
+        }
+    }
+}
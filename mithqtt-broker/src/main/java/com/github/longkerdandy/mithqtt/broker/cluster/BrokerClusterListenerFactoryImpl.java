@@ -10,13 +10,15 @@ import com.github.longkerdandy.mithqtt.broker.session.SessionRegistry;
 public class BrokerClusterListenerFactoryImpl implements ClusterListenerFactory {
 
     private final SessionRegistry registry;
+    private final InterestRegistry interests;
 
-    public BrokerClusterListenerFactoryImpl(SessionRegistry registry) {
+    public BrokerClusterListenerFactoryImpl(SessionRegistry registry, InterestRegistry interests) {
         this.registry = registry;
+        this.interests = interests;
     }
 
     @Override
     public ClusterListener newListener() {
-        return new BrokerClusterListenerImpl(registry);
+        return new BrokerClusterListenerImpl(this.registry, this.interests);
     }
 }
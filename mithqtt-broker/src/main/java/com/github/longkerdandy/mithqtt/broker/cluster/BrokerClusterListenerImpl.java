@@ -6,6 +6,7 @@ import com.github.longkerdandy.mithqtt.api.message.MqttAdditionalHeader;
 import com.github.longkerdandy.mithqtt.api.message.MqttPublishPayload;
 import com.github.longkerdandy.mithqtt.api.message.MqttSubscribePayloadGranted;
 import com.github.longkerdandy.mithqtt.broker.session.SessionRegistry;
+import com.github.longkerdandy.mithqtt.util.Topics;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.mqtt.*;
@@ -20,9 +21,12 @@ public class BrokerClusterListenerImpl implements ClusterListener {
     private static final Logger logger = LoggerFactory.getLogger(BrokerClusterListenerImpl.class);
 
     private final SessionRegistry registry;
+    // Nullable, only available when cluster-wide interest is enabled
+    private final InterestRegistry interests;
 
-    public BrokerClusterListenerImpl(SessionRegistry registry) {
+    public BrokerClusterListenerImpl(SessionRegistry registry, InterestRegistry interests) {
         this.registry = registry;
+        this.interests = interests;
     }
 
     @Override
@@ -32,12 +36,38 @@ public class BrokerClusterListenerImpl implements ClusterListener {
 
     @Override
     public void onSubscribe(Message<MqttPacketIdVariableHeader, MqttSubscribePayloadGranted> msg) {
-        // do nothing
+        if (this.interests == null) return;
+        String clientId = msg.additionalHeader().clientId();
+        // interest of other broker
+        if (clientId == null) {
+            this.interests.onInterest(msg);
+        }
+        // subscriptions of local client made through HTTP interface, already saved in storage
+        else if (this.registry.getSession(clientId) != null) {
+            msg.payload().subscriptions().forEach(s -> {
+                if (s.grantedQos() != MqttGrantedQoS.NOT_GRANTED) {
+                    logger.trace("Add interest on topic {} for client {}", s.topic(), clientId);
+                    this.interests.subscribe(clientId, Topics.sanitize(s.topic()), MqttQoS.valueOf(s.grantedQos().value()));
+                }
+            });
+        }
     }
 
     @Override
     public void onUnsubscribe(Message<MqttPacketIdVariableHeader, MqttUnsubscribePayload> msg) {
-        // do nothing
+        if (this.interests == null) return;
+        String clientId = msg.additionalHeader().clientId();
+        // interest of other broker
+        if (clientId == null) {
+            this.interests.onInterest(msg);
+        }
+        // un-subscriptions of local client made through HTTP interface, already removed from storage
+        else {
+            msg.payload().topics().forEach(topic -> {
+                logger.trace("Remove interest on topic {} for client {}", topic, clientId);
+                this.interests.unsubscribe(clientId, Topics.sanitize(topic));
+            });
+        }
     }
 
     @Override
@@ -45,6 +75,21 @@ public class BrokerClusterListenerImpl implements ClusterListener {
         MqttAdditionalHeader additionalHeader = msg.additionalHeader();
         MqttPublishVariableHeader variableHeader = msg.variableHeader();
         MqttPublishPayload payload = msg.payload();
+
+        // forwarded once for the whole broker (QoS 0 only), deliver to all matching local subscriptions
+        if (additionalHeader.clientId() == null) {
+            if (this.interests == null) return;
+            MqttPublishFrame frame = new MqttPublishFrame(variableHeader.topicName(),
+                    (payload != null && payload.bytes() != null && payload.bytes().length > 0) ?
+                            Unpooled.wrappedBuffer(payload.bytes()) : Unpooled.EMPTY_BUFFER);
+            this.interests.matchLocal(Topics.sanitizeTopicName(variableHeader.topicName())).forEach((clientId, qos) -> {
+                logger.trace("Send PUBLISH message to client {}", clientId);
+
+                this.registry.sendMessage(frame.message(msg.fixedHeader().qos(), false, 0), clientId, 0, true);
+            });
+            return;
+        }
+
         MqttMessage mqtt = new MqttPublishMessage(msg.fixedHeader(), variableHeader,
                 (payload != null && payload.bytes() != null && payload.bytes().length > 0) ?
                         Unpooled.wrappedBuffer(payload.bytes()) : Unpooled.EMPTY_BUFFER);
@@ -0,0 +1,406 @@
+package com.github.longkerdandy.mithqtt.broker.cluster;
+
+import com.github.longkerdandy.mithqtt.api.cluster.Cluster;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.api.message.MqttAdditionalHeader;
+import com.github.longkerdandy.mithqtt.api.message.MqttSubscribePayloadGranted;
+import com.github.longkerdandy.mithqtt.api.message.MqttTopicSubscriptionGranted;
+import com.github.longkerdandy.mithqtt.util.TopicTree;
+import com.github.longkerdandy.mithqtt.util.Topics;
+import io.netty.handler.codec.mqtt.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cluster-wide Subscription Interest Registry
+ * Keeps the subscriptions of clients connected to this broker in memory, and the topic filters other brokers' clients
+ * subscribed to (interest), so QoS 0 messages could be forwarded once per interested broker and matched locally
+ * <p>
+ * Interest changes are broadcast to all brokers as SUBSCRIBE (added) and UNSUBSCRIBE (removed) messages. Periodically
+ * a full snapshot is broadcast if the local interest changed since the last one, otherwise only a digest of it. A broker
+ * whose copy of the interest does not match the digest asks for a new snapshot. Interest of a broker expires if no
+ * snapshot or matching digest received for a while.
+ * Changes and snapshots are broadcast while holding the registry lock, so a snapshot never overtakes a newer change.
+ * Topic filters with wildcard are indexed in topic filter trees, so matching walks the topic levels once.
+ */
+public class InterestRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(InterestRegistry.class);
+
+    // Packet id of SUBSCRIBE message marks a full snapshot, a delta, a digest of interest, or a request for snapshot
+    static final int SNAPSHOT = 2;
+    static final int DELTA = 1;
+    static final int DIGEST = 3;
+    static final int RESYNC = 4;
+
+    private final String brokerId;
+    // Interest expires after this period in milliseconds without snapshot
+    private final long ttl;
+    private Cluster cluster;
+
+    // Local subscriptions (Topic Filter : (Client Id : QoS))
+    private final Map<String, Map<String, MqttQoS>> local = new ConcurrentHashMap<>();
+    // Local subscriptions with wildcard (Topic Levels : (Client Id : QoS)), values are shared with local
+    private final TopicTree<Map<String, MqttQoS>> localWildcards = new TopicTree<>();
+    // Local shared subscriptions (Topic Levels of the filter : Shared Topic Filters)
+    private final TopicTree<Set<String>> localShared = new TopicTree<>();
+    // Local subscriptions by client (Client Id : Topic Filters)
+    private final Map<String, Set<String>> clients = new HashMap<>();
+    // Digest of local topic filters, and whether changed since last snapshot, guarded by this
+    private long digest;
+    private boolean changed = true;
+
+    // Interest of other brokers (Broker Id : Interest)
+    private final Map<String, Interest> remote = new ConcurrentHashMap<>();
+
+    public InterestRegistry(String brokerId, long ttl) {
+        this.brokerId = brokerId;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Set the cluster used to broadcast interest changes
+     *
+     * @param cluster Cluster
+     */
+    public void setCluster(Cluster cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Add subscription of the local client
+     *
+     * @param clientId    Client Id
+     * @param topicLevels Topic Levels
+     * @param qos         Subscription QoS
+     */
+    public void subscribe(String clientId, List<String> topicLevels, MqttQoS qos) {
+        String topic = Topics.join(topicLevels);
+        boolean added;
+        synchronized (this) {
+            Map<String, MqttQoS> subscriptions = this.local.computeIfAbsent(topic, t -> new ConcurrentHashMap<>());
+            added = subscriptions.isEmpty();
+            subscriptions.put(clientId, qos);
+            this.clients.computeIfAbsent(clientId, c -> new HashSet<>()).add(topic);
+            if (added) {
+                if (Topics.isShared(topicLevels)) addShared(this.localShared, topic, topicLevels);
+                else if (Topics.isTopicFilter(topicLevels)) this.localWildcards.put(topicLevels, subscriptions);
+                this.digest += hash(topic);
+                this.changed = true;
+                broadcast(DELTA, Collections.singletonList(topic));
+            }
+        }
+    }
+
+    /**
+     * Remove subscription of the local client
+     *
+     * @param clientId    Client Id
+     * @param topicLevels Topic Levels
+     */
+    public void unsubscribe(String clientId, List<String> topicLevels) {
+        String topic = Topics.join(topicLevels);
+        boolean removed;
+        synchronized (this) {
+            removed = removeLocal(clientId, topic);
+            Set<String> topics = this.clients.get(clientId);
+            if (topics != null) {
+                topics.remove(topic);
+                if (topics.isEmpty()) this.clients.remove(clientId);
+            }
+            if (removed) broadcast(-1, Collections.singletonList(topic));
+        }
+    }
+
+    /**
+     * Remove all subscriptions of the local client
+     * Usually because the client disconnected from this broker
+     *
+     * @param clientId Client Id
+     */
+    public void unsubscribeAll(String clientId) {
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            Set<String> topics = this.clients.remove(clientId);
+            if (topics == null) return;
+            for (String topic : topics) {
+                if (removeLocal(clientId, topic)) removed.add(topic);
+            }
+            if (!removed.isEmpty()) broadcast(-1, removed);
+        }
+    }
+
+    /**
+     * Remove the local subscription
+     *
+     * @param clientId Client Id
+     * @param topic    Topic Filter
+     * @return True if no local client subscribes to the topic filter any more
+     */
+    private boolean removeLocal(String clientId, String topic) {
+        Map<String, MqttQoS> subscriptions = this.local.get(topic);
+        if (subscriptions == null || subscriptions.remove(clientId) == null || !subscriptions.isEmpty()) return false;
+        this.local.remove(topic);
+        List<String> topicLevels = Topics.sanitize(topic);
+        if (Topics.isShared(topicLevels)) removeShared(this.localShared, topic, topicLevels);
+        else if (Topics.isTopicFilter(topicLevels)) this.localWildcards.remove(topicLevels);
+        this.digest -= hash(topic);
+        this.changed = true;
+        return true;
+    }
+
+    /**
+     * Get local clients' subscriptions matching the topic name
+     * If a client has multiple matching subscriptions, the maximum QoS is used
+     * Shared subscriptions are not included
+     *
+     * @param topicLevels Topic Levels
+     * @return Subscriptions: Key - Client Id, Value - QoS
+     */
+    public Map<String, MqttQoS> matchLocal(List<String> topicLevels) {
+        Map<String, MqttQoS> map = new HashMap<>();
+        Map<String, MqttQoS> exact = Topics.isShared(topicLevels) ? null : this.local.get(Topics.join(topicLevels));
+        if (exact != null) map.putAll(exact);
+        this.localWildcards.forEachMatch(topicLevels, subscriptions ->
+                subscriptions.forEach((clientId, qos) -> map.merge(clientId, qos, (q1, q2) -> q1.value() >= q2.value() ? q1 : q2)));
+        return map;
+    }
+
+    /**
+     * Get other brokers interested in the topic name
+     *
+     * @param topicLevels Topic Levels
+     * @return Set of Broker Id
+     */
+    public Set<String> matchRemote(List<String> topicLevels) {
+        String topic = Topics.join(topicLevels);
+        long now = System.currentTimeMillis();
+        Set<String> brokers = new HashSet<>();
+        this.remote.forEach((bid, interest) -> {
+            if (now - interest.updated <= this.ttl && interest.match(topic, topicLevels)) brokers.add(bid);
+        });
+        return brokers;
+    }
+
+    /**
+     * Is there any shared subscription in the cluster matching the topic name
+     *
+     * @param topicLevels Topic Levels
+     * @return True if matches
+     */
+    public boolean matchShared(List<String> topicLevels) {
+        if (this.localShared.anyMatch(topicLevels)) return true;
+        for (Interest interest : this.remote.values()) {
+            if (interest.matchShared(topicLevels)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Handle interest message from other broker
+     *
+     * @param msg SUBSCRIBE or UNSUBSCRIBE Message
+     */
+    void onInterest(Message msg) {
+        String bid = msg.additionalHeader().brokerId();
+        if (bid == null || bid.equals(this.brokerId)) return;
+
+        if (msg.fixedHeader().messageType() == MqttMessageType.SUBSCRIBE) {
+            int packetId = ((MqttPacketIdVariableHeader) msg.variableHeader()).packetId();
+            List<String> topics = new ArrayList<>();
+            ((MqttSubscribePayloadGranted) msg.payload()).subscriptions().forEach(s -> topics.add(s.topic()));
+            if (packetId == RESYNC) {
+                logger.trace("Broker {} asked for snapshot of interest", bid);
+                synchronized (this) {
+                    snapshot();
+                }
+            } else if (packetId == DIGEST) {
+                Interest interest = this.remote.get(bid);
+                String expected = topics.isEmpty() ? null : topics.get(0);
+                String actual = interest == null ? digest(0, 0) : interest.digest();
+                if (actual.equals(expected)) {
+                    if (interest != null) interest.updated = System.currentTimeMillis();
+                } else {
+                    logger.trace("Interest of broker {} does not match the digest, ask for snapshot", bid);
+                    resync(bid);
+                }
+            } else if (packetId == SNAPSHOT) {
+                logger.trace("Replace interest of broker {} with {} topic filters", bid, topics.size());
+                Interest interest = new Interest();
+                interest.addAll(topics);
+                this.remote.put(bid, interest);
+            } else {
+                this.remote.computeIfAbsent(bid, b -> new Interest()).addAll(topics);
+            }
+        } else if (msg.fixedHeader().messageType() == MqttMessageType.UNSUBSCRIBE) {
+            Interest interest = this.remote.get(bid);
+            if (interest != null) interest.removeAll(((MqttUnsubscribePayload) msg.payload()).topics());
+        }
+    }
+
+    /**
+     * Broadcast full snapshot of local interest if changed since the last one, otherwise only the digest of it,
+     * and forget expired interest of other brokers
+     * Should be invoked periodically
+     */
+    public void sync() {
+        synchronized (this) {
+            if (this.changed) snapshot();
+            else broadcast(DIGEST, Collections.singletonList(digest(this.local.size(), this.digest)));
+        }
+        long now = System.currentTimeMillis();
+        this.remote.entrySet().removeIf(e -> now - e.getValue().updated > this.ttl);
+    }
+
+    /**
+     * Broadcast full snapshot of local interest
+     * Must be invoked while holding the registry lock
+     */
+    private void snapshot() {
+        broadcast(SNAPSHOT, new ArrayList<>(this.local.keySet()));
+        this.changed = false;
+    }
+
+    /**
+     * Ask the broker to broadcast a full snapshot of its interest
+     *
+     * @param bid Broker Id
+     */
+    private void resync(String bid) {
+        if (this.cluster == null) return;
+        this.cluster.sendToBroker(bid, new Message<>(
+                new MqttFixedHeader(MqttMessageType.SUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, null, null, this.brokerId),
+                MqttPacketIdVariableHeader.from(RESYNC),
+                new MqttSubscribePayloadGranted(Collections.emptyList())));
+    }
+
+    /**
+     * Broadcast interest change to all brokers
+     *
+     * @param packetId SNAPSHOT or DELTA for added interest, DIGEST for digest, negative for removed interest
+     * @param topics   Topic Filters, or the digest
+     */
+    private void broadcast(int packetId, List<String> topics) {
+        if (this.cluster == null) return;
+        MqttAdditionalHeader additionalHeader = new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, null, null, this.brokerId);
+        if (packetId > 0) {
+            List<MqttTopicSubscriptionGranted> subscriptions = new ArrayList<>();
+            topics.forEach(topic -> subscriptions.add(new MqttTopicSubscriptionGranted(topic, MqttGrantedQoS.AT_MOST_ONCE)));
+            this.cluster.sendToBrokers(new Message<>(
+                    new MqttFixedHeader(MqttMessageType.SUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                    additionalHeader,
+                    MqttPacketIdVariableHeader.from(packetId),
+                    new MqttSubscribePayloadGranted(subscriptions)));
+        } else {
+            this.cluster.sendToBrokers(new Message<>(
+                    new MqttFixedHeader(MqttMessageType.UNSUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                    additionalHeader,
+                    MqttPacketIdVariableHeader.from(DELTA),
+                    new MqttUnsubscribePayload(topics)));
+        }
+    }
+
+    /**
+     * Index the shared subscription by the topic filter part
+     *
+     * @param tree        Shared subscriptions (Topic Levels of the filter : Shared Topic Filters)
+     * @param topic       Shared Topic Filter
+     * @param topicLevels Topic Levels of the Shared Topic Filter
+     */
+    private static void addShared(TopicTree<Set<String>> tree, String topic, List<String> topicLevels) {
+        tree.computeIfAbsent(Topics.shareFilter(topicLevels), l -> ConcurrentHashMap.newKeySet()).add(topic);
+    }
+
+    /**
+     * Remove the shared subscription from the index
+     *
+     * @param tree        Shared subscriptions (Topic Levels of the filter : Shared Topic Filters)
+     * @param topic       Shared Topic Filter
+     * @param topicLevels Topic Levels of the Shared Topic Filter
+     */
+    private static void removeShared(TopicTree<Set<String>> tree, String topic, List<String> topicLevels) {
+        List<String> filter = Topics.shareFilter(topicLevels);
+        Set<String> topics = tree.get(filter);
+        if (topics != null && topics.remove(topic) && topics.isEmpty()) tree.remove(filter);
+    }
+
+    /**
+     * Hash of the topic filter, the digest is the sum of all topic filters' hash so it does not depend on order
+     *
+     * @param topic Topic Filter
+     * @return Hash
+     */
+    private static long hash(String topic) {
+        long h = topic.hashCode() * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * Digest of topic filters sent in place of the snapshot
+     *
+     * @param count  Number of Topic Filters
+     * @param digest Sum of Topic Filters' hash
+     * @return Digest
+     */
+    private static String digest(int count, long digest) {
+        return count + ":" + Long.toHexString(digest);
+    }
+
+    /**
+     * Topic filters some broker's clients subscribed to
+     */
+    private static class Interest {
+
+        // All Topic Filters
+        private final Set<String> topics = ConcurrentHashMap.newKeySet();
+        // Topic Filters without wildcard
+        private final Set<String> exact = ConcurrentHashMap.newKeySet();
+        // Topic Filters with wildcard (Topic Levels : Topic Filter)
+        private final TopicTree<String> wildcards = new TopicTree<>();
+        // Shared subscriptions (Topic Levels of the filter : Shared Topic Filters)
+        private final TopicTree<Set<String>> shared = new TopicTree<>();
+        // Sum of Topic Filters' hash, guarded by this
+        private long digest;
+        // Last snapshot, delta or matching digest received
+        private volatile long updated = System.currentTimeMillis();
+
+        synchronized void addAll(List<String> topics) {
+            for (String topic : topics) {
+                if (!this.topics.add(topic)) continue;
+                List<String> topicLevels = Topics.sanitize(topic);
+                if (Topics.isShared(topicLevels)) addShared(this.shared, topic, topicLevels);
+                else if (Topics.isTopicFilter(topicLevels)) this.wildcards.put(topicLevels, topic);
+                else this.exact.add(topic);
+                this.digest += hash(topic);
+            }
+            this.updated = System.currentTimeMillis();
+        }
+
+        synchronized void removeAll(List<String> topics) {
+            for (String topic : topics) {
+                if (!this.topics.remove(topic)) continue;
+                List<String> topicLevels = Topics.sanitize(topic);
+                if (Topics.isShared(topicLevels)) removeShared(this.shared, topic, topicLevels);
+                else if (Topics.isTopicFilter(topicLevels)) this.wildcards.remove(topicLevels);
+                else this.exact.remove(topic);
+                this.digest -= hash(topic);
+            }
+        }
+
+        synchronized String digest() {
+            return InterestRegistry.digest(this.topics.size(), this.digest);
+        }
+
+        boolean match(String topic, List<String> topicLevels) {
+            return this.exact.contains(topic) || this.wildcards.anyMatch(topicLevels);
+        }
+
+        boolean matchShared(List<String> topicLevels) {
+            return this.shared.anyMatch(topicLevels);
+        }
+    }
+}
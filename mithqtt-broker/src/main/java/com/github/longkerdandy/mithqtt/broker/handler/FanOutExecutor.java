@@ -0,0 +1,102 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Fan-out Executor
+ * Forwards PUBLISH message with many recipients in parallel, instead of on the publisher's I/O thread
+ * Recipients are striped across single thread executors by client id, so messages to the same client keep their order
+ * Each stripe has a bounded queue, when full the chunk runs on the caller's thread, which slows down the publisher
+ */
+public class FanOutExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(FanOutExecutor.class);
+
+    // Minimum number of recipients to fan out in parallel
+    private final int threshold;
+    private final ExecutorService[] stripes;
+
+    /**
+     * Create Fan-out Executor
+     *
+     * @param threads   Number of threads (stripes)
+     * @param threshold Minimum number of recipients to fan out in parallel, 0 means disabled
+     */
+    public FanOutExecutor(int threads, int threshold) {
+        this(threads, threshold, 1024);
+    }
+
+    /**
+     * Create Fan-out Executor
+     *
+     * @param threads   Number of threads (stripes)
+     * @param threshold Minimum number of recipients to fan out in parallel, 0 means disabled
+     * @param queueSize Maximum number of pending chunks in each stripe
+     */
+    public FanOutExecutor(int threads, int threshold, int queueSize) {
+        this.threshold = threshold;
+        this.stripes = new ExecutorService[threshold > 0 ? threads : 0];
+        ThreadFactory factory = new DefaultThreadFactory("mqtt-fanout", true);
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                    factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+
+    /**
+     * Should the recipients be fanned out in parallel
+     *
+     * @param recipients Number of recipients
+     * @return True if number of recipients reached the threshold
+     */
+    public boolean accept(int recipients) {
+        return this.stripes.length > 0 && recipients >= this.threshold;
+    }
+
+    /**
+     * Apply the action to each recipient in parallel
+     *
+     * @param recipients Recipients: Key - Client Id, Value - QoS
+     * @param action     Action applied to each recipient
+     * @param <V>        Value Type
+     * @return Future completed when the action applied to all recipients, or completed exceptionally if any failed
+     */
+    public <V> CompletableFuture<Void> execute(Map<String, V> recipients, BiConsumer<String, V> action) {
+        List<List<Map.Entry<String, V>>> chunks = new ArrayList<>(this.stripes.length);
+        for (int i = 0; i < this.stripes.length; i++) {
+            chunks.add(new ArrayList<>(recipients.size() / this.stripes.length + 1));
+        }
+        recipients.entrySet().forEach(e -> chunks.get(Math.floorMod(e.getKey().hashCode(), this.stripes.length)).add(e));
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(this.stripes.length);
+        for (int i = 0; i < this.stripes.length; i++) {
+            List<Map.Entry<String, V>> chunk = chunks.get(i);
+            if (chunk.isEmpty()) continue;
+            futures.add(CompletableFuture.runAsync(() -> chunk.forEach(e -> action.accept(e.getKey(), e.getValue())), this.stripes[i]));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
+    }
+
+    /**
+     * Shutdown the executor
+     */
+    public void shutdown() {
+        logger.debug("Shutting down fan-out executor ...");
+        for (ExecutorService stripe : this.stripes) {
+            stripe.shutdown();
+        }
+    }
+}
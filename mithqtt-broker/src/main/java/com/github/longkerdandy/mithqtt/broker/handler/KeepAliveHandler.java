@@ -0,0 +1,109 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import com.github.longkerdandy.mithqtt.broker.session.KeepAliveSupervisor;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep Alive Handler
+ * Records the last time a packet was received, checked by the {@link KeepAliveSupervisor}
+ * Fires {@link IdleStateEvent#ALL_IDLE_STATE_EVENT} when nothing was received within the timeout
+ * All states are only accessed in the channel's event loop, the supervisor's timer thread just hands over to it
+ */
+public class KeepAliveHandler extends ChannelInboundHandlerAdapter implements TimerTask {
+
+    private final KeepAliveSupervisor supervisor;
+
+    private ChannelHandlerContext ctx;
+    // timeout in nanoseconds
+    private long timeout;
+    // last read time in nanoseconds
+    private long lastRead;
+    private Timeout scheduled;
+
+    /**
+     * Create Keep Alive Handler
+     *
+     * @param supervisor Keep Alive Supervisor
+     * @param timeout    Timeout in seconds
+     */
+    public KeepAliveHandler(KeepAliveSupervisor supervisor, int timeout) {
+        this.supervisor = supervisor;
+        this.timeout = TimeUnit.SECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Update the timeout, usually after CONNECT negotiated the keep alive
+     * The new timeout takes effect from now, must be called in the channel's event loop
+     *
+     * @param timeout Timeout in seconds
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = TimeUnit.SECONDS.toNanos(timeout);
+        this.lastRead = this.supervisor.nanoTime();
+        reschedule(this.timeout);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        this.lastRead = this.supervisor.nanoTime();
+        reschedule(this.timeout);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        this.lastRead = this.supervisor.nanoTime();
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void run(Timeout timeout) throws Exception {
+        if (timeout.isCancelled()) return;
+
+        this.ctx.executor().execute(() -> {
+            // cancelled or replaced by another timeout since expired
+            if (this.scheduled != timeout || !this.ctx.channel().isOpen()) return;
+            this.scheduled = null;
+
+            long remaining = this.timeout - (this.supervisor.nanoTime() - this.lastRead);
+            if (remaining <= 0) {
+                this.ctx.fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+            } else {
+                // received since scheduled, re-arm for the rest of the timeout
+                reschedule(remaining);
+            }
+        });
+    }
+
+    private void reschedule(long delay) {
+        cancel();
+        if (delay > 0) {
+            this.scheduled = this.supervisor.schedule(this, delay);
+        }
+    }
+
+    private void cancel() {
+        Timeout t = this.scheduled;
+        if (t != null) {
+            t.cancel();
+            this.scheduled = null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.mqtt.MqttPublishChunk;
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttStreamedPublishMessage;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streamed PUBLISH Aggregator
+ * Collects the payload chunks of a streamed PUBLISH message, and passes on a complete PUBLISH message
+ * Chunks are copied once into a heap buffer of the exact payload size and released immediately, the buffer's array
+ * is then taken as the message payload by {@link com.github.longkerdandy.mithqtt.api.message.Message} without another copy
+ * Payload larger than the connection's memory budget, or than what is left of the broker wide memory budget shared by
+ * all connections, is rejected and the connection closed
+ * The broker wide budget is reserved when a streamed PUBLISH starts, and given back when it completes or the connection closes
+ */
+public class PublishAggregator extends ChannelInboundHandlerAdapter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishAggregator.class);
+
+    // Maximum bytes of streamed payload buffered for this connection
+    private final int budget;
+    // Bytes of streamed payload left to buffer over all connections
+    private final Semaphore total;
+
+    private MqttStreamedPublishMessage header;
+    private ByteBuf payload;
+    // Bytes reserved from the broker wide budget
+    private int reserved;
+
+    /**
+     * Create Streamed PUBLISH Aggregator
+     *
+     * @param budget Maximum bytes of streamed payload buffered for this connection
+     * @param total  Bytes of streamed payload left to buffer over all connections, shared by all aggregators
+     */
+    public PublishAggregator(int budget, Semaphore total) {
+        this.budget = budget;
+        this.total = total;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (msg instanceof MqttStreamedPublishMessage) {
+            MqttStreamedPublishMessage m = (MqttStreamedPublishMessage) msg;
+            release();
+            if (m.payloadLength() > this.budget) {
+                logger.debug("Protocol violation: PUBLISH message payload {} bytes exceeds the memory budget {} bytes, disconnect the client", m.payloadLength(), this.budget);
+                ctx.close();
+                return;
+            }
+            if (!this.total.tryAcquire(m.payloadLength())) {
+                logger.debug("Server busy: PUBLISH message payload {} bytes exceeds the broker wide memory budget left {} bytes, disconnect the client", m.payloadLength(), this.total.availablePermits());
+                ctx.close();
+                return;
+            }
+            this.reserved = m.payloadLength();
+            this.header = m;
+            this.payload = Unpooled.buffer(m.payloadLength(), m.payloadLength());
+        } else if (msg instanceof MqttPublishChunk) {
+            MqttPublishChunk chunk = (MqttPublishChunk) msg;
+            // chunks of a rejected message
+            if (this.header == null) {
+                ReferenceCountUtil.release(chunk);
+                return;
+            }
+            this.payload.writeBytes(chunk.content());
+            chunk.release();
+            if (chunk.isLast()) {
+                MqttPublishMessage m = new MqttPublishMessage(this.header.fixedHeader(), this.header.variableHeader(), this.payload);
+                this.header = null;
+                this.payload = null;
+                unreserve();
+                ctx.fireChannelRead(m);
+            }
+        } else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        release();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        release();
+    }
+
+    private void release() {
+        if (this.payload != null) {
+            this.payload.release();
+        }
+        this.header = null;
+        this.payload = null;
+        unreserve();
+    }
+
+    private void unreserve() {
+        if (this.reserved > 0) {
+            this.total.release(this.reserved);
+        }
+        this.reserved = 0;
+    }
+}
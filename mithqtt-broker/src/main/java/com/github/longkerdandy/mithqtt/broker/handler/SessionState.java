@@ -0,0 +1,60 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.mqtt.*;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MQTT Session State of a local connection
+ * Kept as a channel attribute, so the logic handler can be shared by all connections
+ * Fields are only accessed from the connection's event loop
+ */
+final class SessionState {
+
+    MqttVersion version;
+    String clientId;
+    String userName;
+    boolean connected;
+    boolean cleanSession;
+    int keepAlive;
+
+    // PUBLISH from this client still being forwarded and acknowledged, null if none
+    CompletableFuture<Void> forwarding;
+
+    // Will Message, kept as raw fields instead of a PUBLISH message until published
+    String willTopic;
+    MqttQoS willQos;
+    boolean willRetain;
+    byte[] willPayload;
+
+    SessionState(int keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    void setWill(String topic, MqttQoS qos, boolean retain, byte[] payload) {
+        this.willTopic = topic;
+        this.willQos = qos;
+        this.willRetain = retain;
+        this.willPayload = payload;
+    }
+
+    void clearWill() {
+        this.willTopic = null;
+        this.willQos = null;
+        this.willPayload = null;
+    }
+
+    /**
+     * Build the Will Message as PUBLISH message
+     *
+     * @return MqttPublishMessage, null if no Will Message
+     */
+    MqttPublishMessage willMessage() {
+        if (this.willTopic == null) return null;
+        return (MqttPublishMessage) MqttMessageFactory.newMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, this.willQos, this.willRetain, 0),
+                MqttPublishVariableHeader.from(this.willTopic),
+                Unpooled.wrappedBuffer(this.willPayload));
+    }
+}
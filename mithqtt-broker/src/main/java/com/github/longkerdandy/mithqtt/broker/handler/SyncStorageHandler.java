@@ -1,6 +1,7 @@
 package com.github.longkerdandy.mithqtt.broker.handler;
 
 import com.github.longkerdandy.mithqtt.api.auth.Authenticator;
+import com.github.longkerdandy.mithqtt.api.auth.AuthorizeCache;
 import com.github.longkerdandy.mithqtt.api.auth.AuthorizeResult;
 import com.github.longkerdandy.mithqtt.api.cluster.Cluster;
 import com.github.longkerdandy.mithqtt.api.message.Message;
@@ -8,17 +9,20 @@ import com.github.longkerdandy.mithqtt.api.message.MqttAdditionalHeader;
 import com.github.longkerdandy.mithqtt.api.message.MqttPublishPayload;
 import com.github.longkerdandy.mithqtt.api.storage.sync.ConnectionState;
 import com.github.longkerdandy.mithqtt.api.storage.sync.SyncStorage;
+import com.github.longkerdandy.mithqtt.broker.cluster.InterestRegistry;
 import com.github.longkerdandy.mithqtt.broker.session.SessionRegistry;
 import com.github.longkerdandy.mithqtt.broker.util.Validator;
 import com.github.longkerdandy.mithqtt.util.Topics;
 import com.github.longkerdandy.mithqtt.util.UUIDs;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.mqtt.*;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
-import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -26,44 +30,81 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
 
 /**
  * Synchronous MQTT Handler using Storage
+ * Shared by all connections, the per connection state is kept in a {@link SessionState} channel attribute
  */
+@ChannelHandler.Sharable
 public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage> {
 
     private static final Logger logger = LoggerFactory.getLogger(SyncStorageHandler.class);
 
+    static final AttributeKey<SessionState> SESSION = AttributeKey.valueOf(SyncStorageHandler.class, "session");
+
     private final Authenticator authenticator;
+    private final AuthorizeCache authorizeCache;
     private final Cluster cluster;
     private final SyncStorage storage;
     private final SessionRegistry registry;
     private final Validator validator;
+    private final InterestRegistry interests;
+    private final FanOutExecutor fanOut;
+
+    private final String brokerId;
+    private final int keepAlive;
+    private final int keepAliveMax;
+    private final int sessionExpiry;
 
-    // session state
-    private MqttVersion version;
-    private String clientId;
-    private String userName;
-    private String brokerId;
-    private boolean connected;
-    private boolean cleanSession;
-    private int keepAlive;
-    private int keepAliveMax;
-    private MqttPublishMessage willMessage;
-
-    public SyncStorageHandler(Authenticator authenticator, Cluster cluster, SyncStorage storage, SessionRegistry registry, Validator validator, String brokerId, int keepAlive, int keepAliveMax) {
+    public SyncStorageHandler(Authenticator authenticator, AuthorizeCache authorizeCache, Cluster cluster, SyncStorage storage, SessionRegistry registry, Validator validator, InterestRegistry interests, FanOutExecutor fanOut, String brokerId, int keepAlive, int keepAliveMax, int sessionExpiry) {
         this.authenticator = authenticator;
+        this.authorizeCache = authorizeCache;
         this.cluster = cluster;
         this.storage = storage;
         this.registry = registry;
         this.validator = validator;
+        this.interests = interests;
+        this.fanOut = fanOut;
 
         this.brokerId = brokerId;
         this.keepAlive = keepAlive;
         this.keepAliveMax = keepAliveMax;
+        this.sessionExpiry = sessionExpiry;
+    }
+
+    /**
+     * Get the session state of the connection, created on first use
+     *
+     * @param ctx ChannelHandlerContext
+     * @return Session State
+     */
+    private SessionState session(ChannelHandlerContext ctx) {
+        Attribute<SessionState> attr = ctx.channel().attr(SESSION);
+        SessionState session = attr.get();
+        if (session == null) {
+            session = new SessionState(this.keepAlive);
+            attr.set(session);
+        }
+        return session;
+    }
+
+    /**
+     * Get the session state of the connection without creating it
+     *
+     * @param ctx ChannelHandlerContext
+     * @return Session State, null if the connection never received a message
+     */
+    private SessionState existingSession(ChannelHandlerContext ctx) {
+        return ctx.channel().hasAttr(SESSION) ? ctx.channel().attr(SESSION).get() : null;
     }
 
     @Override
@@ -135,13 +176,14 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
     }
 
     private void onConnect(ChannelHandlerContext ctx, MqttConnectMessage msg) {
+        SessionState session = session(ctx);
         logger.trace("Start handling CONNECT message");
 
-        this.version = MqttVersion.fromProtocolNameAndLevel(msg.variableHeader().protocolName(), (byte) msg.variableHeader().protocolLevel());
-        this.clientId = msg.payload().clientId();
-        this.cleanSession = msg.variableHeader().cleanSession();
+        session.version = MqttVersion.fromProtocolNameAndLevel(msg.variableHeader().protocolName(), (byte) msg.variableHeader().protocolLevel());
+        session.clientId = msg.payload().clientId();
+        session.cleanSession = msg.variableHeader().cleanSession();
         if (msg.variableHeader().keepAlive() > 0 && msg.variableHeader().keepAlive() <= this.keepAliveMax) {
-            this.keepAlive = msg.variableHeader().keepAlive();
+            session.keepAlive = msg.variableHeader().keepAlive();
         }
 
         // A Server MAY allow a Client to supply a ClientId that has a length of zero bytes, however if it does so the
@@ -150,8 +192,8 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // If the Client supplies a zero-byte ClientId with CleanSession set to 0, the Server MUST respond to the
         // CONNECT Packet with a CONNACK return code 0x02 (Identifier rejected) and then close the Network
         // Connection
-        if (StringUtils.isBlank(this.clientId)) {
-            if (!this.cleanSession) {
+        if (StringUtils.isBlank(session.clientId)) {
+            if (!session.cleanSession) {
                 logger.debug("Protocol violation: Empty client id with clean session 0, send CONNACK and disconnect the client");
                 this.registry.sendMessage(
                         ctx,
@@ -165,20 +207,20 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
                 ctx.close();
                 return;
             } else {
-                this.clientId = UUIDs.shortUuid();
+                session.clientId = UUIDs.shortUuid();
             }
         }
 
         // Validate clientId based on configuration
-        else if (!this.validator.isClientIdValid(this.clientId)) {
-            logger.debug("Protocol violation: Client id {} not valid based on configuration, send CONNACK and disconnect the client", this.clientId);
+        else if (!this.validator.isClientIdValid(session.clientId)) {
+            logger.debug("Protocol violation: Client id {} not valid based on configuration, send CONNACK and disconnect the client", session.clientId);
             this.registry.sendMessage(
                     ctx,
                     MqttMessageFactory.newMessage(
                             new MqttFixedHeader(MqttMessageType.CONNACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
                             new MqttConnAckVariableHeader(MqttConnectReturnCode.CONNECTION_REFUSED_IDENTIFIER_REJECTED, false),
                             null),
-                    this.clientId,
+                    session.clientId,
                     null,
                     true);
             ctx.close();
@@ -187,15 +229,15 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
 
         // A Client can only send the CONNECT Packet once over a Network Connection. The Server MUST
         // process a second CONNECT Packet sent from a Client as a protocol violation and disconnect the Client
-        if (this.connected) {
-            logger.debug("Protocol violation: Second CONNECT packet sent from client {}, disconnect the client", this.clientId);
+        if (session.connected) {
+            logger.debug("Protocol violation: Second CONNECT packet sent from client {}, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
 
         boolean userNameFlag = msg.variableHeader().userNameFlag();
         boolean passwordFlag = msg.variableHeader().passwordFlag();
-        this.userName = msg.payload().userName();
+        session.userName = msg.payload().userName();
         String password = msg.payload().password();
         boolean malformed = false;
         // If the User Name Flag is set to 0, a user name MUST NOT be present in the payload
@@ -206,10 +248,10 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // Validate User Name based on configuration
         // Validate Password based on configuration
         if (userNameFlag) {
-            if (StringUtils.isBlank(this.userName) || !this.validator.isUserNameValid(this.userName))
+            if (StringUtils.isBlank(session.userName) || !this.validator.isUserNameValid(session.userName))
                 malformed = true;
         } else {
-            if (StringUtils.isNotBlank(this.userName) || passwordFlag) malformed = true;
+            if (StringUtils.isNotBlank(session.userName) || passwordFlag) malformed = true;
         }
         if (passwordFlag) {
             if (StringUtils.isBlank(password) || !this.validator.isPasswordValid(password)) malformed = true;
@@ -217,48 +259,48 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
             if (StringUtils.isNotBlank(password)) malformed = true;
         }
         if (malformed) {
-            logger.debug("Protocol violation: Bad user name or password from client {}, send CONNACK and disconnect the client", this.clientId);
+            logger.debug("Protocol violation: Bad user name or password from client {}, send CONNACK and disconnect the client", session.clientId);
             this.registry.sendMessage(
                     ctx,
                     MqttMessageFactory.newMessage(
                             new MqttFixedHeader(MqttMessageType.CONNACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
                             new MqttConnAckVariableHeader(MqttConnectReturnCode.CONNECTION_REFUSED_BAD_USER_NAME_OR_PASSWORD, false),
                             null),
-                    this.clientId,
+                    session.clientId,
                     null,
                     true);
             ctx.close();
             return;
         }
 
-        logger.debug("Message received: Received CONNECT message from client {} user {}", this.clientId, this.userName);
+        logger.debug("Message received: Received CONNECT message from client {} user {}", session.clientId, session.userName);
 
-        AuthorizeResult result = this.authenticator.authConnect(this.clientId, this.userName, password);
+        AuthorizeResult result = this.authenticator.authConnect(session.clientId, session.userName, password);
         // Authorize successful
         if (result == AuthorizeResult.OK) {
-            logger.trace("Authorization CONNECT succeeded for client {} user {}", this.clientId, this.userName);
+            logger.trace("Authorization CONNECT succeeded for client {} user {}", session.clientId, session.userName);
 
             // Require lock on client connection state
-            if (!this.storage.lock(this.clientId, ConnectionState.CONNECTING)) {
-                logger.warn("Lock failed: Failed to lock on client {}, send CONNACK and disconnect the client", this.clientId);
+            if (!this.storage.lock(session.clientId, ConnectionState.CONNECTING)) {
+                logger.warn("Lock failed: Failed to lock on client {}, send CONNACK and disconnect the client", session.clientId);
                 this.registry.sendMessage(
                         ctx,
                         MqttMessageFactory.newMessage(
                                 new MqttFixedHeader(MqttMessageType.CONNACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
                                 new MqttConnAckVariableHeader(MqttConnectReturnCode.CONNECTION_REFUSED_SERVER_UNAVAILABLE, false),
                                 null),
-                        this.clientId,
+                        session.clientId,
                         null,
                         true);
                 ctx.close();
                 return;
             } else {
-                logger.trace("Successfully lock on client {}", this.clientId);
+                logger.trace("Successfully lock on client {}", session.clientId);
             }
 
             // Mark client's connected broker node
-            logger.trace("Mark client {} connected to broker {}", this.clientId, this.brokerId);
-            String previous = this.storage.updateConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+            logger.trace("Mark client {} connected to broker {}", session.clientId, this.brokerId);
+            String previous = this.storage.updateConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
 
             // If the Server accepts a connection with CleanSession set to 1, the Server MUST set Session Present to 0
             // in the CONNACK packet in addition to setting a zero return code in the CONNACK packet
@@ -267,18 +309,18 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
             // Session state, it MUST set Session Present to 1 in the CONNACK packet. If the Server
             // does not have stored Session state, it MUST set Session Present to 0 in the CONNACK packet. This is in
             // addition to setting a zero return code in the CONNACK packet.
-            int exist = this.storage.getSessionExist(this.clientId);
-            boolean sessionPresent = (exist >= 0) && !this.cleanSession;
+            int exist = this.storage.getSessionExist(session.clientId);
+            boolean sessionPresent = (exist >= 0) && !session.cleanSession;
 
             // The first packet sent from the Server to the Client MUST be a CONNACK Packet
-            logger.trace("Send CONNACK back to client {}", this.clientId);
+            logger.trace("Send CONNACK back to client {}", session.clientId);
             this.registry.sendMessage(
                     ctx,
                     MqttMessageFactory.newMessage(
                             new MqttFixedHeader(MqttMessageType.CONNACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
                             new MqttConnAckVariableHeader(MqttConnectReturnCode.CONNECTION_ACCEPTED, sessionPresent),
                             null),
-                    this.clientId,
+                    session.clientId,
                     null,
                     true);
 
@@ -296,20 +338,26 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
             // QoS 1 and QoS 2 messages pending transmission to the Client.
             // QoS 2 messages which have been received from the Client, but have not been completely acknowledged.
             // Optionally, QoS 0 messages pending transmission to the Client.
-            if (!this.cleanSession) {
+            if (!session.cleanSession) {
                 if (exist == 0) {
-                    logger.trace("Resend In-Flight messages to client {}", this.clientId);
-                    for (Message inFlight : this.storage.getAllInFlightMessages(this.clientId)) {
+                    logger.trace("Resend In-Flight messages to client {}", session.clientId);
+                    for (Message inFlight : this.storage.getAllInFlightMessages(session.clientId)) {
                         if (inFlight.fixedHeader().messageType() == MqttMessageType.PUBLISH) {
-                            this.registry.sendMessage(ctx, inFlight.toMqttMessage(), this.clientId, ((MqttPublishVariableHeader) inFlight.variableHeader()).packetId(), false);
+                            this.registry.sendMessage(ctx, inFlight.toMqttMessage(), session.clientId, ((MqttPublishVariableHeader) inFlight.variableHeader()).packetId(), false);
                         } else if (inFlight.fixedHeader().messageType() == MqttMessageType.PUBREL) {
-                            this.registry.sendMessage(ctx, inFlight.toMqttMessage(), this.clientId, ((MqttPacketIdVariableHeader) inFlight.variableHeader()).packetId(), false);
+                            this.registry.sendMessage(ctx, inFlight.toMqttMessage(), session.clientId, ((MqttPacketIdVariableHeader) inFlight.variableHeader()).packetId(), false);
                         }
                     }
                     ctx.flush();
+
+                    // Restore subscriptions of the existing session to the cluster-wide interest
+                    if (this.interests != null) {
+                        this.storage.getClientSubscriptions(session.clientId).forEach((topic, qos) ->
+                                this.interests.subscribe(session.clientId, Topics.sanitize(topic), qos));
+                    }
                 } else if (exist == 1) {
-                    logger.trace("Clear session state for client {} because former connection is clean session", this.clientId);
-                    this.storage.removeAllSessionState(this.clientId);
+                    logger.trace("Clear session state for client {} because former connection is clean session", session.clientId);
+                    this.storage.removeAllSessionState(session.clientId);
                 }
             }
             // If CleanSession is set to 1, the Client and Server MUST discard any previous Session and start a new
@@ -318,31 +366,31 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
             // When CleanSession is set to 1 the Client and Server need not process the deletion of state atomically.
             else {
                 if (exist >= 0) {
-                    logger.trace("Clear session state for client {} because current connection is clean session", this.clientId);
-                    this.storage.removeAllSessionState(this.clientId);
+                    logger.trace("Clear session state for client {} because current connection is clean session", session.clientId);
+                    this.storage.removeAllSessionState(session.clientId);
                 }
             }
 
             // Mark client's session as existed
-            logger.trace("Update client {} session existence", this.clientId);
-            this.storage.updateSessionExist(this.clientId, this.cleanSession);
+            logger.trace("Update client {} session existence", session.clientId);
+            this.storage.updateSessionExist(session.clientId, session.cleanSession);
 
             // Release lock on client connection state
-            logger.trace("Try to release lock on client {}", this.clientId);
-            this.storage.release(this.clientId, ConnectionState.CONNECTED);
+            logger.trace("Try to release lock on client {}", session.clientId);
+            this.storage.release(session.clientId, ConnectionState.CONNECTED);
 
             // If the ClientId represents a Client already connected to the Server then the Server MUST
             // disconnect the existing Client
-            ChannelHandlerContext lastSession = this.registry.removeSession(this.clientId);
+            ChannelHandlerContext lastSession = this.registry.removeSession(session.clientId);
             if (lastSession != null) {
-                logger.trace("Try to disconnect existed client {}", this.clientId);
+                logger.trace("Try to disconnect existed client {}", session.clientId);
                 lastSession.close();
             }
             if (StringUtils.isNotBlank(previous) && !previous.equals(this.brokerId)) {
-                logger.trace("Send DISCONNECT message to broker {} to disconnect the existed client {}", previous, this.clientId);
+                logger.trace("Send DISCONNECT message to broker {} to disconnect the existed client {}", previous, session.clientId);
                 Message<MqttPacketIdVariableHeader, Void> disconnect = new Message<>(
                         new MqttFixedHeader(MqttMessageType.DISCONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0),
-                        new MqttAdditionalHeader(this.version, this.clientId, null, null), null, null);
+                        new MqttAdditionalHeader(session.version, session.clientId, null, null), null, null);
                 this.cluster.sendToBroker(previous, disconnect);
             }
 
@@ -355,56 +403,53 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
             if (msg.variableHeader().willFlag()
                     && StringUtils.isNotEmpty(willTopic) && this.validator.isTopicNameValid(willTopic)
                     && StringUtils.isNotEmpty(willMessage)) {
-                logger.trace("Keep WILL message on topic {} for client {}", willTopic, this.clientId);
+                logger.trace("Keep WILL message on topic {} for client {}", willTopic, session.clientId);
 
-                this.willMessage = (MqttPublishMessage) MqttMessageFactory.newMessage(
-                        new MqttFixedHeader(MqttMessageType.PUBLISH, false, msg.variableHeader().willQos(), msg.variableHeader().willRetain(), 0),
-                        MqttPublishVariableHeader.from(willTopic),
-                        Unpooled.wrappedBuffer(willMessage.getBytes())
-                );
+                session.setWill(willTopic, msg.variableHeader().willQos(), msg.variableHeader().willRetain(), willMessage.getBytes());
             }
 
             // If the Keep Alive value is non-zero and the Server does not receive a Control Packet from the Client
             // within one and a half times the Keep Alive time period, it MUST disconnect the Network Connection to the
             // Client as if the network had failed
-            logger.trace("Update idleHandler for client {}", this.clientId);
-            if (ctx.pipeline().names().contains("idleHandler"))
-                ctx.pipeline().remove("idleHandler");
-            ctx.pipeline().addFirst("idleHandler", new IdleStateHandler(0, 0, Math.round(this.keepAlive * 1.5f)));
+            logger.trace("Update idleHandler for client {}", session.clientId);
+            KeepAliveHandler idleHandler = ctx.pipeline().get(KeepAliveHandler.class);
+            if (idleHandler != null)
+                idleHandler.setTimeout(Math.round(session.keepAlive * 1.5f));
 
             // Save connection state, add to local registry
-            logger.trace("Save client {} connection state in registry", this.clientId);
-            this.connected = true;
-            this.registry.saveSession(this.clientId, ctx);
+            logger.trace("Save client {} connection state in registry", session.clientId);
+            session.connected = true;
+            this.registry.saveSession(session.clientId, ctx);
 
             // Pass message to 3rd party application
-            logger.trace("Send a copy of CONNECT message from client {} to 3rd party application", this.clientId);
-            this.cluster.sendToApplication(Message.fromMqttMessage(msg, this.version, this.clientId, this.userName, this.brokerId));
+            logger.trace("Send a copy of CONNECT message from client {} to 3rd party application", session.clientId);
+            this.cluster.sendToApplication(Message.fromMqttMessage(msg, session.version, session.clientId, session.userName, this.brokerId));
         }
 
         // Authorize failed
         else {
-            logger.trace("Authorization CONNECT failed {} for client {}, send CONNACK and disconnect the client", result, this.clientId);
+            logger.trace("Authorization CONNECT failed {} for client {}, send CONNACK and disconnect the client", result, session.clientId);
             this.registry.sendMessage(
                     ctx,
                     MqttMessageFactory.newMessage(
                             new MqttFixedHeader(MqttMessageType.CONNACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
                             new MqttConnAckVariableHeader(MqttConnectReturnCode.CONNECTION_REFUSED_NOT_AUTHORIZED, false),
                             null),
-                    this.clientId,
+                    session.clientId,
                     null,
                     true);
             ctx.close();
         }
 
-        logger.trace("Finish handling CONNECT message for client {}", this.clientId);
+        logger.trace("Finish handling CONNECT message for client {}", session.clientId);
     }
 
     private void onPublish(ChannelHandlerContext ctx, MqttPublishMessage msg) {
-        logger.trace("Start handling PUBLISH message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling PUBLISH message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBLISH message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBLISH message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
@@ -418,67 +463,33 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // The Topic Name in the PUBLISH Packet MUST NOT contain wildcard characters
         // Validate Topic Name based on configuration
         if (!this.validator.isTopicNameValid(topicName)) {
-            logger.debug("Protocol violation: Client {} sent PUBLISH message contains invalid topic name {}, disconnect the client", this.clientId, topicName);
+            logger.debug("Protocol violation: Client {} sent PUBLISH message contains invalid topic name {}, disconnect the client", session.clientId, topicName);
             ctx.close();
             return;
         }
 
         // The Packet Identifier field is only present in PUBLISH Packets where the QoS level is 1 or 2.
         if (packetId <= 0 && (qos == MqttQoS.AT_LEAST_ONCE || qos == MqttQoS.EXACTLY_ONCE)) {
-            logger.debug("Protocol violation: Client {} sent PUBLISH message does not contain packet id, disconnect the client", this.clientId);
+            logger.debug("Protocol violation: Client {} sent PUBLISH message does not contain packet id, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
 
         List<String> topicLevels = Topics.sanitizeTopicName(topicName);
 
-        logger.debug("Message received: Received PUBLISH message from client {} user {} topic {}", this.clientId, this.userName, topicName);
-
-        // If a Server implementation does not authorize a PUBLISH to be performed by a Client; it has no way of
-        // informing that Client. It MUST either make a positive acknowledgement, according to the normal QoS
-        // rules, or close the Network Connection
-
-        // In the QoS 1 delivery protocol, the Receiver
-        // MUST respond with a PUBACK Packet containing the Packet Identifier from the incoming
-        // PUBLISH Packet, having accepted ownership of the Application Message
-        // The receiver is not required to complete delivery of the Application Message before sending the
-        // PUBACK. When its original sender receives the PUBACK packet, ownership of the Application
-        // Message is transferred to the receiver.
-        if (qos == MqttQoS.AT_LEAST_ONCE) {
-            logger.trace("Send PUBACK back to client {}", this.clientId);
-            this.registry.sendMessage(
-                    ctx,
-                    MqttMessageFactory.newMessage(
-                            new MqttFixedHeader(MqttMessageType.PUBACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
-                            MqttPacketIdVariableHeader.from(packetId),
-                            null),
-                    this.clientId,
-                    packetId,
-                    true);
-        }
-        // In the QoS 2 delivery protocol, the Receiver
-        // UST respond with a PUBREC containing the Packet Identifier from the incoming PUBLISH
-        // Packet, having accepted ownership of the Application Message.
-        // The receiver is not required to complete delivery of the Application Message before sending the
-        // PUBREC or PUBCOMP. When its original sender receives the PUBREC packet, ownership of the
-        // Application Message is transferred to the receiver.
-        else if (qos == MqttQoS.EXACTLY_ONCE) {
-            logger.trace("Send PUBREC back to client {}", this.clientId);
-            this.registry.sendMessage(
-                    ctx,
-                    MqttMessageFactory.newMessage(
-                            new MqttFixedHeader(MqttMessageType.PUBREC, false, MqttQoS.AT_MOST_ONCE, false, 0),
-                            MqttPacketIdVariableHeader.from(packetId),
-                            null),
-                    this.clientId,
-                    packetId,
-                    true);
-        }
+        logger.debug("Message received: Received PUBLISH message from client {} user {} topic {}", session.clientId, session.userName, topicName);
 
-        AuthorizeResult result = this.authenticator.authPublish(this.clientId, this.userName, topicName, qos.value(), retain);
+        // PUBLISH from the same client is forwarded and acknowledged in order, a PUBLISH is not forwarded before the
+        // previous one (which may still be fanned out in parallel) has been forwarded and acknowledged
+        CompletableFuture<Void> previous = session.forwarding;
+        CompletableFuture<Void> forwarded = previous != null ? previous : CompletableFuture.completedFuture(null);
+        AuthorizeResult result = authPublish(session, topicName, qos.value(), retain);
         // Authorize successful
         if (result == AuthorizeResult.OK) {
-            logger.trace("Authorization PUBLISH succeeded on topic {} for client {}", topicName, this.clientId);
+            logger.trace("Authorization PUBLISH succeeded on topic {} for client {}", topicName, session.clientId);
+
+            // Prepare Message in advance, since the byte[] payload will be used in multiple location
+            Message<MqttPublishVariableHeader, MqttPublishPayload> m = Message.fromMqttMessage(msg, session.version, session.clientId, session.userName, this.brokerId);
 
             // If the RETAIN flag is set to 1, in a PUBLISH Packet sent by a Client to a Server, the Server MUST store
             // the Application Message and its QoS, so that it can be delivered to future subscribers whose
@@ -489,8 +500,9 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
                 // previously retained for that topic. It SHOULD store the new QoS 0 message as the new retained
                 // message for that topic, but MAY choose to discard it at any time - if this happens there will be no retained
                 // message for that topic.
-                if (qos == MqttQoS.AT_MOST_ONCE || msg.payload() == null || msg.payload().readableBytes() == 0) {
-                    logger.trace("Clear retain messages for topic {} by client {}", topicName, this.clientId);
+                // Adding a retain message replaces the previous one, so only remove when there is nothing to store
+                if (msg.payload() == null || msg.payload().readableBytes() == 0) {
+                    logger.trace("Clear retain messages for topic {} by client {}", topicName, session.clientId);
                     this.storage.removeAllRetainMessage(topicLevels);
                 }
 
@@ -501,25 +513,22 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
                 // not set in the message received by existing Clients. A zero byte retained message MUST NOT be stored
                 // as a retained message on the Server
                 if (msg.payload() != null && msg.payload().readableBytes() > 0) {
-                    logger.trace("Add retain messages for topic {} by client {}", topicName, this.clientId);
-                    this.storage.addRetainMessage(topicLevels, Message.fromMqttMessage(msg, this.version, this.clientId, this.userName, this.brokerId));
+                    logger.trace("Add retain messages for topic {} by client {}", topicName, session.clientId);
+                    this.storage.addRetainMessage(topicLevels, m);
                 }
             }
 
-            // Prepare Message in advance, since the byte[] payload will be used in multiple location
-            Message<MqttPublishVariableHeader, MqttPublishPayload> m = Message.fromMqttMessage(msg, this.version, this.clientId, this.userName, this.brokerId);
-
             // In the QoS 0 delivery protocol, the Receiver
             // Accepts ownership of the message when it receives the PUBLISH packet.
             if (qos == MqttQoS.AT_MOST_ONCE) {
-                onwardRecipients(msg, m.payload());
+                forwarded = onwardRecipients(ctx, previous, msg, m.payload());
             }
             // In the QoS 1 delivery protocol, the Receiver
             // After it has sent a PUBACK Packet the Receiver MUST treat any incoming PUBLISH packet that
             // contains the same Packet Identifier as being a new publication, irrespective of the setting of its
             // DUP flag.
             else if (qos == MqttQoS.AT_LEAST_ONCE) {
-                onwardRecipients(msg, m.payload());
+                forwarded = onwardRecipients(ctx, previous, msg, m.payload());
             }
             // In the QoS 2 delivery protocol, the Receiver
             // Until it has received the corresponding PUBREL packet, the Receiver MUST acknowledge any
@@ -528,37 +537,122 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
             else if (qos == MqttQoS.EXACTLY_ONCE) {
                 // The recipient of a Control Packet that contains the DUP flag set to 1 cannot assume that it has
                 // seen an earlier copy of this packet.
-                if (this.storage.addQoS2MessageId(this.clientId, packetId)) {
-                    onwardRecipients(msg, m.payload());
+                if (this.storage.addQoS2MessageId(session.clientId, packetId)) {
+                    forwarded = onwardRecipients(ctx, previous, msg, m.payload());
                 }
             }
 
             // Pass message to 3rd party application
-            logger.trace("Send a copy of PUBLISH message from client {} to 3rd party application", this.clientId);
+            logger.trace("Send a copy of PUBLISH message from client {} to 3rd party application", session.clientId);
             this.cluster.sendToApplication(m);
 
         } else {
-            logger.trace("Authorization PUBLISH failed on topic {} for client {}", topicName, this.clientId);
+            logger.trace("Authorization PUBLISH failed on topic {} for client {}", topicName, session.clientId);
+        }
+
+        // If a Server implementation does not authorize a PUBLISH to be performed by a Client; it has no way of
+        // informing that Client. It MUST either make a positive acknowledgement, according to the normal QoS
+        // rules, or close the Network Connection
+
+        // In the QoS 1 delivery protocol, the Receiver
+        // MUST respond with a PUBACK Packet containing the Packet Identifier from the incoming
+        // PUBLISH Packet, having accepted ownership of the Application Message
+        // The receiver is not required to complete delivery of the Application Message before sending the
+        // PUBACK. When its original sender receives the PUBACK packet, ownership of the Application
+        // Message is transferred to the receiver.
+        // The acknowledgement is sent after the message has been forwarded (or queued as in-flight) to all recipients
+        BiConsumer<Void, Throwable> acknowledge = (v, e) -> {
+            if (e != null) {
+                logger.warn("Fan-out error: Failed to forward or store PUBLISH message {} from client {}, disconnect the client: ", packetId, session.clientId, e);
+                ctx.close();
+                return;
+            }
+            if (qos == MqttQoS.AT_LEAST_ONCE) {
+                logger.trace("Send PUBACK back to client {}", session.clientId);
+                this.registry.sendMessage(
+                        ctx,
+                        MqttMessageFactory.newMessage(
+                                new MqttFixedHeader(MqttMessageType.PUBACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                                MqttPacketIdVariableHeader.from(packetId),
+                                null),
+                        session.clientId,
+                        packetId,
+                        true);
+            }
+            // In the QoS 2 delivery protocol, the Receiver
+            // UST respond with a PUBREC containing the Packet Identifier from the incoming PUBLISH
+            // Packet, having accepted ownership of the Application Message.
+            // The receiver is not required to complete delivery of the Application Message before sending the
+            // PUBREC or PUBCOMP. When its original sender receives the PUBREC packet, ownership of the
+            // Application Message is transferred to the receiver.
+            else if (qos == MqttQoS.EXACTLY_ONCE) {
+                logger.trace("Send PUBREC back to client {}", session.clientId);
+                this.registry.sendMessage(
+                        ctx,
+                        MqttMessageFactory.newMessage(
+                                new MqttFixedHeader(MqttMessageType.PUBREC, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                                MqttPacketIdVariableHeader.from(packetId),
+                                null),
+                        session.clientId,
+                        packetId,
+                        true);
+            }
+        };
+        if (forwarded.isDone()) {
+            session.forwarding = null;
+            forwarded.whenComplete(acknowledge);
+        } else {
+            // Stop reading from the client while forwarding is pending, so only PUBLISH messages already read are
+            // chained, reading is resumed once the last of them has been acknowledged
+            ctx.channel().config().setAutoRead(false);
+            CompletableFuture<Void> forwarding = forwarded.whenCompleteAsync(acknowledge, ctx.executor());
+            session.forwarding = forwarding;
+            forwarding.whenCompleteAsync((v, e) -> {
+                if (session.forwarding != forwarding) return;
+                session.forwarding = null;
+                ctx.channel().config().setAutoRead(true);
+            }, ctx.executor());
         }
 
         // Refresh client's connected broker node
-        logger.trace("Refresh client {} connected to broker {}", this.clientId, this.brokerId);
-        this.storage.refreshConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+        logger.trace("Refresh client {} connected to broker {}", session.clientId, this.brokerId);
+        this.storage.refreshConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
+
+        logger.trace("Finish handling PUBLISH message for client {}", session.clientId);
+    }
 
-        logger.trace("Finish handling PUBLISH message for client {}", this.clientId);
+    /**
+     * Forward MQTT PUBLISH message to its recipients, after the previous PUBLISH message from the same client
+     *
+     * @param ctx      Session
+     * @param previous Future of the previous PUBLISH message being forwarded and acknowledged, null if none
+     * @param msg      MQTT PUBLISH Message
+     * @param payload  Payload
+     * @return Future completed when the message has been forwarded (or stored as in-flight) to all recipients
+     */
+    private CompletableFuture<Void> onwardRecipients(ChannelHandlerContext ctx, CompletableFuture<Void> previous, MqttPublishMessage msg, MqttPublishPayload payload) {
+        if (previous == null || previous.isDone()) return onwardRecipients(msg, payload);
+        return previous.thenComposeAsync(v -> onwardRecipients(msg, payload), ctx.executor());
     }
 
     /**
      * Forward MQTT PUBLISH message to its recipients
+     * PUBLISH message with many recipients is forwarded in parallel by the fan-out executor
      *
-     * @param msg MQTT PUBLISH Message
+     * @param msg     MQTT PUBLISH Message
+     * @param payload Payload
+     * @return Future completed when the message has been forwarded (or stored as in-flight) to all recipients
      */
-    private void onwardRecipients(MqttPublishMessage msg, MqttPublishPayload payload) {
+    private CompletableFuture<Void> onwardRecipients(MqttPublishMessage msg, MqttPublishPayload payload) {
         String topicName = msg.variableHeader().topicName();
         List<String> topicLevels = Topics.sanitizeTopicName(topicName);
 
         logger.trace("Onward PUBLISH message to recipients for topic {}", topicName);
 
+        // Topic name and payload are encoded once, shared by all recipients connected to this broker
+        MqttPublishFrame frame = new MqttPublishFrame(topicName,
+                payload.bytes() != null && payload.bytes().length > 0 ? Unpooled.wrappedBuffer(payload.bytes()) : Unpooled.EMPTY_BUFFER);
+
         // When sending a PUBLISH Packet to a Client the Server MUST set the RETAIN flag to 1 if a message is
         // sent as a result of a new subscription being made by a Client. It MUST set the RETAIN
         // flag to 0 when a PUBLISH Packet is sent to a Client because it matches an established subscription
@@ -571,9 +665,32 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // MUST deliver the message to the Client respecting the maximum QoS of all the matching subscriptions.
         // In addition, the Server MAY deliver further copies of the message, one for each
         // additional matching subscription and respecting the subscription’s QoS in each case.
+
+        // QoS 0 messages need no packet id or in-flight state, so when cluster-wide interest is enabled they are
+        // matched against in-memory subscriptions, and forwarded only once to each interested broker
+        // Shared subscriptions need one member picked from the whole group, so they are still resolved by storage
+        if (this.interests != null && msg.fixedHeader().qos() == MqttQoS.AT_MOST_ONCE && !this.interests.matchShared(topicLevels)) {
+            this.interests.matchLocal(topicLevels).forEach((cid, qos) -> {
+                logger.trace("Send PUBLISH message to client {}", cid);
+                this.registry.sendMessage(frame.message(MqttQoS.AT_MOST_ONCE, false, 0), cid, 0, true);
+            });
+            Message<MqttPublishVariableHeader, MqttPublishPayload> m = new Message<>(
+                    new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                    new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, null, null, null),
+                    MqttPublishVariableHeader.from(topicName),
+                    payload);
+            this.interests.matchRemote(topicLevels).forEach(bid -> {
+                logger.trace("Send PUBLISH message to broker {} for its subscriptions", bid);
+                this.cluster.sendToBroker(bid, m);
+            });
+            return CompletableFuture.completedFuture(null);
+        }
+
         Map<String, MqttQoS> subscriptions = new HashMap<>();
-        this.storage.getMatchSubscriptions(topicLevels, subscriptions);
-        subscriptions.forEach((cid, qos) -> {
+        this.storage.getMatchSubscriptions(topicLevels, this.brokerId, subscriptions);
+        // In-flight messages of local clients stored without waiting, the forwarding completes once all stored
+        Queue<CompletableFuture<Void>> stored = new ConcurrentLinkedQueue<>();
+        BiConsumer<String, MqttQoS> forward = (cid, qos) -> {
 
             // Compare publish QoS and subscription QoS
             MqttQoS fQos = msg.fixedHeader().qos().value() > qos.value() ? qos : msg.fixedHeader().qos();
@@ -601,43 +718,71 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
             );
 
             // Forward to recipient
-            boolean dup = false;
-            String bid = this.storage.getConnectedNode(cid);
-            if (StringUtils.isNotBlank(bid)) {
-                if (bid.equals(this.brokerId)) {
-                    logger.trace("Send PUBLISH message to client {}", cid);
-                    dup = true;
-                    this.registry.sendMessage(m.toMqttMessage(), cid, pid, true);
-                } else {
-                    logger.trace("Send PUBLISH message to broker {} for client {} subscription", bid, cid);
-                    dup = true;
-                    this.cluster.sendToBroker(bid, m);
-                }
-            }
-
+            // Clients connected to this broker are served from the session registry directly,
+            // storage is only consulted for clients not connected here
             // In the QoS 1 delivery protocol, the Sender
             // MUST treat the PUBLISH Packet as “unacknowledged” until it has received the corresponding
             // PUBACK packet from the receiver.
             // In the QoS 2 delivery protocol, the Sender
             // MUST treat the PUBLISH packet as “unacknowledged” until it has received the corresponding
             // PUBREC packet from the receiver.
-            if (fQos == MqttQoS.AT_LEAST_ONCE || fQos == MqttQoS.EXACTLY_ONCE) {
-                logger.trace("Add in-flight PUBLISH message {} with QoS {} for client {}", pid, fQos, cid);
-                this.storage.addInFlightMessage(cid, pid, m, dup);
+            // The in-flight message is stored before the PUBLISH is sent, otherwise the acknowledgement could be
+            // applied before it and leave a stale in-flight message.
+            boolean qos12 = fQos == MqttQoS.AT_LEAST_ONCE || fQos == MqttQoS.EXACTLY_ONCE;
+            ChannelHandlerContext session = this.registry.getSession(cid);
+            if (session != null) {
+                // The acknowledgement of a local client is handled by this broker with later storage commands,
+                // so the in-flight message could be stored without waiting.
+                if (qos12) {
+                    logger.trace("Add in-flight PUBLISH message {} with QoS {} for client {}", pid, fQos, cid);
+                    stored.add(this.storage.addInFlightMessageAsync(cid, pid, m, true));
+                }
+                logger.trace("Send PUBLISH message to client {}", cid);
+                this.registry.sendMessage(session, frame.message(fQos, false, pid), cid, pid, true);
+            } else {
+                String bid = this.storage.getConnectedNode(cid);
+                boolean dup = StringUtils.isNotBlank(bid) && !bid.equals(this.brokerId);
+                if (qos12) {
+                    logger.trace("Add in-flight PUBLISH message {} with QoS {} for client {}", pid, fQos, cid);
+                    this.storage.addInFlightMessage(cid, pid, m, dup);
+                }
+                if (dup) {
+                    logger.trace("Send PUBLISH message to broker {} for client {} subscription", bid, cid);
+                    this.cluster.sendToBroker(bid, m);
+                }
             }
-        });
+        };
+
+        if (this.fanOut != null && this.fanOut.accept(subscriptions.size())) {
+            logger.trace("Fan out PUBLISH message to {} recipients in parallel for topic {}", subscriptions.size(), topicName);
+            return this.fanOut.execute(subscriptions, forward).thenCompose(v -> allOf(stored));
+        }
+        subscriptions.forEach(forward);
+        return allOf(stored);
+    }
+
+    /**
+     * Future completed when all the futures completed
+     *
+     * @param futures Futures
+     * @return Future completed when all completed, or completed exceptionally if any failed
+     */
+    private static CompletableFuture<Void> allOf(Collection<CompletableFuture<Void>> futures) {
+        if (futures.isEmpty()) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]));
     }
 
     private void onPubAck(ChannelHandlerContext ctx, MqttMessage msg) {
-        logger.trace("Start handling PUBACK message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling PUBACK message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBACK message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBACK message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
 
-        logger.debug("Message received: Received PUBACK message from client {} user {}", this.clientId, this.userName);
+        logger.debug("Message received: Received PUBACK message from client {} user {}", session.clientId, session.userName);
 
         MqttPacketIdVariableHeader variable = (MqttPacketIdVariableHeader) msg.variableHeader();
         int packetId = variable.packetId();
@@ -645,26 +790,27 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // In the QoS 1 delivery protocol, the Sender
         // MUST treat the PUBLISH Packet as “unacknowledged” until it has received the corresponding
         // PUBACK packet from the receiver.
-        logger.trace("Remove in-flight PUBLISH message {} for client {}", packetId, this.clientId);
-        this.storage.removeInFlightMessage(this.clientId, packetId);
+        logger.trace("Remove in-flight PUBLISH message {} for client {}", packetId, session.clientId);
+        this.storage.removeInFlightMessage(session.clientId, packetId);
 
         // Refresh client's connected broker node
-        logger.trace("Refresh client {} connected to broker {}", this.clientId, this.brokerId);
-        this.storage.refreshConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+        logger.trace("Refresh client {} connected to broker {}", session.clientId, this.brokerId);
+        this.storage.refreshConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
 
-        logger.trace("Finish handling PUBACK message for client {}", this.clientId);
+        logger.trace("Finish handling PUBACK message for client {}", session.clientId);
     }
 
     private void onPubRec(ChannelHandlerContext ctx, MqttMessage msg) {
-        logger.trace("Start handling PUBREC message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling PUBREC message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBREC message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBREC message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
 
-        logger.debug("Message received: Received PUBREC message from client {} user {}", this.clientId, this.userName);
+        logger.debug("Message received: Received PUBREC message from client {} user {}", session.clientId, session.userName);
 
         MqttPacketIdVariableHeader variable = (MqttPacketIdVariableHeader) msg.variableHeader();
         int packetId = variable.packetId();
@@ -675,38 +821,39 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // MUST send a PUBREL packet when it receives a PUBREC packet from the receiver. This
         // PUBREL packet MUST contain the same Packet Identifier as the original PUBLISH packet.
         // MUST NOT re-send the PUBLISH once it has sent the corresponding PUBREL packet.
-        logger.trace("Remove in-flight PUBLISH message {} for client {}", packetId, this.clientId);
-        this.storage.removeInFlightMessage(this.clientId, packetId);
+        logger.trace("Remove in-flight PUBLISH message {} for client {}", packetId, session.clientId);
+        this.storage.removeInFlightMessage(session.clientId, packetId);
 
         // Send back PUBREL
         MqttMessage pubrel = MqttMessageFactory.newMessage(
                 new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0),
                 MqttPacketIdVariableHeader.from(packetId),
                 null);
-        logger.trace("Send PUBREL back to client {}", this.clientId);
-        this.registry.sendMessage(ctx, pubrel, this.clientId, packetId, true);
+        logger.trace("Send PUBREL back to client {}", session.clientId);
+        this.registry.sendMessage(ctx, pubrel, session.clientId, packetId, true);
 
         // Save PUBREL as in-flight message
-        logger.trace("Add In-Flight PUBREL message {} for client {}", packetId, this.clientId);
-        this.storage.addInFlightMessage(this.clientId, packetId, Message.fromMqttMessage(pubrel, this.version, this.clientId, this.userName, this.brokerId), true);
+        logger.trace("Add In-Flight PUBREL message {} for client {}", packetId, session.clientId);
+        this.storage.addInFlightMessage(session.clientId, packetId, Message.fromMqttMessage(pubrel, session.version, session.clientId, session.userName, this.brokerId), true);
 
         // Refresh client's connected broker node
-        logger.trace("Refresh client {} connected to broker {}", this.clientId, this.brokerId);
-        this.storage.refreshConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+        logger.trace("Refresh client {} connected to broker {}", session.clientId, this.brokerId);
+        this.storage.refreshConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
 
-        logger.trace("Finish handling PUBREC message for client {}", this.clientId);
+        logger.trace("Finish handling PUBREC message for client {}", session.clientId);
     }
 
     private void onPubRel(ChannelHandlerContext ctx, MqttMessage msg) {
-        logger.trace("Start handling PUBREL message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling PUBREL message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBREL message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBREL message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
 
-        logger.debug("Message received: Received PUBREL message from client {} user {}", this.clientId, this.userName);
+        logger.debug("Message received: Received PUBREL message from client {} user {}", session.clientId, session.userName);
 
         MqttPacketIdVariableHeader variable = (MqttPacketIdVariableHeader) msg.variableHeader();
         int packetId = variable.packetId();
@@ -716,31 +863,32 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // Packet Identifier as the PUBREL.
         // After it has sent a PUBCOMP, the receiver MUST treat any subsequent PUBLISH packet that
         // contains that Packet Identifier as being a new publication.
-        this.storage.removeQoS2MessageId(this.clientId, packetId);
+        this.storage.removeQoS2MessageId(session.clientId, packetId);
         MqttMessage comp = MqttMessageFactory.newMessage(
                 new MqttFixedHeader(MqttMessageType.PUBCOMP, false, MqttQoS.AT_MOST_ONCE, false, 0),
                 MqttPacketIdVariableHeader.from(packetId),
                 null);
-        logger.trace("Send PUBCOMP back to client {}", this.clientId);
-        this.registry.sendMessage(ctx, comp, this.clientId, packetId, true);
+        logger.trace("Send PUBCOMP back to client {}", session.clientId);
+        this.registry.sendMessage(ctx, comp, session.clientId, packetId, true);
 
         // Refresh client's connected broker node
-        logger.trace("Refresh client {} connected to broker {}", this.clientId, this.brokerId);
-        this.storage.refreshConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+        logger.trace("Refresh client {} connected to broker {}", session.clientId, this.brokerId);
+        this.storage.refreshConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
 
-        logger.trace("Finish handling PUBREL message for client {}", this.clientId);
+        logger.trace("Finish handling PUBREL message for client {}", session.clientId);
     }
 
     private void onPubComp(ChannelHandlerContext ctx, MqttMessage msg) {
-        logger.trace("Start handling PUBCOMP message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling PUBCOMP message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBCOMP message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PUBCOMP message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
 
-        logger.debug("Message received: Received PUBCOMP message from client {} user {}", this.clientId, this.userName);
+        logger.debug("Message received: Received PUBCOMP message from client {} user {}", session.clientId, session.userName);
 
         MqttPacketIdVariableHeader variable = (MqttPacketIdVariableHeader) msg.variableHeader();
         int packetId = variable.packetId();
@@ -748,21 +896,22 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // In the QoS 2 delivery protocol, the Sender
         // MUST treat the PUBREL packet as “unacknowledged” until it has received the corresponding
         // PUBCOMP packet from the receiver.
-        logger.trace("Remove in-flight PUBREL message {} for client {}", packetId, this.clientId);
-        this.storage.removeInFlightMessage(this.clientId, packetId);
+        logger.trace("Remove in-flight PUBREL message {} for client {}", packetId, session.clientId);
+        this.storage.removeInFlightMessage(session.clientId, packetId);
 
         // Refresh client's connected broker node
-        logger.trace("Refresh client {} connected to broker {}", this.clientId, this.brokerId);
-        this.storage.refreshConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+        logger.trace("Refresh client {} connected to broker {}", session.clientId, this.brokerId);
+        this.storage.refreshConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
 
-        logger.trace("Finish handling PUBCOMP message for client {}", this.clientId);
+        logger.trace("Finish handling PUBCOMP message for client {}", session.clientId);
     }
 
     private void onSubscribe(ChannelHandlerContext ctx, MqttSubscribeMessage msg) {
-        logger.trace("Start handling SUBSCRIBE message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling SUBSCRIBE message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received SUBSCRIBE message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received SUBSCRIBE message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
@@ -773,22 +922,22 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // Validate Topic Filter based on configuration
         for (MqttTopicSubscription subscription : requestSubscriptions) {
             if (!this.validator.isTopicFilterValid(subscription.topic())) {
-                logger.debug("Protocol violation: Client {} subscription {} is not valid based on configuration, disconnect the client", this.clientId, subscription.topic());
+                logger.debug("Protocol violation: Client {} subscription {} is not valid based on configuration, disconnect the client", session.clientId, subscription.topic());
                 ctx.close();
                 return;
             }
         }
 
-        logger.debug("Message received: Received SUBSCRIBE message from client {} user {}", this.clientId, this.userName);
+        logger.debug("Message received: Received SUBSCRIBE message from client {} user {}", session.clientId, session.userName);
 
         // Authorize client subscribe using provided Authenticator
-        List<MqttGrantedQoS> grantedQosLevels = this.authenticator.authSubscribe(this.clientId, this.userName, requestSubscriptions);
+        List<MqttGrantedQoS> grantedQosLevels = authSubscribe(session, requestSubscriptions);
         if (requestSubscriptions.size() != grantedQosLevels.size()) {
             logger.warn("Authorization error: SUBSCRIBE message's subscriptions count not equal to granted QoS count, disconnect the client");
             ctx.close();
             return;
         }
-        logger.trace("Authorization granted on topic {} as {} for client {}", ArrayUtils.toString(msg.payload().subscriptions()), ArrayUtils.toString(grantedQosLevels), this.clientId);
+        logger.trace("Authorization granted on topic {} as {} for client {}", ArrayUtils.toString(msg.payload().subscriptions()), ArrayUtils.toString(grantedQosLevels), session.clientId);
 
         // If a Server receives a SUBSCRIBE packet that contains multiple Topic Filters it MUST handle that packet
         // as if it had received a sequence of multiple SUBSCRIBE packets, except that it combines their responses
@@ -796,14 +945,14 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // When the Server receives a SUBSCRIBE Packet from a Client, the Server MUST respond with a
         // SUBACK Packet. The SUBACK Packet MUST have the same Packet Identifier as the
         // SUBSCRIBE Packet that it is acknowledging.
-        logger.trace("Send SUBACK back to client {}", this.clientId);
+        logger.trace("Send SUBACK back to client {}", session.clientId);
         this.registry.sendMessage(
                 ctx,
                 MqttMessageFactory.newMessage(
                         new MqttFixedHeader(MqttMessageType.SUBACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
                         MqttPacketIdVariableHeader.from(packetId),
                         new MqttSubAckPayload(grantedQosLevels)),
-                this.clientId,
+                session.clientId,
                 packetId,
                 true);
 
@@ -823,12 +972,17 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
                 // Filter MUST be re-sent, but the flow of publications MUST NOT be interrupted.
                 // Where the Topic Filter is not identical to any existing Subscription’s filter, a new Subscription is created
                 // and all matching retained messages are sent.
-                logger.trace("Update client {} subscription with topic {} QoS {}", this.clientId, topic, grantedQoS);
-                this.storage.updateSubscription(this.clientId, topicLevels, MqttQoS.valueOf(grantedQoS.value()));
+                logger.trace("Update client {} subscription with topic {} QoS {}", session.clientId, topic, grantedQoS);
+                this.storage.updateSubscription(session.clientId, topicLevels, MqttQoS.valueOf(grantedQoS.value()));
+                if (this.interests != null) this.interests.subscribe(session.clientId, topicLevels, MqttQoS.valueOf(grantedQoS.value()));
+
+                // Retained messages are not sent for shared subscription, the group already consumed them
+                if (Topics.isShared(topicLevels)) continue;
 
                 // The Server is permitted to start sending PUBLISH packets matching the Subscription before the Server
                 // sends the SUBACK Packet.
-                for (Message<MqttPublishVariableHeader, MqttPublishPayload> retain : this.storage.getMatchRetainMessages(topicLevels)) {
+                // Retained messages are streamed from storage, instead of being loaded all at once.
+                this.storage.getMatchRetainMessages(topicLevels, retain -> {
 
                     // Compare publish QoS and subscription QoS
                     MqttQoS fQos = retain.fixedHeader().qos().value() > grantedQoS.value() ? MqttQoS.valueOf(grantedQoS.value()) : retain.fixedHeader().qos();
@@ -836,17 +990,17 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
                     // Set packet id
                     int pid = 0;
                     if (fQos == MqttQoS.AT_LEAST_ONCE || fQos == MqttQoS.EXACTLY_ONCE) {
-                        pid = this.storage.getNextPacketId(this.clientId);
+                        pid = this.storage.getNextPacketId(session.clientId);
                     }
 
                     // Forward to recipient
-                    logger.trace("Send retained PUBLISH message to client {} subscription with topic {}", this.clientId, topic);
+                    logger.trace("Send retained PUBLISH message to client {} subscription with topic {}", session.clientId, topic);
                     Message m = new Message<>(new MqttFixedHeader(MqttMessageType.PUBLISH, false, fQos, false, 0),
-                            new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, this.clientId, null, null),
+                            new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, session.clientId, null, null),
                             pid > 0 ? MqttPublishVariableHeader.from(retain.variableHeader().topicName(), pid)
                                     : MqttPublishVariableHeader.from(retain.variableHeader().topicName()),
                             retain.payload());
-                    this.registry.sendMessage(ctx, m.toMqttMessage(), this.clientId, pid, true);
+                    this.registry.sendMessage(ctx, m.toMqttMessage(), session.clientId, pid, true);
 
                     // In the QoS 1 delivery protocol, the Sender
                     // MUST treat the PUBLISH Packet as “unacknowledged” until it has received the corresponding
@@ -855,29 +1009,30 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
                     // MUST treat the PUBLISH packet as “unacknowledged” until it has received the corresponding
                     // PUBREC packet from the receiver.
                     if (fQos == MqttQoS.AT_LEAST_ONCE || fQos == MqttQoS.EXACTLY_ONCE) {
-                        logger.trace("Add in-flight PUBLISH message {} with QoS {} for client {}", pid, fQos, this.clientId);
-                        this.storage.addInFlightMessage(this.clientId, pid, m, true);
+                        logger.trace("Add in-flight PUBLISH message {} with QoS {} for client {}", pid, fQos, session.clientId);
+                        this.storage.addInFlightMessage(session.clientId, pid, m, true);
                     }
-                }
+                });
             }
         }
 
         // Pass message to 3rd party application
-        logger.trace("Send a copy of SUBSCRIBE message from client {} to 3rd party application", this.clientId);
-        this.cluster.sendToApplication(Message.fromMqttMessage(msg, grantedQosLevels, this.version, this.clientId, this.userName, this.brokerId));
+        logger.trace("Send a copy of SUBSCRIBE message from client {} to 3rd party application", session.clientId);
+        this.cluster.sendToApplication(Message.fromMqttMessage(msg, grantedQosLevels, session.version, session.clientId, session.userName, this.brokerId));
 
         // Refresh client's connected broker node
-        logger.trace("Refresh client {} connected to broker {}", this.clientId, this.brokerId);
-        this.storage.refreshConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+        logger.trace("Refresh client {} connected to broker {}", session.clientId, this.brokerId);
+        this.storage.refreshConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
 
-        logger.trace("Finish handling SUBSCRIBE message for client {}", this.clientId);
+        logger.trace("Finish handling SUBSCRIBE message for client {}", session.clientId);
     }
 
     private void onUnsubscribe(ChannelHandlerContext ctx, MqttUnsubscribeMessage msg) {
-        logger.trace("Start handling UNSUBSCRIBE message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling UNSUBSCRIBE message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received UNSUBSCRIBE message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received UNSUBSCRIBE message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
@@ -885,13 +1040,13 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // Validate Topic Filter based on configuration
         for (String topic : msg.payload().topics()) {
             if (!this.validator.isTopicFilterValid(topic)) {
-                logger.debug("Protocol violation: Client {} un-subscription {} is not valid based on configuration, disconnect the client", this.clientId, topic);
+                logger.debug("Protocol violation: Client {} un-subscription {} is not valid based on configuration, disconnect the client", session.clientId, topic);
                 ctx.close();
                 return;
             }
         }
 
-        logger.debug("Message received: Received UNSUBSCRIBE message from client {} user {} topics {}", this.clientId, this.userName, ArrayUtils.toString(msg.payload().topics()));
+        logger.debug("Message received: Received UNSUBSCRIBE message from client {} user {} topics {}", session.clientId, session.userName, ArrayUtils.toString(msg.payload().topics()));
 
         int packetId = msg.variableHeader().packetId();
 
@@ -902,14 +1057,14 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // If a Server receives an UNSUBSCRIBE packet that contains multiple Topic Filters it MUST handle that
         // packet as if it had received a sequence of multiple UNSUBSCRIBE packets, except that it sends just one
         // UNSUBACK response.
-        logger.debug("Send UNSUBACK back to client {}", this.clientId);
+        logger.debug("Send UNSUBACK back to client {}", session.clientId);
         this.registry.sendMessage(
                 ctx,
                 MqttMessageFactory.newMessage(
                         new MqttFixedHeader(MqttMessageType.UNSUBACK, false, MqttQoS.AT_MOST_ONCE, false, 0),
                         MqttPacketIdVariableHeader.from(packetId),
                         null),
-                this.clientId,
+                session.clientId,
                 packetId,
                 true);
 
@@ -923,103 +1078,108 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         // the Client.
         // It MAY continue to deliver any existing messages buffered for delivery to the Client.
         msg.payload().topics().forEach(topic -> {
-            logger.trace("Remove client {} subscription with topic {}", this.clientId, topic);
-            this.storage.removeSubscription(this.clientId, Topics.sanitize(topic));
+            logger.trace("Remove client {} subscription with topic {}", session.clientId, topic);
+            this.storage.removeSubscription(session.clientId, Topics.sanitize(topic));
+            if (this.interests != null) this.interests.unsubscribe(session.clientId, Topics.sanitize(topic));
         });
 
         // Pass message to 3rd party application
-        logger.trace("Send a copy of UNSUBSCRIBE message from client {} to 3rd party application", this.clientId);
-        this.cluster.sendToApplication(Message.fromMqttMessage(msg, this.version, this.clientId, this.userName, this.brokerId));
+        logger.trace("Send a copy of UNSUBSCRIBE message from client {} to 3rd party application", session.clientId);
+        this.cluster.sendToApplication(Message.fromMqttMessage(msg, session.version, session.clientId, session.userName, this.brokerId));
 
         // Refresh client's connected broker node
-        logger.trace("Refresh client {} connected to broker {}", this.clientId, this.brokerId);
-        this.storage.refreshConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+        logger.trace("Refresh client {} connected to broker {}", session.clientId, this.brokerId);
+        this.storage.refreshConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
 
-        logger.trace("Finish handling UNSUBSCRIBE message for client {}", this.clientId);
+        logger.trace("Finish handling UNSUBSCRIBE message for client {}", session.clientId);
     }
 
     private void onPingReq(ChannelHandlerContext ctx) {
-        logger.trace("Start handling PINGREQ message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling PINGREQ message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PINGREQ message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received PINGREQ message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
 
-        logger.debug("Message received: Received PINGREQ message from client {} user {}", this.clientId, this.userName);
+        logger.debug("Message received: Received PINGREQ message from client {} user {}", session.clientId, session.userName);
 
-        logger.debug("Response: Send PINGRESP back to client {}", this.clientId);
+        logger.debug("Response: Send PINGRESP back to client {}", session.clientId);
         this.registry.sendMessage(
                 ctx,
                 MqttMessageFactory.newMessage(
                         new MqttFixedHeader(MqttMessageType.PINGRESP, false, MqttQoS.AT_MOST_ONCE, false, 0),
                         null,
                         null),
-                this.clientId,
+                session.clientId,
                 null,
                 true);
 
         // Refresh client's connected broker node
-        logger.trace("Refresh client {} connected to broker {}", this.clientId, this.brokerId);
-        this.storage.refreshConnectedNode(this.clientId, this.brokerId, Math.round(this.keepAlive * 1.5f));
+        logger.trace("Refresh client {} connected to broker {}", session.clientId, this.brokerId);
+        this.storage.refreshConnectedNode(session.clientId, this.brokerId, Math.round(session.keepAlive * 1.5f));
 
-        logger.trace("Finish handling PINGREQ message for client {}", this.clientId);
+        logger.trace("Finish handling PINGREQ message for client {}", session.clientId);
     }
 
     private void onDisconnect(ChannelHandlerContext ctx) {
-        logger.trace("Start handling DISCONNECT message for client {}", this.clientId);
+        SessionState session = session(ctx);
+        logger.trace("Start handling DISCONNECT message for client {}", session.clientId);
 
-        if (!this.connected) {
-            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received DISCONNECT message, disconnect the client", this.clientId);
+        if (!session.connected) {
+            logger.debug("Protocol violation: Client {} must first sent a CONNECT message, now received DISCONNECT message, disconnect the client", session.clientId);
             ctx.close();
             return;
         }
 
-        logger.debug("Message received: Received DISCONNECT message from client {} user {}", this.clientId, this.userName);
+        logger.debug("Message received: Received DISCONNECT message from client {} user {}", session.clientId, session.userName);
 
-        boolean redirect = handleConnectLost(ctx);
+        boolean redirect = handleConnectLost(ctx, session);
 
         // Pass message to 3rd party application
         if (redirect)
-            logger.trace("Send a copy of DISCONNECT message from client {} to 3rd party application", this.clientId);
+            logger.trace("Send a copy of DISCONNECT message from client {} to 3rd party application", session.clientId);
         this.cluster.sendToApplication(new Message<>(
                 new MqttFixedHeader(MqttMessageType.DISCONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0),
-                new MqttAdditionalHeader(this.version, this.clientId, this.userName, this.brokerId), null, null));
+                new MqttAdditionalHeader(session.version, session.clientId, session.userName, this.brokerId), null, null));
 
         // If the Will Flag is set to 1 this indicates that, if the Connect request is accepted, a Will Message MUST be
         // stored on the Server and associated with the Network Connection. The Will Message MUST be published
         // when the Network Connection is subsequently closed unless the Will Message has been deleted by the
         // Server on receipt of a DISCONNECT Packet.
-        this.willMessage = null;
+        session.clearWill();
 
         // On receipt of DISCONNECT the Server:
         // MUST discard any Will Message associated with the current connection without publishing it.
         // SHOULD close the Network Connection if the Client has not already done so.
-        this.connected = false;
+        session.connected = false;
 
         // Make sure connection is closed
         ctx.close();
 
-        logger.trace("Finish handling PINGREQ message for client {}", this.clientId);
+        logger.trace("Finish handling PINGREQ message for client {}", session.clientId);
     }
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
-        logger.trace("Start handling inactive event for client {}", this.clientId);
+        SessionState session = existingSession(ctx);
+        if (session == null) return;
+        logger.trace("Start handling inactive event for client {}", session.clientId);
 
-        if (this.connected) {
+        if (session.connected) {
 
-            logger.debug("Connection closed: Connection lost from client {} user {}", this.clientId, this.userName);
+            logger.debug("Connection closed: Connection lost from client {} user {}", session.clientId, session.userName);
 
-            boolean redirect = handleConnectLost(ctx);
+            boolean redirect = handleConnectLost(ctx, session);
 
             // Pass message to 3rd party application
             if (redirect)
-                logger.trace("Send a copy of DISCONNECT message from client {} to 3rd party application", this.clientId);
+                logger.trace("Send a copy of DISCONNECT message from client {} to 3rd party application", session.clientId);
             this.cluster.sendToApplication(new Message<>(
                     new MqttFixedHeader(MqttMessageType.DISCONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0),
-                    new MqttAdditionalHeader(this.version, this.clientId, this.userName, this.brokerId), null, null));
+                    new MqttAdditionalHeader(session.version, session.clientId, session.userName, this.brokerId), null, null));
 
             // If the Will Flag is set to 1 this indicates that, if the Connect request is accepted, a Will Message MUST be
             // stored on the Server and associated with the Network Connection. The Will Message MUST be published
@@ -1030,72 +1190,147 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
             // The Client fails to communicate within the Keep Alive time.
             // The Client closes the Network Connection without first sending a DISCONNECT Packet.
             // The Server closes the Network Connection because of a protocol error.
-            if (this.willMessage != null) {
+            if (session.willTopic != null) {
 
-                MqttQoS willQos = this.willMessage.fixedHeader().qos();
-                String willTopic = this.willMessage.variableHeader().topicName();
-                boolean willRetain = this.willMessage.fixedHeader().retain();
+                MqttQoS willQos = session.willQos;
+                String willTopic = session.willTopic;
+                boolean willRetain = session.willRetain;
 
-                AuthorizeResult result = this.authenticator.authPublish(this.clientId, this.userName, willTopic, willQos.value(), willRetain);
+                AuthorizeResult result = this.authenticator.authPublish(session.clientId, session.userName, willTopic, willQos.value(), willRetain);
                 // Authorize successful
                 if (result == AuthorizeResult.OK) {
-                    logger.trace("Authorization WILL message succeeded on topic {} for client {}", willTopic, this.clientId);
+                    logger.trace("Authorization WILL message succeeded on topic {} for client {}", willTopic, session.clientId);
 
                     // Onward to recipients
-                    onwardRecipients(this.willMessage, Message.fromMqttMessage(this.willMessage, this.version, this.clientId, this.userName, this.brokerId).payload());
+                    MqttPublishMessage willMessage = session.willMessage();
+                    onwardRecipients(willMessage, Message.fromMqttMessage(willMessage, session.version, session.clientId, session.userName, this.brokerId).payload());
                 }
                 // Authorize failed
                 else {
-                    logger.trace("Authorization WILL message failed on topic {} for client {}", willTopic, this.clientId);
+                    logger.trace("Authorization WILL message failed on topic {} for client {}", willTopic, session.clientId);
                 }
             }
         }
 
-        logger.trace("Finish handling inactive event for client {}", this.clientId);
+        logger.trace("Finish handling inactive event for client {}", session.clientId);
+    }
+
+    /**
+     * Authorize client PUBLISH, using cached result if possible
+     *
+     * @param session   Session State
+     * @param topicName Topic Name
+     * @param qos       QoS
+     * @param retain    Retain
+     * @return Authorize Result
+     */
+    private AuthorizeResult authPublish(SessionState session, String topicName, int qos, boolean retain) {
+        if (this.authorizeCache == null) {
+            return this.authenticator.authPublish(session.clientId, session.userName, topicName, qos, retain);
+        }
+
+        AuthorizeResult result = this.authorizeCache.getPublish(session.clientId, session.userName, topicName, qos, retain);
+        if (result == null) {
+            long generation = this.authorizeCache.generation();
+            result = this.authenticator.authPublish(session.clientId, session.userName, topicName, qos, retain);
+            if (result != null) this.authorizeCache.putPublish(session.clientId, session.userName, topicName, qos, retain, result, generation);
+        }
+        return result;
+    }
+
+    /**
+     * Authorize client SUBSCRIBE, using cached results if possible
+     * Only subscriptions not cached are passed to the Authenticator
+     *
+     * @param session              Session State
+     * @param requestSubscriptions List of request Topic Subscription
+     * @return List of granted QoS
+     */
+    private List<MqttGrantedQoS> authSubscribe(SessionState session, List<MqttTopicSubscription> requestSubscriptions) {
+        if (this.authorizeCache == null) {
+            return this.authenticator.authSubscribe(session.clientId, session.userName, requestSubscriptions);
+        }
+
+        List<MqttGrantedQoS> grantedQosLevels = new ArrayList<>();
+        List<MqttTopicSubscription> uncached = new ArrayList<>();
+        for (MqttTopicSubscription subscription : requestSubscriptions) {
+            MqttGrantedQoS grantedQoS = this.authorizeCache.getSubscribe(session.clientId, session.userName, subscription.topic(), subscription.requestedQos().value());
+            if (grantedQoS == null) uncached.add(subscription);
+            grantedQosLevels.add(grantedQoS);
+        }
+        if (uncached.isEmpty()) return grantedQosLevels;
+
+        long generation = this.authorizeCache.generation();
+        List<MqttGrantedQoS> authorized = this.authenticator.authSubscribe(session.clientId, session.userName, uncached);
+        if (authorized == null || authorized.size() != uncached.size()) return authorized;
+
+        // merge authorized results into the cached ones, keep the request order
+        int j = 0;
+        for (int i = 0; i < grantedQosLevels.size(); i++) {
+            if (grantedQosLevels.get(i) == null) {
+                MqttTopicSubscription subscription = uncached.get(j);
+                MqttGrantedQoS grantedQoS = authorized.get(j++);
+                this.authorizeCache.putSubscribe(session.clientId, session.userName, subscription.topic(), subscription.requestedQos().value(), grantedQoS, generation);
+                grantedQosLevels.set(i, grantedQoS);
+            }
+        }
+        return grantedQosLevels;
     }
 
     /**
      * Handle connection lost condition
      * Both when received DISCONNECT message or not
      *
-     * @param ctx Session
+     * @param ctx     Session
+     * @param session Session State
      * @return True client is marked as disconnected, False client already re-connected
      */
-    private boolean handleConnectLost(ChannelHandlerContext ctx) {
+    private boolean handleConnectLost(ChannelHandlerContext ctx, SessionState session) {
         boolean redirect = false;
 
         // Require lock on client connection state
-        if (!this.storage.lock(this.clientId, ConnectionState.DISCONNECTING)) {
-            logger.warn("Lock failed: Failed to lock on client {}", this.clientId);
+        if (!this.storage.lock(session.clientId, ConnectionState.DISCONNECTING)) {
+            logger.warn("Lock failed: Failed to lock on client {}", session.clientId);
         } else {
-            logger.trace("Successful lock on client {}", this.clientId);
+            logger.trace("Successful lock on client {}", session.clientId);
 
-            logger.trace("Test if client {} already reconnected to some broker", this.clientId);
+            logger.trace("Test if client {} already reconnected to some broker", session.clientId);
             // Test if client already reconnected to this broker
-            if (this.registry.removeSession(this.clientId, ctx)) {
+            if (this.registry.removeSession(session.clientId, ctx)) {
+
+                // Client's subscriptions no longer interest this broker
+                if (this.interests != null) this.interests.unsubscribeAll(session.clientId);
 
                 // Test if client already reconnected to another broker
-                if (this.storage.removeConnectedNode(this.clientId, this.brokerId)) {
+                if (this.storage.removeConnectedNode(session.clientId, this.brokerId)) {
 
                     redirect = true;
 
                     // Remove connected node
-                    logger.trace("Mark client {} disconnected from broker {}", this.clientId, this.brokerId);
+                    logger.trace("Mark client {} disconnected from broker {}", session.clientId, this.brokerId);
+
+                    // Cached authorization results are scoped to the session on this broker
+                    if (this.authorizeCache != null) this.authorizeCache.invalidateClient(session.clientId);
 
                     // If CleanSession is set to 1, the Client and Server MUST discard any previous Session and start a new
                     // one. This Session lasts as long as the Network Connection. State data associated with this Session
                     // MUST NOT be reused in any subsequent Session.
                     // When CleanSession is set to 1 the Client and Server need not process the deletion of state atomically.
-                    if (this.cleanSession) {
-                        logger.trace("Clear session state for client {} because current connection is clean session", this.clientId);
-                        this.storage.removeAllSessionState(this.clientId);
+                    if (session.cleanSession) {
+                        logger.trace("Clear session state for client {} because current connection is clean session", session.clientId);
+                        this.storage.removeAllSessionState(session.clientId);
+                    }
+                    // Persistent session expires after the configured interval, then removed by session sweeper
+                    else if (this.sessionExpiry > 0) {
+                        logger.trace("Set session state for client {} to expire in {} seconds", session.clientId, this.sessionExpiry);
+                        this.storage.expireSessionExist(session.clientId, this.sessionExpiry);
                     }
                 }
             }
 
             // Release lock on client connection state
-            logger.trace("Try to release lock on client {}", this.clientId);
-            this.storage.release(this.clientId, ConnectionState.DISCONNECTED);
+            logger.trace("Try to release lock on client {}", session.clientId);
+            this.storage.release(session.clientId, ConnectionState.DISCONNECTED);
         }
 
         return redirect;
@@ -1106,7 +1341,8 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
         if (evt instanceof IdleStateEvent) {
             IdleStateEvent e = (IdleStateEvent) evt;
             if (e.state() == IdleState.ALL_IDLE) {
-                logger.debug("Protocol violation: Client {} has been idle beyond keep alive time, disconnect the client", this.clientId);
+                SessionState session = existingSession(ctx);
+                logger.debug("Protocol violation: Client {} has been idle beyond keep alive time, disconnect the client", session != null ? session.clientId : null);
                 ctx.close();
             }
         }
@@ -1114,11 +1350,12 @@ public class SyncStorageHandler extends SimpleChannelInboundHandler<MqttMessage>
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        if (this.connected) {
+        SessionState session = existingSession(ctx);
+        if (session != null && session.connected) {
             if (cause instanceof IOException) {
-                logger.debug("Exception caught: Exception caught from client {} user {}: ", this.clientId, this.userName, ExceptionUtils.getMessage(cause));
+                logger.debug("Exception caught: Exception caught from client {} user {}: ", session.clientId, session.userName, ExceptionUtils.getMessage(cause));
             } else {
-                logger.debug("Exception caught: Exception caught from client {} user {}: ", this.clientId, this.userName, cause);
+                logger.debug("Exception caught: Exception caught from client {} user {}: ", session.clientId, session.userName, cause);
             }
         }
         ctx.close();
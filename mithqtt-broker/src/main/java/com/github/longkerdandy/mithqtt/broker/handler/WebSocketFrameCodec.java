@@ -0,0 +1,47 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageCodec;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * MQTT over WebSocket Frame Codec
+ * Maps binary WebSocket frames to the byte stream of the MQTT decoder, and encoded MQTT messages to binary frames
+ * Frames are not aggregated, an MQTT packet may span several frames and a frame may contain several packets
+ */
+@ChannelHandler.Sharable
+public class WebSocketFrameCodec extends MessageToMessageCodec<WebSocketFrame, ByteBuf> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketFrameCodec.class);
+
+    // singleton
+    public static final WebSocketFrameCodec INSTANCE = new WebSocketFrameCodec();
+
+    private WebSocketFrameCodec() {
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        out.add(new BinaryWebSocketFrame(msg.retain()));
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, WebSocketFrame msg, List<Object> out) throws Exception {
+        // MQTT Control Packets MUST be sent in WebSocket binary data frames. If any other type of data frame is
+        // received the recipient MUST close the Network Connection
+        if (msg instanceof BinaryWebSocketFrame || msg instanceof ContinuationWebSocketFrame) {
+            out.add(msg.content().retain());
+        } else {
+            logger.debug("Protocol violation: Received {} is not a binary WebSocket frame, disconnect the client", msg.getClass().getSimpleName());
+            ctx.close();
+        }
+    }
+}
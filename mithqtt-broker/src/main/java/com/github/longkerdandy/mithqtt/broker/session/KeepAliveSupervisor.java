@@ -0,0 +1,75 @@
+package com.github.longkerdandy.mithqtt.broker.session;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keep Alive Supervisor
+ * Broker wide hashed wheel timer checking the keep alive of all connections
+ * Each connection holds a single timeout, which is not rescheduled on activity but re-armed lazily when it expires,
+ * so mostly idle connections cost one wheel entry and no event loop task each
+ */
+public class KeepAliveSupervisor {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeepAliveSupervisor.class);
+
+    private final Timer timer;
+    private final LongSupplier clock;
+
+    /**
+     * Create Keep Alive Supervisor
+     *
+     * @param tick         Tick duration of the wheel in milliseconds, the precision of keep alive check
+     * @param ticksPerWheel Number of ticks in one round of the wheel
+     */
+    public KeepAliveSupervisor(long tick, int ticksPerWheel) {
+        this(new HashedWheelTimer(new DefaultThreadFactory("mqtt-keepalive"), tick, TimeUnit.MILLISECONDS, ticksPerWheel), System::nanoTime);
+    }
+
+    /**
+     * Create Keep Alive Supervisor
+     *
+     * @param timer Timer
+     * @param clock Current time in nanoseconds
+     */
+    public KeepAliveSupervisor(Timer timer, LongSupplier clock) {
+        this.timer = timer;
+        this.clock = clock;
+    }
+
+    /**
+     * Current time of the supervisor
+     *
+     * @return Time in nanoseconds
+     */
+    public long nanoTime() {
+        return this.clock.getAsLong();
+    }
+
+    /**
+     * Schedule the task after delay
+     *
+     * @param task  Task
+     * @param delay Delay in nanoseconds
+     * @return Timeout
+     */
+    public Timeout schedule(TimerTask task, long delay) {
+        return this.timer.newTimeout(task, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop the supervisor
+     */
+    public void stop() {
+        logger.debug("Stopping keep alive supervisor ...");
+        this.timer.stop();
+    }
+}
@@ -0,0 +1,63 @@
+package com.github.longkerdandy.mithqtt.broker.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Session Meter
+ * Measures the memory cost of local connections, as the growth of memory used since the broker started
+ * Heap is measured after the last garbage collection, so short living garbage is not counted
+ */
+public class SessionMeter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionMeter.class);
+
+    private final SessionRegistry registry;
+    // memory used before accepting connections
+    private final long baseline;
+
+    public SessionMeter(SessionRegistry registry) {
+        this.registry = registry;
+        this.baseline = usedHeap() + usedDirect();
+    }
+
+    /**
+     * Log memory used per connection
+     *
+     * @return Memory used per connection in bytes, 0 if no connection
+     */
+    public long report() {
+        int connections = this.registry.size();
+        long heap = usedHeap();
+        long direct = usedDirect();
+        long perConnection = connections > 0 ? Math.max(heap + direct - this.baseline, 0) / connections : 0;
+        logger.info("Memory usage: {} connections, heap {} MB, direct {} MB, {} bytes per connection",
+                connections, heap >> 20, direct >> 20, perConnection);
+        return perConnection;
+    }
+
+    private static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) continue;
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage == null) usage = pool.getUsage();
+            used += usage.getUsed();
+        }
+        return used;
+    }
+
+    private static long usedDirect() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            used += pool.getMemoryUsed();
+        }
+        return used;
+    }
+}
@@ -17,7 +17,20 @@ public class SessionRegistry {
     // Logger
     private static final Logger logger = LoggerFactory.getLogger(SessionRegistry.class);
     // Thread safe HashMap as Repository (Client Id : ChannelHandlerContext)
-    private final Map<String, ChannelHandlerContext> repo = new ConcurrentHashMap<>();
+    private final Map<String, ChannelHandlerContext> repo;
+
+    public SessionRegistry() {
+        this(16);
+    }
+
+    /**
+     * Create MQTT Session Registry
+     *
+     * @param initialCapacity Expected number of connections, avoids resizing the repository while clients connect
+     */
+    public SessionRegistry(int initialCapacity) {
+        this.repo = new ConcurrentHashMap<>(initialCapacity);
+    }
 
     /**
      * Save MQTT session for the client
@@ -61,6 +74,15 @@ public class SessionRegistry {
         return this.repo.remove(clientId, session);
     }
 
+    /**
+     * Number of local sessions
+     *
+     * @return Size
+     */
+    public int size() {
+        return this.repo.size();
+    }
+
     /**
      * Send MQTT message to specific client
      *
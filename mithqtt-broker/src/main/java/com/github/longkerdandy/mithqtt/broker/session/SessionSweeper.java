@@ -0,0 +1,38 @@
+package com.github.longkerdandy.mithqtt.broker.session;
+
+import com.github.longkerdandy.mithqtt.api.storage.sync.SyncStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Session Sweeper
+ * Periodically removes the state of expired persistent sessions from the storage
+ */
+public class SessionSweeper implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionSweeper.class);
+
+    private final SyncStorage storage;
+    // session expiry in seconds
+    private final int expiry;
+    // keys scanned in each round
+    private final int count;
+
+    public SessionSweeper(SyncStorage storage, int expiry, int count) {
+        this.storage = storage;
+        this.expiry = expiry;
+        this.count = count;
+    }
+
+    @Override
+    public void run() {
+        try {
+            int removed = this.storage.sweepSessions(this.count, this.expiry);
+            if (removed > 0) {
+                logger.debug("Session expired: Removed {} expired sessions from storage", removed);
+            }
+        } catch (Exception e) {
+            logger.warn("Sweep failed: Error when sweeping expired sessions: ", e);
+        }
+    }
+}
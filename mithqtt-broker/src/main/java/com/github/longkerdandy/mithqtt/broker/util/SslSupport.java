@@ -0,0 +1,156 @@
+package com.github.longkerdandy.mithqtt.broker.util;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.*;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSL Support
+ * Builds the server SslContext from configuration, creates SslHandler for connections and collects handshake metrics
+ */
+public class SslSupport {
+
+    private static final Logger logger = LoggerFactory.getLogger(SslSupport.class);
+
+    private final SslProvider provider;
+    private final SslContext context;
+    // Enabled protocols, null means provider defaults
+    private final String[] protocols;
+
+    // Handshake metrics
+    final LongAdder succeeded = new LongAdder();
+    final LongAdder failed = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+    final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public SslSupport(AbstractConfiguration config) throws IOException {
+        // OpenSSL (netty-tcnative) engine is much cheaper on handshakes, fallback to JDK if not available
+        SslProvider provider = SslProvider.JDK;
+        if ("openssl".equalsIgnoreCase(config.getString("mqtt.ssl.provider", "jdk"))) {
+            if (OpenSsl.isAvailable()) {
+                provider = SslProvider.OPENSSL;
+            } else {
+                logger.warn("SSL Error: OpenSSL is not available, fallback to JDK provider: ", OpenSsl.unavailabilityCause());
+            }
+        }
+
+        this.provider = provider;
+
+        SslContextBuilder builder = SslContextBuilder.forServer(new File(config.getString("mqtt.ssl.certPath")), new File(config.getString("mqtt.ssl.keyPath")), config.getString("mqtt.ssl.keyPassword"))
+                .sslProvider(provider)
+                .sessionCacheSize(config.getLong("mqtt.ssl.sessionCacheSize", 0))
+                .sessionTimeout(config.getLong("mqtt.ssl.sessionTimeout", 0));
+        String[] ciphers = config.getStringArray("mqtt.ssl.ciphers");
+        if (ciphers.length > 0) {
+            builder.ciphers(Arrays.asList(ciphers), SupportedCipherSuiteFilter.INSTANCE);
+        }
+        this.context = builder.build();
+
+        String[] protocols = config.getStringArray("mqtt.ssl.protocols");
+        this.protocols = protocols.length > 0 ? protocols : null;
+
+        // Session tickets let clients resume on any broker sharing the same ticket keys
+        String ticketKeyPath = config.getString("mqtt.ssl.ticketKeyPath");
+        if (StringUtils.isNotBlank(ticketKeyPath)) {
+            if (this.context.sessionContext() instanceof OpenSslSessionContext) {
+                ((OpenSslSessionContext) this.context.sessionContext()).setTicketKeys(ticketKeys(Files.readAllBytes(Paths.get(ticketKeyPath))));
+            } else {
+                logger.warn("SSL Error: Session ticket keys are only supported by OpenSSL provider, ignore {}", ticketKeyPath);
+            }
+        }
+
+        logger.info("SSL initialized with {} provider, ciphers {}", provider, this.context.cipherSuites());
+    }
+
+    /**
+     * Parse session ticket keys
+     * Each key is 48 bytes: 16 bytes name, 16 bytes HMAC secret and 16 bytes AES secret, the first key encrypts new tickets
+     *
+     * @param bytes Ticket keys file content
+     * @return OpenSslSessionTicketKey array
+     */
+    static OpenSslSessionTicketKey[] ticketKeys(byte[] bytes) {
+        int size = OpenSslSessionTicketKey.TICKET_KEY_SIZE;
+        if (bytes.length == 0 || bytes.length % size != 0) {
+            throw new IllegalArgumentException("Session ticket keys length must be a multiple of " + size + ": " + bytes.length);
+        }
+        OpenSslSessionTicketKey[] keys = new OpenSslSessionTicketKey[bytes.length / size];
+        for (int i = 0; i < keys.length; i++) {
+            int name = i * size;
+            int hmac = name + OpenSslSessionTicketKey.NAME_SIZE;
+            int aes = hmac + OpenSslSessionTicketKey.HMAC_KEY_SIZE;
+            keys[i] = new OpenSslSessionTicketKey(
+                    Arrays.copyOfRange(bytes, name, hmac),
+                    Arrays.copyOfRange(bytes, hmac, aes),
+                    Arrays.copyOfRange(bytes, aes, aes + OpenSslSessionTicketKey.AES_KEY_SIZE));
+        }
+        return keys;
+    }
+
+    /**
+     * SSL provider in use, may differ from configuration if OpenSSL is not available
+     *
+     * @return SslProvider
+     */
+    public SslProvider provider() {
+        return this.provider;
+    }
+
+    /**
+     * Create SslHandler for a new connection, the handshake is recorded in metrics
+     *
+     * @param alloc ByteBufAllocator
+     * @return SslHandler
+     */
+    public SslHandler newHandler(ByteBufAllocator alloc) {
+        SslHandler handler = this.context.newHandler(alloc);
+        if (this.protocols != null) {
+            handler.engine().setEnabledProtocols(this.protocols);
+        }
+        long start = System.nanoTime();
+        handler.handshakeFuture().addListener(f -> {
+            if (f.isSuccess()) {
+                long elapsed = System.nanoTime() - start;
+                this.succeeded.increment();
+                this.nanos.add(elapsed);
+                this.maxNanos.accumulate(elapsed);
+            } else {
+                this.failed.increment();
+            }
+        });
+        return handler;
+    }
+
+    /**
+     * Log handshake metrics since last report, and reset
+     *
+     * @param interval Report interval in milliseconds
+     */
+    public void report(long interval) {
+        long s = this.succeeded.sumThenReset();
+        long f = this.failed.sumThenReset();
+        long n = this.nanos.sumThenReset();
+        long max = this.maxNanos.getThenReset();
+        if (s == 0 && f == 0) return;
+        String resumed = "";
+        if (this.context.sessionContext() instanceof OpenSslSessionContext) {
+            OpenSslSessionStats stats = ((OpenSslSessionContext) this.context.sessionContext()).stats();
+            resumed = ", total resumed " + (stats.hits() + stats.ticketKeyResume()) + " of " + stats.accept();
+        }
+        logger.info("SSL handshakes: {} succeeded, {} failed, {}/s, avg {} ms, max {} ms{}",
+                s, f, (s + f) * 1000 / Math.max(interval, 1),
+                s > 0 ? TimeUnit.NANOSECONDS.toMillis(n / s) : 0, TimeUnit.NANOSECONDS.toMillis(max), resumed);
+    }
+}
@@ -1,5 +1,7 @@
 package com.github.longkerdandy.mithqtt.broker.util;
 
+import com.github.longkerdandy.mithqtt.util.StripedLRUCache;
+import com.github.longkerdandy.mithqtt.util.Topics;
 import org.apache.commons.configuration.AbstractConfiguration;
 import org.apache.commons.lang3.StringUtils;
 
@@ -21,6 +23,8 @@ public class Validator {
     protected Pattern topicNamePattern;
     // MQTT topic filter validate regex pattern
     protected Pattern topicFilterPattern;
+    // MQTT topic name validate results (Topic Name : Valid)
+    protected StripedLRUCache<String, Boolean> topicNameCache;
 
     public Validator(AbstractConfiguration config) {
         if (StringUtils.isNotBlank(config.getString("mqtt.clientId.validator")))
@@ -33,6 +37,7 @@ public class Validator {
             this.topicNamePattern = Pattern.compile(config.getString("mqtt.topicName.validator"));
         if (StringUtils.isNotBlank(config.getString("mqtt.topicFilter.validator")))
             this.topicFilterPattern = Pattern.compile(config.getString("mqtt.topicFilter.validator"));
+        this.topicNameCache = new StripedLRUCache<>(config.getInt("mqtt.topic.cache.size", 0), 0);
     }
 
     /**
@@ -42,6 +47,18 @@ public class Validator {
      * @return True if valid
      */
     public boolean isTopicNameValid(String topicName) {
+        if (StringUtils.isEmpty(topicName)) return false;
+        if (!this.topicNameCache.enabled()) return validateTopicName(topicName);
+        return this.topicNameCache.computeIfAbsent(topicName, this::validateTopicName);
+    }
+
+    /**
+     * Validate MQTT topic name (no wildcards) against the rules and regex pattern
+     *
+     * @param topicName Topic Name
+     * @return True if valid
+     */
+    protected boolean validateTopicName(String topicName) {
         return !StringUtils.isEmpty(topicName) &&
                 !topicName.contains("+") &&
                 !topicName.contains("#") &&
@@ -56,17 +73,37 @@ public class Validator {
      */
     public boolean isTopicFilterValid(String topicFilter) {
         return !StringUtils.isEmpty(topicFilter) &&
+                isShareValid(topicFilter) &&
                 (this.topicFilterPattern == null || this.topicFilterPattern.matcher(topicFilter).matches());
     }
 
+    /**
+     * Is MQTT shared subscription $share/{group}/{filter} valid
+     * Group must not be empty or contain wildcards, and must be followed by a topic filter
+     *
+     * @param topicFilter Topic Filter
+     * @return True if valid or not a shared subscription
+     */
+    protected boolean isShareValid(String topicFilter) {
+        if (!topicFilter.startsWith(Topics.SHARE + "/")) return true;
+        String[] tokens = topicFilter.split("/", 3);
+        return tokens.length == 3 &&
+                !tokens[1].isEmpty() &&
+                !tokens[1].contains("+") &&
+                !tokens[1].contains("#") &&
+                !tokens[2].isEmpty();
+    }
+
     /**
      * Is MQTT client id valid
+     * Client id starting with $share/ is reserved for shared subscription members
      *
      * @param clientId Client Id
      * @return True if valid
      */
     public boolean isClientIdValid(String clientId) {
-        return this.clientIdPattern == null || this.clientIdPattern.matcher(clientId).matches();
+        return !clientId.startsWith(Topics.SHARE + "/") &&
+                (this.clientIdPattern == null || this.clientIdPattern.matcher(clientId).matches());
     }
 
     /**
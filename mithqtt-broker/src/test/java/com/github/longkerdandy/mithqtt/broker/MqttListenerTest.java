@@ -0,0 +1,45 @@
+package com.github.longkerdandy.mithqtt.broker;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * MQTT Listener Test
+ */
+public class MqttListenerTest {
+
+    @Test
+    public void listenersTest() {
+        PropertiesConfiguration config = new PropertiesConfiguration();
+        config.setProperty("mqtt.host", "0.0.0.0");
+        config.setProperty("mqtt.listeners", "tcp, ssl, ws");
+        config.setProperty("mqtt.listener.tcp.port", 1883);
+        config.setProperty("mqtt.listener.ssl.port", 8883);
+        config.setProperty("mqtt.listener.ssl.ssl", true);
+        config.setProperty("mqtt.listener.ws.port", 8080);
+        config.setProperty("mqtt.listener.ws.host", "127.0.0.1");
+        config.setProperty("mqtt.listener.ws.protocol", "websocket");
+
+        List<MqttListener> listeners = MqttListener.fromConfig(config);
+        assert listeners.size() == 3;
+        assert listeners.get(0).port() == 1883 && !listeners.get(0).ssl() && !listeners.get(0).websocket();
+        assert listeners.get(1).port() == 8883 && listeners.get(1).ssl();
+        assert listeners.get(2).websocket() && listeners.get(2).websocketPath().equals("/mqtt");
+        assert listeners.get(2).host().equals("127.0.0.1");
+    }
+
+    @Test
+    public void legacyTest() {
+        PropertiesConfiguration config = new PropertiesConfiguration();
+        config.setProperty("mqtt.host", "0.0.0.0");
+        config.setProperty("mqtt.port", 1883);
+        config.setProperty("mqtt.ssl.enabled", true);
+        config.setProperty("mqtt.ssl.port", 8883);
+
+        List<MqttListener> listeners = MqttListener.fromConfig(config);
+        assert listeners.size() == 1;
+        assert listeners.get(0).port() == 8883 && listeners.get(0).ssl();
+    }
+}
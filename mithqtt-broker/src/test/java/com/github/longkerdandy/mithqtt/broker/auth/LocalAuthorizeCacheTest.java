@@ -0,0 +1,91 @@
+package com.github.longkerdandy.mithqtt.broker.auth;
+
+import com.github.longkerdandy.mithqtt.api.auth.AuthorizeResult;
+import io.netty.handler.codec.mqtt.MqttGrantedQoS;
+import org.apache.commons.configuration.MapConfiguration;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local Authorize Cache Test
+ */
+public class LocalAuthorizeCacheTest {
+
+    private static LocalAuthorizeCache newCache() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("mqtt.authorize.cache.size", 2);
+        map.put("mqtt.authorize.cache.ttl", 0);
+        LocalAuthorizeCache cache = new LocalAuthorizeCache();
+        cache.init(new MapConfiguration(map));
+        return cache;
+    }
+
+    @Test
+    public void publishTest() {
+        LocalAuthorizeCache cache = newCache();
+        assert cache.getPublish("client1", "user1", "a/b", 1, false) == null;
+        cache.putPublish("client1", "user1", "a/b", 1, false, AuthorizeResult.OK, cache.generation());
+        cache.putPublish("client1", "user1", "a/b", 1, true, AuthorizeResult.FORBIDDEN, cache.generation());
+        assert cache.getPublish("client1", "user1", "a/b", 1, false) == AuthorizeResult.OK;
+        assert cache.getPublish("client1", "user1", "a/b", 1, true) == AuthorizeResult.FORBIDDEN;
+        assert cache.getPublish("client1", "user1", "a/b", 2, false) == null;
+        assert cache.getPublish("client1", "user2", "a/b", 1, false) == null;
+        assert cache.getPublish("client2", "user1", "a/b", 1, false) == null;
+
+        // size bounded per session
+        cache.putPublish("client1", "user1", "a/c", 1, false, AuthorizeResult.OK, cache.generation());
+        assert cache.getPublish("client1", "user1", "a/b", 1, false) == null;
+    }
+
+    @Test
+    public void subscribeTest() {
+        LocalAuthorizeCache cache = newCache();
+        cache.putSubscribe("client1", "user1", "a/#", 2, MqttGrantedQoS.AT_LEAST_ONCE, cache.generation());
+        assert cache.getSubscribe("client1", "user1", "a/#", 2) == MqttGrantedQoS.AT_LEAST_ONCE;
+        assert cache.getSubscribe("client1", "user1", "a/#", 1) == null;
+        assert cache.getPublish("client1", "user1", "a/#", 2, false) == null;
+    }
+
+    @Test
+    public void invalidateTest() {
+        LocalAuthorizeCache cache = newCache();
+        cache.putPublish("client1", "user1", "a/b", 1, false, AuthorizeResult.OK, cache.generation());
+        cache.putPublish("client2", "user1", "a/b", 1, false, AuthorizeResult.OK, cache.generation());
+        cache.putPublish("client3", "user2", "a/b", 1, false, AuthorizeResult.OK, cache.generation());
+
+        cache.invalidateClient("client1");
+        assert cache.getPublish("client1", "user1", "a/b", 1, false) == null;
+        assert cache.getPublish("client2", "user1", "a/b", 1, false) == AuthorizeResult.OK;
+
+        cache.invalidateUser("user1");
+        assert cache.getPublish("client2", "user1", "a/b", 1, false) == null;
+        assert cache.getPublish("client3", "user2", "a/b", 1, false) == AuthorizeResult.OK;
+
+        cache.invalidateAll();
+        assert cache.getPublish("client3", "user2", "a/b", 1, false) == null;
+    }
+
+    @Test
+    public void generationTest() {
+        LocalAuthorizeCache cache = newCache();
+
+        // invalidated while the Authenticator was called, must not be cached
+        long generation = cache.generation();
+        cache.invalidateClient("client1");
+        cache.putPublish("client1", "user1", "a/b", 1, false, AuthorizeResult.OK, generation);
+        cache.putSubscribe("client1", "user1", "a/+", 1, MqttGrantedQoS.AT_LEAST_ONCE, generation);
+        assert cache.getPublish("client1", "user1", "a/b", 1, false) == null;
+        assert cache.getSubscribe("client1", "user1", "a/+", 1) == null;
+
+        generation = cache.generation();
+        cache.invalidateUser("user2");
+        cache.putPublish("client1", "user1", "a/b", 1, false, AuthorizeResult.OK, generation);
+        assert cache.getPublish("client1", "user1", "a/b", 1, false) == null;
+
+        generation = cache.generation();
+        cache.putPublish("client1", "user1", "a/b", 1, false, AuthorizeResult.OK, generation);
+        assert cache.getPublish("client1", "user1", "a/b", 1, false) == AuthorizeResult.OK;
+    }
+}
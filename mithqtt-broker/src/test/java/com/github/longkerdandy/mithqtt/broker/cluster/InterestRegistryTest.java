@@ -0,0 +1,235 @@
+package com.github.longkerdandy.mithqtt.broker.cluster;
+
+import com.github.longkerdandy.mithqtt.api.cluster.Cluster;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListenerFactory;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.api.message.MqttAdditionalHeader;
+import com.github.longkerdandy.mithqtt.api.message.MqttSubscribePayloadGranted;
+import com.github.longkerdandy.mithqtt.api.message.MqttTopicSubscriptionGranted;
+import com.github.longkerdandy.mithqtt.broker.session.SessionRegistry;
+import com.github.longkerdandy.mithqtt.util.Topics;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.*;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.junit.Test;
+
+import java.util.*;
+
+/**
+ * Interest Registry Test
+ */
+public class InterestRegistryTest {
+
+    @Test
+    public void localTest() {
+        InterestRegistry registry = new InterestRegistry("broker1", 60000);
+        registry.subscribe("client1", Topics.sanitize("a/b"), MqttQoS.AT_MOST_ONCE);
+        registry.subscribe("client1", Topics.sanitize("a/+"), MqttQoS.AT_LEAST_ONCE);
+        registry.subscribe("client2", Topics.sanitize("a/#"), MqttQoS.EXACTLY_ONCE);
+
+        Map<String, MqttQoS> map = registry.matchLocal(Topics.sanitize("a/b"));
+        assert map.size() == 2;
+        assert map.get("client1") == MqttQoS.AT_LEAST_ONCE;
+        assert map.get("client2") == MqttQoS.EXACTLY_ONCE;
+        assert registry.matchLocal(Topics.sanitize("a/c/d")).keySet().contains("client2");
+        assert registry.matchLocal(Topics.sanitize("b")).isEmpty();
+
+        registry.unsubscribe("client1", Topics.sanitize("a/+"));
+        assert registry.matchLocal(Topics.sanitize("a/b")).get("client1") == MqttQoS.AT_MOST_ONCE;
+
+        // shared subscription is not matched locally
+        registry.subscribe("client3", Topics.sanitize("$share/g1/b/+"), MqttQoS.AT_MOST_ONCE);
+        assert registry.matchShared(Topics.sanitize("b/c"));
+        assert !registry.matchShared(Topics.sanitize("a/b"));
+        assert registry.matchLocal(Topics.sanitize("b/c")).isEmpty();
+
+        registry.unsubscribeAll("client1");
+        registry.unsubscribeAll("client2");
+        assert registry.matchLocal(Topics.sanitize("a/b")).isEmpty();
+        registry.unsubscribeAll("client3");
+        assert !registry.matchShared(Topics.sanitize("b/c"));
+    }
+
+    @Test
+    public void remoteTest() {
+        InterestRegistry registry1 = new InterestRegistry("broker1", 60000);
+        InterestRegistry registry2 = new InterestRegistry("broker2", 60000);
+        List<InterestRegistry> registries = new ArrayList<>();
+        registries.add(registry1);
+        registries.add(registry2);
+        registry1.setCluster(new TestCluster(registries));
+        registry2.setCluster(new TestCluster(registries));
+
+        registry1.subscribe("client1", Topics.sanitize("a/+"), MqttQoS.AT_MOST_ONCE);
+        registry1.subscribe("client2", Topics.sanitize("a/+"), MqttQoS.AT_MOST_ONCE);
+        assert registry2.matchRemote(Topics.sanitize("a/b")).contains("broker1");
+        assert registry2.matchRemote(Topics.sanitize("b/c")).isEmpty();
+        assert registry1.matchRemote(Topics.sanitize("a/b")).isEmpty();
+
+        // still interested while any local client subscribed
+        registry1.unsubscribeAll("client1");
+        assert registry2.matchRemote(Topics.sanitize("a/b")).contains("broker1");
+        registry1.unsubscribe("client2", Topics.sanitize("a/+"));
+        assert registry2.matchRemote(Topics.sanitize("a/b")).isEmpty();
+
+        // snapshot replaces the interest
+        registry1.subscribe("client1", Topics.sanitize("c"), MqttQoS.AT_MOST_ONCE);
+        registry2.onInterest(snapshotOf("broker1"));
+        assert registry2.matchRemote(Topics.sanitize("c")).isEmpty();
+        registry1.sync();
+        assert registry2.matchRemote(Topics.sanitize("c")).contains("broker1");
+    }
+
+    @Test
+    public void digestTest() {
+        InterestRegistry registry1 = new InterestRegistry("broker1", 60000);
+        InterestRegistry registry2 = new InterestRegistry("broker2", 60000);
+        List<InterestRegistry> registries = Arrays.asList(registry1, registry2);
+        List<Integer> sent = new ArrayList<>();
+        registry1.setCluster(new TestCluster(registries) {
+            @Override
+            public void sendToBrokers(Message message) {
+                sent.add(((MqttPacketIdVariableHeader) message.variableHeader()).packetId());
+                super.sendToBrokers(message);
+            }
+        });
+        registry2.setCluster(new TestCluster(registries));
+
+        registry1.subscribe("client1", Topics.sanitize("a/+"), MqttQoS.AT_MOST_ONCE);
+        registry1.subscribe("client1", Topics.sanitize("$share/g1/b/#"), MqttQoS.AT_MOST_ONCE);
+        sent.clear();
+
+        // snapshot only if changed since the last one
+        registry1.sync();
+        assert sent.equals(Collections.singletonList(InterestRegistry.SNAPSHOT));
+        registry1.sync();
+        assert sent.equals(Arrays.asList(InterestRegistry.SNAPSHOT, InterestRegistry.DIGEST));
+        assert registry2.matchRemote(Topics.sanitize("a/b")).contains("broker1");
+        assert registry2.matchShared(Topics.sanitize("b/c"));
+
+        // digest does not match the lost interest, a new snapshot is requested
+        registry2.onInterest(snapshotOf("broker1"));
+        assert registry2.matchRemote(Topics.sanitize("a/b")).isEmpty();
+        assert !registry2.matchShared(Topics.sanitize("b/c"));
+        sent.clear();
+        registry1.sync();
+        assert sent.equals(Arrays.asList(InterestRegistry.DIGEST, InterestRegistry.SNAPSHOT));
+        assert registry2.matchRemote(Topics.sanitize("a/b")).contains("broker1");
+        assert registry2.matchShared(Topics.sanitize("b/c"));
+
+        // deltas keep the digest in step
+        registry1.unsubscribe("client1", Topics.sanitize("a/+"));
+        registry1.sync();
+        sent.clear();
+        registry1.sync();
+        assert sent.equals(Collections.singletonList(InterestRegistry.DIGEST));
+        assert registry2.matchRemote(Topics.sanitize("a/b")).isEmpty();
+    }
+
+    @Test
+    public void httpTest() {
+        SessionRegistry sessions = new SessionRegistry();
+        sessions.saveSession("client1", new EmbeddedChannel(new ChannelInboundHandlerAdapter()).pipeline().firstContext());
+        InterestRegistry registry = new InterestRegistry("broker1", 60000);
+        BrokerClusterListenerImpl listener = new BrokerClusterListenerImpl(sessions, registry);
+
+        // subscriptions made through HTTP interface for the local client
+        listener.onSubscribe(new Message<>(
+                new MqttFixedHeader(MqttMessageType.SUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, "client1", "user1", null),
+                MqttPacketIdVariableHeader.from(1),
+                new MqttSubscribePayloadGranted(Arrays.asList(
+                        new MqttTopicSubscriptionGranted("a/+", MqttGrantedQoS.AT_MOST_ONCE),
+                        new MqttTopicSubscriptionGranted("b", MqttGrantedQoS.NOT_GRANTED)))));
+        assert registry.matchLocal(Topics.sanitize("a/b")).containsKey("client1");
+        assert registry.matchLocal(Topics.sanitize("b")).isEmpty();
+
+        listener.onUnsubscribe(new Message<>(
+                new MqttFixedHeader(MqttMessageType.UNSUBSCRIBE, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, "client1", "user1", null),
+                MqttPacketIdVariableHeader.from(2),
+                new MqttUnsubscribePayload(Collections.singletonList("a/+"))));
+        assert registry.matchLocal(Topics.sanitize("a/b")).isEmpty();
+    }
+
+    @Test
+    public void sendToBrokersTest() {
+        // default implementation sends to each known broker
+        List<String> sent = new ArrayList<>();
+        Cluster cluster = new Cluster() {
+            @Override
+            public void init(AbstractConfiguration config, ClusterListenerFactory factory) {
+            }
+
+            @Override
+            public void destroy() {
+            }
+
+            @Override
+            public Set<String> brokers() {
+                return new HashSet<>(Arrays.asList("broker1", "broker2"));
+            }
+
+            @Override
+            public void sendToBroker(String brokerId, Message message) {
+                sent.add(brokerId);
+            }
+
+            @Override
+            public void sendToApplication(Message message) {
+            }
+        };
+        cluster.sendToBrokers(new Message<Void, Void>(
+                new MqttFixedHeader(MqttMessageType.DISCONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, "client1", null, null), null, null));
+        assert sent.size() == 2 && sent.containsAll(Arrays.asList("broker1", "broker2"));
+    }
+
+    private static Message snapshotOf(String brokerId) {
+        InterestRegistry empty = new InterestRegistry(brokerId, 60000);
+        List<Message> messages = new ArrayList<>();
+        empty.setCluster(new TestCluster(null) {
+            @Override
+            public void sendToBrokers(Message message) {
+                messages.add(message);
+            }
+        });
+        empty.sync();
+        return messages.get(0);
+    }
+
+    /**
+     * Cluster delivers broadcast messages to all registries
+     */
+    private static class TestCluster implements Cluster {
+
+        private final List<InterestRegistry> registries;
+
+        TestCluster(List<InterestRegistry> registries) {
+            this.registries = registries;
+        }
+
+        @Override
+        public void init(AbstractConfiguration config, ClusterListenerFactory factory) {
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public void sendToBroker(String brokerId, Message message) {
+            this.registries.forEach(r -> r.onInterest(message));
+        }
+
+        @Override
+        public void sendToBrokers(Message message) {
+            this.registries.forEach(r -> r.onInterest(message));
+        }
+
+        @Override
+        public void sendToApplication(Message message) {
+        }
+    }
+}
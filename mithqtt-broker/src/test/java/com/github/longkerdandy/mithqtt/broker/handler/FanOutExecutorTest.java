@@ -0,0 +1,95 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Fan-out Executor Test
+ */
+public class FanOutExecutorTest {
+
+    @Test
+    public void acceptTest() {
+        FanOutExecutor disabled = new FanOutExecutor(4, 0);
+        assert !disabled.accept(100000);
+        disabled.shutdown();
+
+        FanOutExecutor fanOut = new FanOutExecutor(4, 100);
+        assert !fanOut.accept(99);
+        assert fanOut.accept(100);
+        fanOut.shutdown();
+    }
+
+    @Test
+    public void executeTest() throws ExecutionException, InterruptedException {
+        FanOutExecutor fanOut = new FanOutExecutor(4, 1);
+        Map<String, Integer> recipients = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            recipients.put("client" + i, i);
+        }
+
+        // each recipient handled by the same thread every time
+        Map<String, Integer> results = new ConcurrentHashMap<>();
+        Map<String, Long> threads = new ConcurrentHashMap<>();
+        for (int round = 0; round < 3; round++) {
+            fanOut.execute(recipients, (clientId, i) -> {
+                results.merge(clientId, i, Integer::sum);
+                Long previous = threads.put(clientId, Thread.currentThread().getId());
+                assert previous == null || previous == Thread.currentThread().getId();
+            }).get();
+        }
+        assert results.size() == 10000;
+        assert results.get("client100") == 300;
+        assert threads.values().stream().distinct().count() == 4;
+
+        // failure completes the future exceptionally
+        try {
+            fanOut.execute(recipients, (clientId, i) -> {
+                if (i == 5000) throw new IllegalStateException();
+            }).get();
+            assert false;
+        } catch (ExecutionException e) {
+            assert e.getCause() instanceof IllegalStateException;
+        }
+
+        fanOut.shutdown();
+    }
+
+    @Test
+    public void saturatedTest() throws ExecutionException, InterruptedException {
+        FanOutExecutor fanOut = new FanOutExecutor(1, 1, 1);
+        Map<String, Integer> recipients = Collections.singletonMap("client", 1);
+        CountDownLatch latch = new CountDownLatch(1);
+        Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+
+        // the stripe is busy, and its queue is full
+        CompletableFuture<Void> busy = fanOut.execute(recipients, (clientId, i) -> {
+            threads.put(0, Thread.currentThread());
+            try {
+                latch.await();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        CompletableFuture<Void> queued = fanOut.execute(recipients, (clientId, i) -> threads.put(1, Thread.currentThread()));
+
+        // runs on the caller's thread
+        fanOut.execute(recipients, (clientId, i) -> threads.put(2, Thread.currentThread())).get();
+        assert threads.get(2) == Thread.currentThread();
+
+        latch.countDown();
+        busy.get();
+        queued.get();
+        assert threads.get(0) == threads.get(1);
+        assert threads.get(0).isDaemon();
+        assert threads.get(0).getName().startsWith("mqtt-fanout");
+
+        fanOut.shutdown();
+    }
+}
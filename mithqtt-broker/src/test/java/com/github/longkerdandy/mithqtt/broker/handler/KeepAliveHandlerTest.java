@@ -0,0 +1,180 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import com.github.longkerdandy.mithqtt.broker.session.KeepAliveSupervisor;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep Alive Handler Test
+ */
+public class KeepAliveHandlerTest {
+
+    private ManualTimer timer;
+    private KeepAliveSupervisor supervisor;
+
+    @Before
+    public void init() {
+        this.timer = new ManualTimer();
+        this.supervisor = new KeepAliveSupervisor(this.timer, () -> this.timer.now);
+    }
+
+    private static EmbeddedChannel newChannel(KeepAliveHandler handler, List<Object> events) {
+        return new EmbeddedChannel(handler, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+                events.add(evt);
+            }
+        });
+    }
+
+    @Test
+    public void idleTest() throws Exception {
+        List<Object> events = new ArrayList<>();
+        EmbeddedChannel channel = newChannel(new KeepAliveHandler(this.supervisor, 1), events);
+
+        // activity keeps the connection alive
+        for (int i = 0; i < 6; i++) {
+            this.timer.advance(250, channel);
+            channel.writeInbound("ping");
+        }
+        assert events.isEmpty();
+
+        // idle
+        this.timer.advance(1500, channel);
+        assert events.size() == 1;
+        assert events.get(0) == IdleStateEvent.ALL_IDLE_STATE_EVENT;
+
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void setTimeoutTest() throws Exception {
+        List<Object> events = new ArrayList<>();
+        KeepAliveHandler handler = new KeepAliveHandler(this.supervisor, 60);
+        EmbeddedChannel channel = newChannel(handler, events);
+
+        handler.setTimeout(1);
+        this.timer.advance(1500, channel);
+        assert events.size() == 1;
+
+        // closed connection is not checked anymore
+        handler.setTimeout(1);
+        channel.close();
+        events.clear();
+        this.timer.advance(1500, channel);
+        assert events.isEmpty();
+        assert this.timer.timeouts.isEmpty();
+    }
+
+    @Test
+    public void replacedTimeoutTest() throws Exception {
+        List<Object> events = new ArrayList<>();
+        KeepAliveHandler handler = new KeepAliveHandler(this.supervisor, 1);
+        EmbeddedChannel channel = newChannel(handler, events);
+
+        // timeout expired on the timer thread, but the timeout is extended before the event loop handles it
+        this.timer.advance(1500, null);
+        handler.setTimeout(60);
+        channel.runPendingTasks();
+        assert events.isEmpty();
+
+        this.timer.advance(61000, channel);
+        assert events.size() == 1;
+
+        channel.finishAndReleaseAll();
+    }
+
+    /**
+     * Timer driven manually by the test, time only moves on when advanced
+     */
+    private static class ManualTimer implements Timer {
+
+        private final List<ManualTimeout> timeouts = new ArrayList<>();
+        private long now;
+
+        /**
+         * Move the time forward, run the expired tasks and then the channel's pending tasks
+         *
+         * @param millis  Milliseconds
+         * @param channel Channel, null to leave the pending tasks
+         */
+        void advance(long millis, EmbeddedChannel channel) throws Exception {
+            this.now += TimeUnit.MILLISECONDS.toNanos(millis);
+            List<ManualTimeout> expired = new ArrayList<>();
+            this.timeouts.removeIf(t -> t.cancelled || t.deadline <= this.now && expired.add(t));
+            for (ManualTimeout t : expired) {
+                t.expired = true;
+                t.task.run(t);
+            }
+            if (channel != null) channel.runPendingTasks();
+        }
+
+        @Override
+        public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+            ManualTimeout t = new ManualTimeout(this, task, this.now + unit.toNanos(delay));
+            this.timeouts.add(t);
+            return t;
+        }
+
+        @Override
+        public Set<Timeout> stop() {
+            return Collections.emptySet();
+        }
+    }
+
+    private static class ManualTimeout implements Timeout {
+
+        private final ManualTimer timer;
+        private final TimerTask task;
+        private final long deadline;
+        private boolean expired;
+        private boolean cancelled;
+
+        ManualTimeout(ManualTimer timer, TimerTask task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public Timer timer() {
+            return this.timer;
+        }
+
+        @Override
+        public TimerTask task() {
+            return this.task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return this.expired;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.cancelled;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (this.expired || this.cancelled) return false;
+            this.cancelled = true;
+            this.timer.timeouts.remove(this);
+            return true;
+        }
+    }
+}
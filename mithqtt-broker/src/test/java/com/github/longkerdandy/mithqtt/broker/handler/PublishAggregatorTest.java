@@ -0,0 +1,101 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.*;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streamed PUBLISH Aggregator Test
+ */
+public class PublishAggregatorTest {
+
+    private static MqttPublishMessage publish(int payloadLength) {
+        return new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                MqttPublishVariableHeader.from("a/b", 1),
+                Unpooled.wrappedBuffer(new byte[payloadLength]));
+    }
+
+    @Test
+    public void aggregateTest() {
+        EmbeddedChannel channel = new EmbeddedChannel(new MqttDecoder(100, 64), new PublishAggregator(10000, new Semaphore(10000)));
+
+        // streamed
+        EmbeddedChannel encoder = new EmbeddedChannel(MqttEncoder.INSTANCE);
+        encoder.writeOutbound(publish(5000));
+        ByteBuf buf = encoder.readOutbound();
+        channel.writeInbound(buf);
+        MqttPublishMessage m = channel.readInbound();
+        assert !(m instanceof MqttStreamedPublishMessage);
+        assert m.variableHeader().topicName().equals("a/b");
+        assert m.payload().readableBytes() == 5000;
+        // payload array is shared with the Message without another copy
+        assert m.payload().hasArray() && m.payload().array().length == 5000;
+        assert Message.fromMqttMessage(m, MqttVersion.MQTT_3_1_1, "client1", "user1", "broker1").payload().bytes() == m.payload().array();
+        m.release();
+
+        // not streamed
+        encoder.writeOutbound(publish(50));
+        channel.writeInbound((Object) encoder.readOutbound());
+        m = channel.readInbound();
+        assert m.payload().readableBytes() == 50;
+        m.release();
+        assert channel.readInbound() == null;
+    }
+
+    @Test
+    public void budgetTest() {
+        Semaphore total = new Semaphore(10000);
+        EmbeddedChannel channel = new EmbeddedChannel(new MqttDecoder(100, 64), new PublishAggregator(1000, total));
+        EmbeddedChannel encoder = new EmbeddedChannel(MqttEncoder.INSTANCE);
+        encoder.writeOutbound(publish(5000));
+        channel.writeInbound((Object) encoder.readOutbound());
+        assert channel.readInbound() == null;
+        assert !channel.isOpen();
+        assert total.availablePermits() == 10000;
+    }
+
+    @Test
+    public void totalBudgetTest() {
+        Semaphore total = new Semaphore(8000);
+        EmbeddedChannel channel1 = new EmbeddedChannel(new MqttDecoder(100, 64), new PublishAggregator(10000, total));
+        EmbeddedChannel channel2 = new EmbeddedChannel(new MqttDecoder(100, 64), new PublishAggregator(10000, total));
+        EmbeddedChannel encoder = new EmbeddedChannel(MqttEncoder.INSTANCE);
+
+        // first part of a streamed PUBLISH reserves the whole payload from the broker wide budget
+        encoder.writeOutbound(publish(5000));
+        ByteBuf buf = encoder.readOutbound();
+        channel1.writeInbound(buf.readRetainedSlice(1000));
+        assert channel1.readInbound() == null;
+        assert total.availablePermits() == 3000;
+
+        // not enough budget left for another connection
+        encoder.writeOutbound(publish(5000));
+        ByteBuf buf2 = encoder.readOutbound();
+        channel2.writeInbound(buf2);
+        assert channel2.readInbound() == null;
+        assert !channel2.isOpen();
+        assert total.availablePermits() == 3000;
+
+        // budget is given back once completed
+        channel1.writeInbound(buf);
+        MqttPublishMessage m = channel1.readInbound();
+        assert m.payload().readableBytes() == 5000;
+        m.release();
+        assert total.availablePermits() == 8000;
+
+        // and when the connection closed in the middle of a streamed PUBLISH
+        encoder.writeOutbound(publish(5000));
+        buf = encoder.readOutbound();
+        channel1.writeInbound(buf.readRetainedSlice(1000));
+        assert total.availablePermits() == 3000;
+        channel1.close();
+        buf.release();
+        assert total.availablePermits() == 8000;
+    }
+}
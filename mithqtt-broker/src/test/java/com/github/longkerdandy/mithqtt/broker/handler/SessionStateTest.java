@@ -0,0 +1,29 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import io.netty.handler.codec.mqtt.MqttPublishMessage;
+import io.netty.handler.codec.mqtt.MqttQoS;
+import org.junit.Test;
+
+/**
+ * Session State Test
+ */
+public class SessionStateTest {
+
+    @Test
+    public void willTest() {
+        SessionState session = new SessionState(60);
+        assert session.keepAlive == 60;
+        assert session.willMessage() == null;
+
+        session.setWill("a/b", MqttQoS.AT_LEAST_ONCE, true, new byte[]{1, 2, 3});
+        MqttPublishMessage will = session.willMessage();
+        assert will.variableHeader().topicName().equals("a/b");
+        assert will.fixedHeader().qos() == MqttQoS.AT_LEAST_ONCE;
+        assert will.fixedHeader().retain();
+        assert will.payload().readableBytes() == 3;
+        will.release();
+
+        session.clearWill();
+        assert session.willMessage() == null;
+    }
+}
@@ -0,0 +1,192 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import com.github.longkerdandy.mithqtt.api.auth.Authenticator;
+import com.github.longkerdandy.mithqtt.api.auth.AuthorizeResult;
+import com.github.longkerdandy.mithqtt.api.cluster.Cluster;
+import com.github.longkerdandy.mithqtt.api.storage.sync.ConnectionState;
+import com.github.longkerdandy.mithqtt.api.storage.sync.SyncStorage;
+import com.github.longkerdandy.mithqtt.broker.session.SessionRegistry;
+import com.github.longkerdandy.mithqtt.broker.util.Validator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.mqtt.*;
+import org.apache.commons.configuration.MapConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Sync Storage Handler Test
+ */
+public class SyncStorageHandlerTest {
+
+    private SyncStorage storage;
+    private SessionRegistry registry;
+    private SyncStorageHandler handler;
+
+    @Before
+    public void init() {
+        Authenticator authenticator = mock(Authenticator.class);
+        when(authenticator.authConnect(anyString(), anyString(), anyString())).thenReturn(AuthorizeResult.OK);
+        when(authenticator.authPublish(anyString(), anyString(), anyString(), anyInt(), anyBoolean())).thenReturn(AuthorizeResult.OK);
+        this.storage = mock(SyncStorage.class);
+        when(this.storage.lock(anyString(), any(ConnectionState.class))).thenReturn(true);
+        when(this.storage.getSessionExist(anyString())).thenReturn(-1);
+        this.registry = new SessionRegistry();
+        this.handler = new SyncStorageHandler(authenticator, null, mock(Cluster.class), this.storage, this.registry,
+                new Validator(new MapConfiguration(new HashMap<>())), null, null, "broker1", 60, 65535, 0);
+    }
+
+    private static MqttConnectMessage connect(String clientId) {
+        return new MqttConnectMessage(
+                new MqttFixedHeader(MqttMessageType.CONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttConnectVariableHeader("MQTT", 4, true, true, false, MqttQoS.AT_MOST_ONCE, false, true, 30),
+                new MqttConnectPayload(clientId, null, null, "user1", "password1"));
+    }
+
+    private static MqttPublishMessage publish(String topicName) {
+        return new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                MqttPublishVariableHeader.from(topicName),
+                Unpooled.wrappedBuffer(new byte[]{1, 2, 3}));
+    }
+
+    private static MqttPublishMessage publish(String topicName, int packetId) {
+        return new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                MqttPublishVariableHeader.from(topicName, packetId),
+                Unpooled.wrappedBuffer(new byte[]{1, 2, 3}));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void subscribed(String clientId, MqttQoS qos) {
+        doAnswer(invocation -> {
+            ((Map<String, MqttQoS>) invocation.getArguments()[2]).put(clientId, qos);
+            return null;
+        }).when(this.storage).getMatchSubscriptions(any(List.class), anyString(), any(Map.class));
+        when(this.storage.getNextPacketId(clientId)).thenReturn(1);
+    }
+
+    @Test
+    public void storedTest() {
+        EmbeddedChannel publisher = new EmbeddedChannel(this.handler);
+        EmbeddedChannel subscriber = new EmbeddedChannel(this.handler);
+        publisher.writeInbound(connect("p"));
+        subscriber.writeInbound(connect("s"));
+        publisher.readOutbound();
+        subscriber.readOutbound();
+        subscribed("s", MqttQoS.AT_LEAST_ONCE);
+
+        // PUBACK is sent only after the in-flight message of the local subscriber has been stored
+        CompletableFuture<Void> stored = new CompletableFuture<>();
+        when(this.storage.addInFlightMessageAsync(eq("s"), eq(1), any(), eq(true))).thenReturn(stored);
+        publisher.writeInbound(publish("a/b", 10));
+        assert ((MqttMessage) subscriber.readOutbound()).fixedHeader().messageType() == MqttMessageType.PUBLISH;
+        publisher.runPendingTasks();
+        assert publisher.readOutbound() == null;
+        stored.complete(null);
+        publisher.runPendingTasks();
+        MqttMessage pubAck = publisher.readOutbound();
+        assert pubAck.fixedHeader().messageType() == MqttMessageType.PUBACK;
+        assert ((MqttPacketIdVariableHeader) pubAck.variableHeader()).packetId() == 10;
+
+        // failed to store, the publisher is disconnected without PUBACK
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        when(this.storage.addInFlightMessageAsync(eq("s"), eq(1), any(), eq(true))).thenReturn(failed);
+        publisher.writeInbound(publish("a/b", 11));
+        failed.completeExceptionally(new IllegalStateException("test"));
+        publisher.runPendingTasks();
+        assert publisher.readOutbound() == null;
+        assert !publisher.isOpen();
+
+        subscriber.finishAndReleaseAll();
+    }
+
+    @Test
+    public void autoReadTest() {
+        EmbeddedChannel publisher = new EmbeddedChannel(this.handler);
+        EmbeddedChannel subscriber = new EmbeddedChannel(this.handler);
+        publisher.writeInbound(connect("p"));
+        subscriber.writeInbound(connect("s"));
+        publisher.readOutbound();
+        subscriber.readOutbound();
+        subscribed("s", MqttQoS.AT_LEAST_ONCE);
+
+        // reading is paused while forwarding is pending, PUBLISH messages already read are chained
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        when(this.storage.addInFlightMessageAsync(eq("s"), eq(1), any(), eq(true))).thenReturn(first, second);
+        publisher.writeInbound(publish("a/b", 10));
+        assert !publisher.config().isAutoRead();
+        publisher.writeInbound(publish("a/b", 11));
+        first.complete(null);
+        publisher.runPendingTasks();
+        assert ((MqttPacketIdVariableHeader) ((MqttMessage) publisher.readOutbound()).variableHeader()).packetId() == 10;
+        assert !publisher.config().isAutoRead();
+
+        // reading is resumed once the last one has been acknowledged
+        second.complete(null);
+        publisher.runPendingTasks();
+        assert ((MqttPacketIdVariableHeader) ((MqttMessage) publisher.readOutbound()).variableHeader()).packetId() == 11;
+        assert publisher.config().isAutoRead();
+        assert publisher.attr(SyncStorageHandler.SESSION).get().forwarding == null;
+
+        publisher.finishAndReleaseAll();
+        subscriber.finishAndReleaseAll();
+    }
+
+    @Test
+    public void sharedTest() {
+        EmbeddedChannel a = new EmbeddedChannel(this.handler);
+        EmbeddedChannel b = new EmbeddedChannel(this.handler);
+
+        // client a connected
+        a.writeInbound(connect("a"));
+        MqttMessage connAck = a.readOutbound();
+        assert connAck.fixedHeader().messageType() == MqttMessageType.CONNACK;
+        assert ((MqttConnAckVariableHeader) connAck.variableHeader()).returnCode() == MqttConnectReturnCode.CONNECTION_ACCEPTED;
+        assert a.attr(SyncStorageHandler.SESSION).get().clientId.equals("a");
+        assert a.attr(SyncStorageHandler.SESSION).get().connected;
+
+        // client b is not connected, although sharing the same handler with a
+        assert !b.hasAttr(SyncStorageHandler.SESSION);
+        b.writeInbound(publish("a/b"));
+        assert !b.isOpen();
+        assert a.isOpen();
+        assert this.registry.getSession("a") != null;
+
+        // client c connected, then client a sends second CONNECT
+        EmbeddedChannel c = new EmbeddedChannel(this.handler);
+        c.writeInbound(connect("c"));
+        assert ((MqttConnAckVariableHeader) ((MqttMessage) c.readOutbound()).variableHeader()).returnCode() == MqttConnectReturnCode.CONNECTION_ACCEPTED;
+        assert c.attr(SyncStorageHandler.SESSION).get().clientId.equals("c");
+        assert c.attr(SyncStorageHandler.SESSION).get().keepAlive == 30;
+        a.writeInbound(connect("a"));
+        assert !a.isOpen();
+        assert c.isOpen();
+        assert a.attr(SyncStorageHandler.SESSION).get().clientId.equals("a");
+        verify(this.storage).updateConnectedNode(eq("a"), eq("broker1"), anyInt());
+        verify(this.storage).updateConnectedNode(eq("c"), eq("broker1"), anyInt());
+
+        c.finishAndReleaseAll();
+    }
+
+    @Test
+    public void noSessionTest() {
+        // connection closed or failed before any message, session state is not created
+        EmbeddedChannel channel = new EmbeddedChannel(this.handler);
+        channel.pipeline().fireExceptionCaught(new IllegalStateException("test"));
+        assert !channel.isOpen();
+        assert !channel.hasAttr(SyncStorageHandler.SESSION);
+        verifyZeroInteractions(this.storage);
+    }
+}
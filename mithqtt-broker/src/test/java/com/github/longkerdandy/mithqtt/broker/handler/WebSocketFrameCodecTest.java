@@ -0,0 +1,55 @@
+package com.github.longkerdandy.mithqtt.broker.handler;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.mqtt.*;
+import org.junit.Test;
+
+/**
+ * MQTT over WebSocket Frame Codec Test
+ */
+public class WebSocketFrameCodecTest {
+
+    private static ByteBuf encode(MqttMessage msg) {
+        EmbeddedChannel channel = new EmbeddedChannel(MqttEncoder.INSTANCE);
+        channel.writeOutbound(msg);
+        return channel.readOutbound();
+    }
+
+    @Test
+    public void decodeTest() {
+        EmbeddedChannel channel = new EmbeddedChannel(WebSocketFrameCodec.INSTANCE, new MqttDecoder());
+        ByteBuf buf = encode(new MqttMessage(new MqttFixedHeader(MqttMessageType.PINGREQ, false, MqttQoS.AT_MOST_ONCE, false, 0)));
+        ByteBuf publish = encode(new MqttPublishMessage(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                MqttPublishVariableHeader.from("a/b"),
+                Unpooled.wrappedBuffer(new byte[]{1, 2, 3})));
+
+        // one frame with a packet and half of another packet, then a continuation frame
+        channel.writeInbound(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(buf, publish.readRetainedSlice(4))));
+        channel.writeInbound(new ContinuationWebSocketFrame(publish));
+        MqttMessage m = channel.readInbound();
+        assert m.fixedHeader().messageType() == MqttMessageType.PINGREQ;
+        MqttPublishMessage p = channel.readInbound();
+        assert p.variableHeader().topicName().equals("a/b");
+        assert p.payload().readableBytes() == 3;
+        p.release();
+
+        // text frame is not allowed
+        channel.writeInbound(new TextWebSocketFrame("hello"));
+        assert !channel.isOpen();
+    }
+
+    @Test
+    public void encodeTest() {
+        EmbeddedChannel channel = new EmbeddedChannel(WebSocketFrameCodec.INSTANCE, MqttEncoder.INSTANCE);
+        channel.writeOutbound(new MqttMessage(new MqttFixedHeader(MqttMessageType.PINGRESP, false, MqttQoS.AT_MOST_ONCE, false, 0)));
+        BinaryWebSocketFrame frame = channel.readOutbound();
+        assert frame.content().readableBytes() == 2;
+        frame.release();
+    }
+}
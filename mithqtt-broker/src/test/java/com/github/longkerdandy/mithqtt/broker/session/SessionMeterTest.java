@@ -0,0 +1,30 @@
+package com.github.longkerdandy.mithqtt.broker.session;
+
+import io.netty.channel.ChannelHandlerContext;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Session Meter Test
+ */
+public class SessionMeterTest {
+
+    @Test
+    public void reportTest() {
+        SessionRegistry registry = new SessionRegistry();
+        SessionMeter meter = new SessionMeter(registry);
+
+        // no connection
+        assert meter.report() == 0;
+
+        // memory growth since the meter created is shared by connections
+        registry.saveSession("client1", mock(ChannelHandlerContext.class));
+        registry.saveSession("client2", mock(ChannelHandlerContext.class));
+        assert meter.report() >= 0;
+
+        registry.removeSession("client1");
+        registry.removeSession("client2");
+        assert meter.report() == 0;
+    }
+}
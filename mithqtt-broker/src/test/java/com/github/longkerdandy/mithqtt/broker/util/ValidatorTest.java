@@ -28,6 +28,7 @@ public class ValidatorTest {
         assert validator.isClientIdValid("client_id");
         assert validator.isClientIdValid("Client Id");
         assert !validator.isClientIdValid("\u041e client id");
+        assert !validator.isClientIdValid("$share/group/client");
     }
 
     @Test
@@ -44,4 +45,15 @@ public class ValidatorTest {
         assert validator.isTopicFilterValid("foo/+/woo");
         assert validator.isTopicFilterValid("foo/+/woo/#");
     }
+
+    @Test
+    public void isShareValidTest() {
+        assert validator.isShareValid("foo/bar");
+        assert validator.isShareValid("$share/group/foo/#");
+        assert validator.isShareValid("$share/group/foo");
+        assert !validator.isShareValid("$share/group");
+        assert !validator.isShareValid("$share/group/");
+        assert !validator.isShareValid("$share//foo");
+        assert !validator.isShareValid("$share/+/foo");
+    }
 }
@@ -0,0 +1,101 @@
+package com.github.longkerdandy.mithqtt.cluster.local;
+
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process Message Bus
+ * Delivers messages to subscriptions in the same JVM, with NATS-like topic and queue group semantics
+ */
+public class LocalBus {
+
+    // Named buses in this JVM
+    private static final ConcurrentMap<String, LocalBus> buses = new ConcurrentHashMap<>();
+
+    // Active subscriptions
+    private final List<LocalSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    // Round robin counter for queue groups
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Get the bus by name, create a new one if not exist
+     *
+     * @param name Bus Name
+     * @return Local Bus
+     */
+    public static LocalBus get(String name) {
+        return buses.computeIfAbsent(name, n -> new LocalBus());
+    }
+
+    /**
+     * Add the subscription to the bus
+     *
+     * @param subscription Local Subscription
+     */
+    public void subscribe(LocalSubscription subscription) {
+        this.subscriptions.add(subscription);
+    }
+
+    /**
+     * Remove the subscription from the bus
+     *
+     * @param subscription Local Subscription
+     */
+    public void unsubscribe(LocalSubscription subscription) {
+        this.subscriptions.remove(subscription);
+    }
+
+    /**
+     * Publish message to the topic
+     * Every subscription matching the topic receives the message, except subscriptions in the same queue group
+     * share the message, only one of them receives it
+     *
+     * @param topic   Topic
+     * @param message Message
+     */
+    public void publish(String topic, Message message) {
+        Map<String, List<LocalSubscription>> groups = null;
+        for (LocalSubscription subscription : this.subscriptions) {
+            if (!match(subscription.topic(), topic)) continue;
+            if (StringUtils.isBlank(subscription.group())) {
+                subscription.offer(message);
+            } else {
+                if (groups == null) groups = new HashMap<>();
+                groups.computeIfAbsent(subscription.group(), g -> new ArrayList<>()).add(subscription);
+            }
+        }
+        if (groups != null) {
+            for (List<LocalSubscription> members : groups.values()) {
+                members.get(Math.floorMod(this.counter.getAndIncrement(), members.size())).offer(message);
+            }
+        }
+    }
+
+    /**
+     * Is topic matching the subscription topic
+     * Subscription topic supports NATS wildcards, '*' matches a single token, '>' matches all remaining tokens
+     *
+     * @param subscription Subscription Topic
+     * @param topic        Topic
+     * @return True if matches
+     */
+    static boolean match(String subscription, String topic) {
+        String[] s = StringUtils.split(subscription, '.');
+        String[] t = StringUtils.split(topic, '.');
+        for (int i = 0; i < s.length; i++) {
+            if (s[i].equals(">")) return i < t.length;
+            if (i >= t.length) return false;
+            if (!s[i].equals("*") && !s[i].equals(t[i])) return false;
+        }
+        return s.length == t.length;
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.longkerdandy.mithqtt.cluster.local;
+
+import com.github.longkerdandy.mithqtt.api.cluster.ApplicationRouter;
+import com.github.longkerdandy.mithqtt.api.cluster.Cluster;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterException;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListenerFactory;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-process Cluster
+ * Brokers and applications in the same JVM exchange messages through a shared LocalBus, without any network hop
+ * Uses the same topic configurations as NATSClusterImpl, mainly for multi-broker tests and benchmarks
+ */
+public class LocalClusterImpl implements Cluster {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalClusterImpl.class);
+
+    // topics
+    private String BROKER_TOPIC_PREFIX;
+    private String APPLICATION_TOPIC;
+
+    // forwarding rules and partitions of application topic
+    private ApplicationRouter router;
+
+    // shared bus and subscriptions of this node
+    private LocalBus bus;
+    private final List<LocalSubscription> subscriptions = new ArrayList<>();
+
+    @Override
+    public void init(AbstractConfiguration config, ClusterListenerFactory factory) throws ClusterException {
+        logger.trace("Loading cluster configurations ...");
+
+        // Topics for broker and application
+        String listenerTopic = config.getString("listener.topic");
+        String listenerQueueGroup = config.getString("listener.queue.group");
+        BROKER_TOPIC_PREFIX = config.getString("broker.topic.prefix");
+        APPLICATION_TOPIC = config.getString("application.topic");
+        this.router = new ApplicationRouter(config);
+
+        // Nodes sharing the same bus name form a cluster
+        this.bus = LocalBus.get(config.getString("local.bus", "default"));
+
+        if (StringUtils.isNotBlank(listenerTopic) && factory != null) {
+            List<String> topics = ApplicationRouter.partitionTopics(listenerTopic, config.getStringArray("listener.partitions"));
+            // broker also listens to the broadcast topic {broker.topic.prefix}
+            if (listenerTopic.startsWith(BROKER_TOPIC_PREFIX + ".")) topics.add(BROKER_TOPIC_PREFIX);
+            for (String topic : topics) {
+                logger.trace("Subscribe to topic {} ...", topic);
+                LocalSubscription subscription = new LocalSubscription(topic, listenerQueueGroup, factory.newListener());
+                subscription.start();
+                this.bus.subscribe(subscription);
+                this.subscriptions.add(subscription);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        logger.trace("Closing local subscriptions ...");
+
+        for (LocalSubscription subscription : this.subscriptions) {
+            this.bus.unsubscribe(subscription);
+            subscription.close();
+        }
+        this.subscriptions.clear();
+    }
+
+    @Override
+    public void sendToBroker(String brokerId, Message message) {
+        this.bus.publish(BROKER_TOPIC_PREFIX + "." + brokerId, message);
+    }
+
+    @Override
+    public void sendToBrokers(Message message) {
+        this.bus.publish(BROKER_TOPIC_PREFIX, message);
+    }
+
+    @Override
+    public void sendToApplication(Message message) {
+        if (!this.router.accept(message)) return;
+        this.bus.publish(this.router.partition(APPLICATION_TOPIC, message), message);
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.longkerdandy.mithqtt.cluster.local;
+
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListener;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListeners;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process Subscription
+ * Messages are queued in a lock-free queue, and handled in order by a dedicated thread
+ */
+public class LocalSubscription implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalSubscription.class);
+
+    private final String topic;
+    private final String group;
+    private final ClusterListener listener;
+
+    // pending messages
+    private final Queue<Message> queue = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public LocalSubscription(String topic, String group, ClusterListener listener) {
+        this.topic = topic;
+        this.group = group;
+        this.listener = listener;
+        this.thread = new Thread(this, "mithqtt-local-" + topic);
+        this.thread.setDaemon(true);
+    }
+
+    public String topic() {
+        return this.topic;
+    }
+
+    public String group() {
+        return this.group;
+    }
+
+    /**
+     * Start handling messages
+     */
+    public void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Stop handling messages, pending messages are discarded
+     */
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * Queue the message and wake up the handling thread
+     *
+     * @param message Message
+     */
+    public void offer(Message message) {
+        this.queue.offer(message);
+        LockSupport.unpark(this.thread);
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            Message m = this.queue.poll();
+            if (m == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                ClusterListeners.dispatch(this.listener, m);
+            } catch (Exception e) {
+                logger.warn("Cluster Error: Error when handling the message", e);
+            }
+        }
+    }
+}
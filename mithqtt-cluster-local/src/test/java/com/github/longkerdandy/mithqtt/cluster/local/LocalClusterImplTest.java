@@ -0,0 +1,114 @@
+package com.github.longkerdandy.mithqtt.cluster.local;
+
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterException;
+import com.github.longkerdandy.mithqtt.api.cluster.RecordingListener;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.api.message.MqttAdditionalHeader;
+import com.github.longkerdandy.mithqtt.api.message.MqttPublishPayload;
+import io.netty.handler.codec.mqtt.*;
+import org.apache.commons.configuration.MapConfiguration;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process Cluster Test
+ */
+public class LocalClusterImplTest {
+
+    private static LocalClusterImpl newNode(String bus, String listenerTopic, Map<String, Object> extra, List<Message> received) throws ClusterException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("local.bus", bus);
+        map.put("listener.topic", listenerTopic);
+        map.put("broker.topic.prefix", "mithqtt.broker");
+        map.put("application.topic", "mithqtt.application");
+        map.putAll(extra);
+        LocalClusterImpl cluster = new LocalClusterImpl();
+        cluster.init(new MapConfiguration(map), () -> new RecordingListener(received));
+        return cluster;
+    }
+
+    private static Message publish(String clientId, String topicName) {
+        return new Message<>(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, clientId, "user1", "broker1"),
+                MqttPublishVariableHeader.from(topicName),
+                new MqttPublishPayload(new byte[]{1}));
+    }
+
+    @Test
+    public void sendToBrokerTest() throws Exception {
+        List<Message> r1 = new CopyOnWriteArrayList<>();
+        List<Message> r2 = new CopyOnWriteArrayList<>();
+        LocalClusterImpl b1 = newNode("sendToBrokerTest", "mithqtt.broker.1", new HashMap<>(), r1);
+        LocalClusterImpl b2 = newNode("sendToBrokerTest", "mithqtt.broker.2", new HashMap<>(), r2);
+
+        for (int i = 0; i < 100; i++) {
+            b1.sendToBroker("2", publish("client1", "a/" + i));
+        }
+        RecordingListener.await(r2, 100);
+        assert r1.isEmpty();
+        assert r2.size() == 100;
+        for (int i = 0; i < 100; i++) {
+            assert ((MqttPublishVariableHeader) r2.get(i).variableHeader()).topicName().equals("a/" + i);
+        }
+
+        b1.destroy();
+        b2.destroy();
+    }
+
+    @Test
+    public void sendToApplicationTest() throws Exception {
+        Map<String, Object> partitions = new HashMap<>();
+        partitions.put("application.partitions", 2);
+        Map<String, Object> p0 = new HashMap<>(partitions);
+        p0.put("listener.partitions", "0");
+        Map<String, Object> p1 = new HashMap<>(partitions);
+        p1.put("listener.partitions", "1");
+        Map<String, Object> group = new HashMap<>(partitions);
+        group.put("listener.queue.group", "g");
+
+        List<Message> r0 = new CopyOnWriteArrayList<>();
+        List<Message> r1 = new CopyOnWriteArrayList<>();
+        List<Message> all = new CopyOnWriteArrayList<>();
+        List<Message> g = new CopyOnWriteArrayList<>();
+        LocalClusterImpl broker = newNode("sendToApplicationTest", "mithqtt.broker.1", partitions, new CopyOnWriteArrayList<>());
+        LocalClusterImpl a0 = newNode("sendToApplicationTest", "mithqtt.application", p0, r0);
+        LocalClusterImpl a1 = newNode("sendToApplicationTest", "mithqtt.application", p1, r1);
+        LocalClusterImpl a2 = newNode("sendToApplicationTest", "mithqtt.application.*", new HashMap<>(), all);
+        LocalClusterImpl g1 = newNode("sendToApplicationTest", "mithqtt.application.>", group, g);
+        LocalClusterImpl g2 = newNode("sendToApplicationTest", "mithqtt.application.>", group, g);
+
+        for (int i = 0; i < 100; i++) {
+            broker.sendToApplication(publish("client" + i, "a/b"));
+        }
+        RecordingListener.await(all, 100);
+        RecordingListener.await(g, 100);
+        Thread.sleep(100);
+        assert all.size() == 100;
+        assert g.size() == 100;
+        assert r0.size() + r1.size() == 100;
+        assert !r0.isEmpty() && !r1.isEmpty();
+
+        broker.destroy();
+        a0.destroy();
+        a1.destroy();
+        a2.destroy();
+        g1.destroy();
+        g2.destroy();
+    }
+
+    @Test
+    public void matchTest() {
+        assert LocalBus.match("a.b", "a.b");
+        assert !LocalBus.match("a.b", "a.b.c");
+        assert LocalBus.match("a.*", "a.b");
+        assert !LocalBus.match("a.*", "a");
+        assert !LocalBus.match("a.*", "a.b.c");
+        assert LocalBus.match("a.>", "a.b.c");
+        assert !LocalBus.match("a.>", "a");
+    }
+}
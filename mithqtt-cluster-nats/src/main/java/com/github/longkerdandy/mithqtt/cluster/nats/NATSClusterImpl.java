@@ -1,19 +1,28 @@
 package com.github.longkerdandy.mithqtt.cluster.nats;
 
+import com.github.longkerdandy.mithqtt.api.cluster.ApplicationRouter;
 import com.github.longkerdandy.mithqtt.api.cluster.Cluster;
 import com.github.longkerdandy.mithqtt.api.cluster.ClusterException;
 import com.github.longkerdandy.mithqtt.api.cluster.ClusterListener;
 import com.github.longkerdandy.mithqtt.api.cluster.ClusterListenerFactory;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListeners;
 import com.github.longkerdandy.mithqtt.api.message.Message;
 import com.github.longkerdandy.mithqtt.util.JSONs;
 import io.nats.client.Connection;
 import io.nats.client.ConnectionFactory;
+import io.nats.client.MessageHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.apache.commons.configuration.AbstractConfiguration;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import static io.nats.client.ConnectionFactory.*;
@@ -27,21 +36,31 @@ public class NATSClusterImpl implements Cluster {
 
     // topics
     private String LISTENER_TOPIC;
+    private String LISTENER_QUEUE_GROUP;
+    private List<String> LISTENER_TOPICS;
     private String BROKER_TOPIC_PREFIX;
     private String APPLICATION_TOPIC;
 
+    // forwarding rules and partitions of application topic
+    private ApplicationRouter router;
+
     // active connection to NATS Server
     private Connection conn;
 
-    @SuppressWarnings("unchecked")
+    // dispatch workers, each worker handles messages in order with its own listener
+    private ThreadPoolExecutor[] workers;
+
     @Override
     public void init(AbstractConfiguration config, ClusterListenerFactory factory) throws ClusterException {
         logger.trace("Loading cluster configurations ...");
 
         // Topics for broker and application
         LISTENER_TOPIC = config.getString("listener.topic");
+        LISTENER_QUEUE_GROUP = config.getString("listener.queue.group");
+        LISTENER_TOPICS = ApplicationRouter.partitionTopics(LISTENER_TOPIC, config.getStringArray("listener.partitions"));
         BROKER_TOPIC_PREFIX = config.getString("broker.topic.prefix");
         APPLICATION_TOPIC = config.getString("application.topic");
+        this.router = new ApplicationRouter(config);
 
         // Setup options to include all servers in the cluster
         ConnectionFactory cf = new ConnectionFactory();
@@ -70,45 +89,101 @@ public class NATSClusterImpl implements Cluster {
         }
 
         if (StringUtils.isNotBlank(LISTENER_TOPIC) && factory != null) {
-            logger.trace("Subscribe to topic {} ...", LISTENER_TOPIC);
+            MessageHandler handler = dispatcher(factory, config.getInt("nats.dispatch.threads", 0), config.getInt("nats.dispatch.queueSize", 10000));
+
+            // broker also listens to the broadcast topic {broker.topic.prefix}
+            if (LISTENER_TOPIC.startsWith(BROKER_TOPIC_PREFIX + ".")) {
+                logger.trace("Subscribe to topic {} ...", BROKER_TOPIC_PREFIX);
+                this.conn.subscribeAsync(BROKER_TOPIC_PREFIX, handler);
+            }
+            for (String topic : LISTENER_TOPICS) {
+                if (StringUtils.isNotBlank(LISTENER_QUEUE_GROUP)) {
+                    logger.trace("Subscribe to topic {} in queue group {} ...", topic, LISTENER_QUEUE_GROUP);
+                    this.conn.subscribeAsync(topic, LISTENER_QUEUE_GROUP, handler);
+                } else {
+                    logger.trace("Subscribe to topic {} ...", topic);
+                    this.conn.subscribeAsync(topic, handler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the handler of messages received from NATS
+     * If threads is 0, messages are handled on the NATS dispatcher thread
+     * Otherwise messages are dispatched to worker threads by client id, so messages of the same client are handled in order
+     * Messages without client id (interest gossip, QoS 0 PUBLISH forwarded per broker) are dispatched by sender broker id,
+     * so messages from the same sender broker are handled in order
+     * When the worker's queue is full, the NATS dispatcher thread blocks until there is room
+     *
+     * @param factory   Cluster Listener Factory
+     * @param threads   Number of worker threads
+     * @param queueSize Max pending messages per worker thread
+     * @return NATS Message Handler
+     */
+    MessageHandler dispatcher(ClusterListenerFactory factory, int threads, int queueSize) {
+        if (threads <= 0) {
+            ClusterListener listener = factory.newListener();
+            return msg -> onMessage(listener, msg);
+        }
 
-            this.conn.subscribeAsync(LISTENER_TOPIC, msg -> {
+        this.workers = new ThreadPoolExecutor[threads];
+        ClusterListener[] listeners = new ClusterListener[threads];
+        ThreadFactory threadFactory = new DefaultThreadFactory("nats-dispatch", true);
+        for (int i = 0; i < threads; i++) {
+            this.workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize), threadFactory, (r, executor) -> {
                 try {
-                    logger.trace("Received message from NATS topic {}", msg.getSubject());
-
-                    // event listener
-                    ClusterListener listener = factory.newListener();
-
-                    // decode message
-                    Message m = JSONs.decodeMessage(msg.getData());
-
-                    // handle message
-                    if (m != null) {
-                        logger.debug("Cluster received: Received {} message for client {}", m.fixedHeader().messageType(), m.additionalHeader().clientId());
-                        switch (m.fixedHeader().messageType()) {
-                            case CONNECT:
-                                listener.onConnect(m);
-                                break;
-                            case SUBSCRIBE:
-                                listener.onSubscribe(m);
-                                break;
-                            case UNSUBSCRIBE:
-                                listener.onUnsubscribe(m);
-                                break;
-                            case PUBLISH:
-                                listener.onPublish(m);
-                                break;
-                            case DISCONNECT:
-                                listener.onDisconnect(m);
-                                break;
-                            default:
-                                logger.warn("Cluster Error: Received message with unknown type {}", m.fixedHeader().messageType());
-                        }
-                    }
-                } catch (IOException e) {
-                    logger.warn("Cluster Error: Error when decoding or handling the message", e);
+                    if (!executor.isShutdown()) executor.getQueue().put(r);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
             });
+            listeners[i] = factory.newListener();
+        }
+
+        return msg -> {
+            String key;
+            try {
+                key = JSONs.peekClientId(msg.getData());
+                if (key == null) key = JSONs.peekBrokerId(msg.getData());
+            } catch (IOException e) {
+                logger.warn("Cluster Error: Error when decoding the message", e);
+                return;
+            }
+            int i = worker(key, threads);
+            this.workers[i].execute(() -> onMessage(listeners[i], msg));
+        };
+    }
+
+    /**
+     * Choose the worker thread for the message
+     * The same key always goes to the same worker, messages without any key are pinned to the first worker
+     *
+     * @param key     Client Id, or sender Broker Id if the message has no client id
+     * @param threads Number of worker threads
+     * @return Worker index
+     */
+    static int worker(String key, int threads) {
+        return key == null ? 0 : Math.floorMod(key.hashCode(), threads);
+    }
+
+    /**
+     * Handle message received from NATS
+     *
+     * @param listener Cluster Listener
+     * @param msg      NATS Message
+     */
+    private void onMessage(ClusterListener listener, io.nats.client.Message msg) {
+        try {
+            logger.trace("Received message from NATS topic {}", msg.getSubject());
+
+            // decode message
+            Message m = JSONs.decodeMessage(msg.getData());
+
+            // handle message
+            if (m != null) ClusterListeners.dispatch(listener, m);
+        } catch (IOException e) {
+            logger.warn("Cluster Error: Error when decoding or handling the message", e);
         }
     }
 
@@ -117,6 +192,9 @@ public class NATSClusterImpl implements Cluster {
         logger.trace("Closing connection with NATS servers ...");
 
         if (this.conn != null) this.conn.close();
+        if (this.workers != null) {
+            for (ThreadPoolExecutor worker : this.workers) worker.shutdown();
+        }
     }
 
     @Override
@@ -129,12 +207,25 @@ public class NATSClusterImpl implements Cluster {
         }
     }
 
+    @Override
+    public void sendToBrokers(Message message) {
+        try {
+            this.conn.publish(BROKER_TOPIC_PREFIX, JSONs.Mapper.writeValueAsBytes(message));
+        } catch (IOException e) {
+            logger.warn("Cluster Error: Failed to send message {} to topic {}: ", message.fixedHeader().messageType(), BROKER_TOPIC_PREFIX, e);
+        }
+    }
+
     @Override
     public void sendToApplication(Message message) {
+        // skip messages no application interested in, before serialization
+        if (!this.router.accept(message)) return;
+
+        String applicationTopic = this.router.partition(APPLICATION_TOPIC, message);
         try {
-            this.conn.publish(APPLICATION_TOPIC, JSONs.Mapper.writeValueAsBytes(message));
+            this.conn.publish(applicationTopic, JSONs.Mapper.writeValueAsBytes(message));
         } catch (IOException e) {
-            logger.warn("Cluster Error: Failed to send message {} to topic {}: ", message.fixedHeader().messageType(), APPLICATION_TOPIC, e);
+            logger.warn("Cluster Error: Failed to send message {} to topic {}: ", message.fixedHeader().messageType(), applicationTopic, e);
         }
     }
 }
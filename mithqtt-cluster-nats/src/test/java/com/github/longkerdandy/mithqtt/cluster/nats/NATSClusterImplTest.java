@@ -0,0 +1,73 @@
+package com.github.longkerdandy.mithqtt.cluster.nats;
+
+import com.github.longkerdandy.mithqtt.api.cluster.RecordingListener;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.api.message.MqttAdditionalHeader;
+import com.github.longkerdandy.mithqtt.api.message.MqttPublishPayload;
+import com.github.longkerdandy.mithqtt.util.JSONs;
+import io.nats.client.MessageHandler;
+import io.netty.handler.codec.mqtt.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * NATS Cluster dispatch Test
+ */
+public class NATSClusterImplTest {
+
+    private static io.nats.client.Message publish(String clientId, String brokerId, String topicName) throws Exception {
+        Message msg = new Message<>(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, clientId, null, brokerId),
+                MqttPublishVariableHeader.from(topicName),
+                new MqttPublishPayload(new byte[]{1}));
+        return new io.nats.client.Message("mithqtt.broker.1", null, JSONs.Mapper.writeValueAsBytes(msg));
+    }
+
+    private static List<String> topicsFrom(List<Message> received, String brokerId) {
+        List<String> topics = new ArrayList<>();
+        for (Message m : received) {
+            if (brokerId.equals(m.additionalHeader().brokerId())) {
+                topics.add(((MqttPublishVariableHeader) m.variableHeader()).topicName());
+            }
+        }
+        return topics;
+    }
+
+    @Test
+    public void workerTest() {
+        assert NATSClusterImpl.worker(null, 4) == 0;
+        assert NATSClusterImpl.worker("broker1", 4) == NATSClusterImpl.worker("broker1", 4);
+        for (int i = 0; i < 100; i++) {
+            int w = NATSClusterImpl.worker("client" + i, 4);
+            assert w >= 0 && w < 4;
+        }
+    }
+
+    @Test
+    public void senderOrderTest() throws Exception {
+        List<Message> received = new CopyOnWriteArrayList<>();
+        NATSClusterImpl cluster = new NATSClusterImpl();
+        MessageHandler handler = cluster.dispatcher(() -> new RecordingListener(received), 4, 16);
+
+        // messages without client id from two sender brokers, interleaved
+        for (int i = 0; i < 200; i++) {
+            handler.onMessage(publish(null, "broker" + (i % 2), "a/" + i));
+        }
+        RecordingListener.await(received, 200);
+        assert received.size() == 200;
+
+        List<String> expected0 = new ArrayList<>();
+        List<String> expected1 = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            (i % 2 == 0 ? expected0 : expected1).add("a/" + i);
+        }
+        assert topicsFrom(received, "broker0").equals(expected0);
+        assert topicsFrom(received, "broker1").equals(expected1);
+
+        cluster.destroy();
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.longkerdandy.mithqtt.cluster.netty;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Netty Cluster Configuration
+ */
+class NettyClusterConfig {
+
+    // listen address, port 0 means not listening
+    final String host;
+    final int port;
+    // Broker Id : Address (host:port) of peer brokers
+    final Map<String, String> members = new HashMap<>();
+    // coalescing window in microseconds, and max frames flushed together
+    final long flushInterval;
+    final int flushBatch;
+    // outbound buffer water marks in bytes
+    final int writeBufferLow;
+    final int writeBufferHigh;
+    // max frames queued while connecting
+    final int pendingSize;
+    // wait before reconnecting to a failed peer in milliseconds
+    final long reconnectWait;
+    // max frame size in bytes
+    final int maxFrameSize;
+    // number of event loop threads for outbound links
+    final int threads;
+
+    NettyClusterConfig(AbstractConfiguration config) {
+        this.host = config.getString("netty.cluster.host", "0.0.0.0");
+        this.port = config.getInt("netty.cluster.port", 0);
+        for (String member : config.getStringArray("netty.cluster.members")) {
+            if (StringUtils.isBlank(member)) continue;
+            String[] tokens = StringUtils.split(member.trim(), "=");
+            if (tokens.length != 2) throw new IllegalArgumentException("Illegal cluster member: " + member);
+            this.members.put(tokens[0].trim(), tokens[1].trim());
+        }
+        this.flushInterval = config.getLong("netty.cluster.flush.interval", 100);
+        this.flushBatch = config.getInt("netty.cluster.flush.batch", 64);
+        this.writeBufferLow = config.getInt("netty.cluster.writeBuffer.low", 1024 * 1024);
+        this.writeBufferHigh = config.getInt("netty.cluster.writeBuffer.high", 4 * 1024 * 1024);
+        this.pendingSize = config.getInt("netty.cluster.pending.size", 10000);
+        this.reconnectWait = config.getLong("netty.cluster.reconnectWait", 2000);
+        this.maxFrameSize = config.getInt("netty.cluster.maxFrameSize", 16 * 1024 * 1024);
+        this.threads = config.getInt("netty.cluster.threads", 0);
+    }
+}
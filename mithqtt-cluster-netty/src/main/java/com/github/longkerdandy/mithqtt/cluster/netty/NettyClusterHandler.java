@@ -0,0 +1,50 @@
+package com.github.longkerdandy.mithqtt.cluster.netty;
+
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListener;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListeners;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.util.JSONs;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Inbound handler of frames received from peer brokers
+ * Frames from the same peer are handled in order on the channel's event loop
+ */
+class NettyClusterHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyClusterHandler.class);
+
+    private final ClusterListener listener;
+
+    NettyClusterHandler(ClusterListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+        try {
+            byte[] data = new byte[frame.readableBytes()];
+            frame.readBytes(data);
+
+            // decode message
+            Message m = JSONs.decodeMessage(data);
+
+            // handle message
+            if (m != null) ClusterListeners.dispatch(this.listener, m);
+        } catch (IOException e) {
+            logger.warn("Cluster Error: Error when decoding or handling the message", e);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.debug("Exception caught: Exception caught from peer broker {}: ", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.longkerdandy.mithqtt.cluster.netty;
+
+import com.github.longkerdandy.mithqtt.api.cluster.Cluster;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterException;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListener;
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterListenerFactory;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.util.JSONs;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.mqtt.MqttMessageType;
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Netty based Cluster
+ * Brokers send messages to each other directly through persistent TCP links, without a message server in between
+ * Each frame is a 4 bytes length field followed by the JSON encoded Message
+ * Messages to application are passed to another Cluster implementation (like NATS), if configured
+ */
+public class NettyClusterImpl implements Cluster {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyClusterImpl.class);
+
+    private NettyClusterConfig config;
+
+    // server accepting links from peer brokers
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Channel serverChannel;
+
+    // outbound links to peer brokers (Broker Id : Link)
+    private EventLoopGroup linkGroup;
+    private final Map<String, NettyClusterLink> links = new ConcurrentHashMap<>();
+
+    // cluster for application, null means messages to application are dropped
+    private Cluster application;
+
+    @Override
+    public void init(AbstractConfiguration config, ClusterListenerFactory factory) throws ClusterException {
+        logger.trace("Loading cluster configurations ...");
+
+        this.config = new NettyClusterConfig(config);
+        this.linkGroup = new NioEventLoopGroup(this.config.threads);
+
+        // Accept links from peer brokers
+        if (this.config.port > 0 && factory != null) {
+            logger.trace("Listening to peer brokers at {}:{} ...", this.config.host, this.config.port);
+
+            ClusterListener listener = factory.newListener();
+            this.bossGroup = new NioEventLoopGroup(1);
+            this.workerGroup = new NioEventLoopGroup(this.config.threads);
+            try {
+                this.serverChannel = new ServerBootstrap()
+                        .group(this.bossGroup, this.workerGroup)
+                        .channel(NioServerSocketChannel.class)
+                        .childOption(ChannelOption.TCP_NODELAY, true)
+                        .childOption(ChannelOption.SO_KEEPALIVE, true)
+                        .childHandler(new ChannelInitializer<SocketChannel>() {
+                            @Override
+                            protected void initChannel(SocketChannel ch) throws Exception {
+                                ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(NettyClusterImpl.this.config.maxFrameSize, 0, 4, 0, 4));
+                                ch.pipeline().addLast(new NettyClusterHandler(listener));
+                            }
+                        })
+                        .bind(this.config.host, this.config.port).sync().channel();
+            } catch (Exception e) {
+                throw new ClusterException(e);
+            }
+        }
+
+        // Cluster for application
+        String applicationClass = config.getString("application.cluster.class");
+        if (StringUtils.isNotBlank(applicationClass)) {
+            logger.trace("Initializing application cluster {} ...", applicationClass);
+            try {
+                this.application = (Cluster) Class.forName(applicationClass).newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new ClusterException(e);
+            }
+            this.application.init(config, null);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        logger.trace("Closing links with peer brokers ...");
+
+        this.links.values().forEach(NettyClusterLink::close);
+        if (this.serverChannel != null) this.serverChannel.close();
+        if (this.linkGroup != null) this.linkGroup.shutdownGracefully();
+        if (this.workerGroup != null) this.workerGroup.shutdownGracefully();
+        if (this.bossGroup != null) this.bossGroup.shutdownGracefully();
+        if (this.application != null) this.application.destroy();
+    }
+
+    @Override
+    public void sendToBroker(String brokerId, Message message) {
+        NettyClusterLink link = this.links.computeIfAbsent(brokerId, id -> {
+            String address = this.config.members.get(id);
+            if (address == null) return null;
+            String[] tokens = StringUtils.split(address, ":");
+            return new NettyClusterLink(id, tokens[0], Integer.parseInt(tokens[1]), this.linkGroup.next(), this.config);
+        });
+        if (link == null) {
+            logger.warn("Cluster Error: Failed to send message {} to unknown broker {}", message.fixedHeader().messageType(), brokerId);
+            return;
+        }
+
+        try {
+            link.send(Unpooled.wrappedBuffer(JSONs.Mapper.writeValueAsBytes(message)), message.fixedHeader().messageType() != MqttMessageType.PUBLISH);
+        } catch (IOException e) {
+            logger.warn("Cluster Error: Failed to send message {} to broker {}: ", message.fixedHeader().messageType(), brokerId, e);
+        }
+    }
+
+    /**
+     * Number of messages dropped by the links to peer brokers
+     *
+     * @return Dropped messages
+     */
+    long dropped() {
+        return this.links.values().stream().mapToLong(NettyClusterLink::dropped).sum();
+    }
+
+    @Override
+    public Set<String> brokers() {
+        return this.config.members.keySet();
+    }
+
+    @Override
+    public void sendToApplication(Message message) {
+        if (this.application != null) this.application.sendToApplication(message);
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.longkerdandy.mithqtt.cluster.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.*;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldPrepender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent outbound link to a peer broker
+ * Frames are written as soon as they are sent, but flushed in batches: either when the batch size is reached,
+ * or when the coalescing window expires, whichever comes first
+ * Frames sent while not connected are queued and written once the link (re)connects
+ * PUBLISH frames are dropped when the queue is full or the link is not writable, control frames are never dropped
+ * All link states are only accessed in the link's event loop
+ */
+class NettyClusterLink {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyClusterLink.class);
+
+    private final String brokerId;
+    private final String host;
+    private final int port;
+    private final EventLoop loop;
+    private final NettyClusterConfig config;
+
+    // current channel, null if not connected
+    private Channel channel;
+    // connecting in progress
+    private boolean connecting;
+    // reconnect scheduled after the last failed attempt
+    private boolean reconnectScheduled;
+    // last connect attempt failed at
+    private long failedAt;
+    // link closed, no more frames accepted
+    private boolean closed;
+    // frames sent before the channel is connected
+    private final Queue<ByteBuf> pending = new ArrayDeque<>();
+    // frames written but not flushed
+    private int unflushed;
+    // flush scheduled for the coalescing window
+    private boolean flushScheduled;
+    // frames dropped since the link is created
+    private final LongAdder dropped = new LongAdder();
+    // counts frames failed to be written, e.g. the channel closed before flushing
+    private final ChannelFutureListener writeListener;
+
+    NettyClusterLink(String brokerId, String host, int port, EventLoop loop, NettyClusterConfig config) {
+        this.brokerId = brokerId;
+        this.host = host;
+        this.port = port;
+        this.loop = loop;
+        this.config = config;
+        this.writeListener = future -> {
+            if (!future.isSuccess()) {
+                this.dropped.increment();
+                logger.warn("Cluster Error: Failed to write message to broker {}, {} messages dropped in total: {}", brokerId, this.dropped.sum(), future.cause().getMessage());
+            }
+        };
+    }
+
+    /**
+     * Send frame to the peer broker
+     * PUBLISH frame will be dropped if the link is not writable (the peer is not consuming fast enough),
+     * or too many frames are queued while not connected
+     *
+     * @param frame   Frame
+     * @param control Is control frame (CONNECT, SUBSCRIBE, UNSUBSCRIBE, DISCONNECT), which is never dropped
+     */
+    void send(ByteBuf frame, boolean control) {
+        if (this.loop.inEventLoop()) {
+            write(frame, control);
+        } else {
+            this.loop.execute(() -> write(frame, control));
+        }
+    }
+
+    /**
+     * Number of frames dropped since the link is created
+     *
+     * @return Dropped frames
+     */
+    long dropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Close the link
+     */
+    void close() {
+        this.loop.execute(() -> {
+            this.closed = true;
+            if (this.channel != null) this.channel.close();
+            this.channel = null;
+            releasePending();
+        });
+    }
+
+    private void write(ByteBuf frame, boolean control) {
+        if (this.closed) {
+            drop(frame, "closed");
+            return;
+        }
+
+        if (this.channel == null) {
+            if (!control && this.pending.size() >= this.config.pendingSize) {
+                drop(frame, "not connected");
+                return;
+            }
+            this.pending.offer(frame);
+            connect();
+            return;
+        }
+
+        // back-pressure, the outbound buffer exceeded the high water mark
+        if (!control && !this.channel.isWritable()) {
+            drop(frame, "not writable");
+            return;
+        }
+
+        this.channel.write(frame).addListener(this.writeListener);
+        if (++this.unflushed >= this.config.flushBatch || this.config.flushInterval <= 0) {
+            flush();
+        } else if (!this.flushScheduled) {
+            this.flushScheduled = true;
+            this.loop.schedule(this::flush, this.config.flushInterval, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void drop(ByteBuf frame, String reason) {
+        frame.release();
+        this.dropped.increment();
+        logger.warn("Cluster Error: Link to broker {} is {}, message dropped, {} messages dropped in total", this.brokerId, reason, this.dropped.sum());
+    }
+
+    private void flush() {
+        this.flushScheduled = false;
+        if (this.unflushed > 0 && this.channel != null) {
+            this.unflushed = 0;
+            this.channel.flush();
+        }
+    }
+
+    private void connect() {
+        if (this.connecting || this.reconnectScheduled || this.closed) return;
+
+        // wait a while before reconnecting to a failed peer, queued frames are kept until then
+        long wait = this.failedAt + this.config.reconnectWait - System.currentTimeMillis();
+        if (wait > 0) {
+            this.reconnectScheduled = true;
+            this.loop.schedule(() -> {
+                this.reconnectScheduled = false;
+                if (this.channel == null && !this.pending.isEmpty()) connect();
+            }, wait, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        logger.trace("Connecting to broker {} at {}:{} ...", this.brokerId, this.host, this.port);
+        this.connecting = true;
+        new Bootstrap()
+                .group(this.loop)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(this.config.writeBufferLow, this.config.writeBufferHigh))
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) throws Exception {
+                        ch.pipeline().addLast(new LengthFieldPrepender(4));
+                    }
+                })
+                .connect(this.host, this.port)
+                .addListener((ChannelFutureListener) future -> {
+                    this.connecting = false;
+                    if (future.isSuccess()) {
+                        if (this.closed) {
+                            future.channel().close();
+                            return;
+                        }
+                        logger.debug("Connected to broker {} at {}:{}", this.brokerId, this.host, this.port);
+                        this.channel = future.channel();
+                        this.channel.closeFuture().addListener((ChannelFutureListener) f -> {
+                            logger.debug("Disconnected from broker {}", this.brokerId);
+                            if (this.channel == f.channel()) this.channel = null;
+                        });
+                        // queued frames were accepted already, write them regardless of back-pressure
+                        ByteBuf frame;
+                        while ((frame = this.pending.poll()) != null) write(frame, true);
+                    } else {
+                        logger.warn("Cluster Error: Failed to connect to broker {} at {}:{}, {} messages queued: {}", this.brokerId, this.host, this.port, this.pending.size(), future.cause().getMessage());
+                        this.failedAt = System.currentTimeMillis();
+                        if (!this.pending.isEmpty()) connect();
+                    }
+                });
+    }
+
+    private void releasePending() {
+        if (this.pending.isEmpty()) return;
+        this.dropped.add(this.pending.size());
+        logger.warn("Cluster Error: Link to broker {} is closed, {} messages dropped, {} messages dropped in total", this.brokerId, this.pending.size(), this.dropped.sum());
+        ByteBuf frame;
+        while ((frame = this.pending.poll()) != null) frame.release();
+    }
+}
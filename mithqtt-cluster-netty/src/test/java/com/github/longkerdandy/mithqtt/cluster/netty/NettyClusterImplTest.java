@@ -0,0 +1,116 @@
+package com.github.longkerdandy.mithqtt.cluster.netty;
+
+import com.github.longkerdandy.mithqtt.api.cluster.ClusterException;
+import com.github.longkerdandy.mithqtt.api.cluster.RecordingListener;
+import com.github.longkerdandy.mithqtt.api.message.Message;
+import com.github.longkerdandy.mithqtt.api.message.MqttAdditionalHeader;
+import com.github.longkerdandy.mithqtt.api.message.MqttPublishPayload;
+import io.netty.handler.codec.mqtt.*;
+import org.apache.commons.configuration.MapConfiguration;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Netty Cluster Test
+ */
+public class NettyClusterImplTest {
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static NettyClusterImpl newNode(int port, String members, Map<String, Object> extra, List<Message> received) throws ClusterException {
+        Map<String, Object> map = new HashMap<>();
+        map.put("netty.cluster.host", "127.0.0.1");
+        map.put("netty.cluster.port", port);
+        map.put("netty.cluster.members", members);
+        map.putAll(extra);
+        NettyClusterImpl cluster = new NettyClusterImpl();
+        cluster.init(new MapConfiguration(map), () -> new RecordingListener(received));
+        return cluster;
+    }
+
+    private static Message disconnect(String clientId) {
+        return new Message<>(
+                new MqttFixedHeader(MqttMessageType.DISCONNECT, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, clientId, "user1", "broker1"),
+                null, null);
+    }
+
+    private static Message publish(String clientId, String topicName) {
+        return new Message<>(
+                new MqttFixedHeader(MqttMessageType.PUBLISH, false, MqttQoS.AT_MOST_ONCE, false, 0),
+                new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, clientId, "user1", "broker1"),
+                MqttPublishVariableHeader.from(topicName),
+                new MqttPublishPayload(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    public void sendToBrokerTest() throws Exception {
+        List<Message> r1 = new CopyOnWriteArrayList<>();
+        List<Message> r2 = new CopyOnWriteArrayList<>();
+        int p1 = freePort();
+        int p2 = freePort();
+        String members = "1=127.0.0.1:" + p1 + ",2=127.0.0.1:" + p2;
+        NettyClusterImpl b1 = newNode(p1, members, new HashMap<>(), r1);
+        NettyClusterImpl b2 = newNode(p2, members, new HashMap<>(), r2);
+
+        for (int i = 0; i < 1000; i++) {
+            b1.sendToBroker("2", publish("client1", "a/" + i));
+        }
+        b2.sendToBroker("1", publish("client2", "b"));
+        b2.sendToBroker("3", publish("client2", "b"));
+
+        RecordingListener.await(r2, 1000);
+        RecordingListener.await(r1, 1);
+        assert r2.size() == 1000;
+        for (int i = 0; i < 1000; i++) {
+            assert ((MqttPublishVariableHeader) r2.get(i).variableHeader()).topicName().equals("a/" + i);
+            assert ((MqttPublishPayload) r2.get(i).payload()).bytes().length == 3;
+        }
+        assert r1.size() == 1;
+        assert r1.get(0).additionalHeader().clientId().equals("client2");
+
+        b1.destroy();
+        b2.destroy();
+    }
+
+    @Test
+    public void pendingTest() throws Exception {
+        Map<String, Object> extra = new HashMap<>();
+        extra.put("netty.cluster.pending.size", 2);
+        extra.put("netty.cluster.reconnectWait", 100);
+        List<Message> r2 = new CopyOnWriteArrayList<>();
+        int p2 = freePort();
+        String members = "2=127.0.0.1:" + p2;
+        NettyClusterImpl b1 = newNode(0, members, extra, new CopyOnWriteArrayList<>());
+
+        // peer is not started yet, publish beyond the queue limit is dropped, control message is always queued
+        b1.sendToBroker("2", publish("client1", "a/0"));
+        b1.sendToBroker("2", publish("client1", "a/1"));
+        b1.sendToBroker("2", publish("client1", "a/2"));
+        b1.sendToBroker("2", disconnect("client1"));
+        Thread.sleep(300);
+        assert b1.dropped() == 1;
+
+        // queued messages are kept across failed attempts and delivered once the peer is up
+        NettyClusterImpl b2 = newNode(p2, members, new HashMap<>(), r2);
+        RecordingListener.await(r2, 3);
+        assert r2.size() == 3;
+        assert ((MqttPublishVariableHeader) r2.get(0).variableHeader()).topicName().equals("a/0");
+        assert ((MqttPublishVariableHeader) r2.get(1).variableHeader()).topicName().equals("a/1");
+        assert r2.get(2).fixedHeader().messageType() == MqttMessageType.DISCONNECT;
+        assert b1.dropped() == 1;
+
+        b1.destroy();
+        b2.destroy();
+    }
+}
@@ -19,6 +19,7 @@ import com.sun.security.auth.UserPrincipal;
 import io.dropwizard.auth.Auth;
 import io.netty.handler.codec.mqtt.*;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -117,6 +118,13 @@ public class MqttSubscribeResource extends AbstractResource {
                 new MqttSubscribePayloadGranted(grantedSubscriptions));
         this.cluster.sendToApplication(msg);
 
+        // Pass message to the broker the client connected to, which keeps its subscriptions in memory as well
+        String bid = this.storage.getConnectedNode(clientId);
+        if (StringUtils.isNotBlank(bid)) {
+            logger.trace("Send SUBSCRIBE message to broker {} for client {}", bid, clientId);
+            this.cluster.sendToBroker(bid, msg);
+        }
+
         return new ResultEntity<>(grantedQosLevels);
     }
 
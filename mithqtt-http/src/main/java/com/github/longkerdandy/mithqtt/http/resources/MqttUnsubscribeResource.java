@@ -15,6 +15,7 @@ import com.sun.security.auth.UserPrincipal;
 import io.dropwizard.auth.Auth;
 import io.netty.handler.codec.mqtt.*;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -86,6 +87,13 @@ public class MqttUnsubscribeResource extends AbstractResource {
                 new MqttUnsubscribePayload(topics));
         this.cluster.sendToApplication(msg);
 
+        // Pass message to the broker the client connected to, which keeps its subscriptions in memory as well
+        String bid = this.storage.getConnectedNode(clientId);
+        if (StringUtils.isNotBlank(bid)) {
+            logger.trace("Send UNSUBSCRIBE message to broker {} for client {}", bid, clientId);
+            this.cluster.sendToBroker(bid, msg);
+        }
+
         return new ResultEntity<>(true);
     }
 }
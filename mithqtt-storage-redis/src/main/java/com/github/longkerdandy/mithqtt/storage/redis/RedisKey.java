@@ -1,5 +1,8 @@
 package com.github.longkerdandy.mithqtt.storage.redis;
 
+import com.github.longkerdandy.mithqtt.util.Topics;
+import org.apache.commons.lang3.StringUtils;
+
 import java.util.List;
 
 /**
@@ -7,6 +10,12 @@ import java.util.List;
  */
 public class RedisKey {
 
+    // Suffixes of the client related keys
+    private static final String[] CLIENT_KEY_SUFFIXES = {":connection", ":session", ":pid", ":qos2", ":in.flight", ":subscription"};
+
+    // Pattern matches all the client related keys
+    public static final String CLIENT_PATTERN = "client:*";
+
     // Hash indicates client's connection state
     // Key - 'node'; 'state';
     // Value - Node; State;
@@ -49,11 +58,24 @@ public class RedisKey {
         return "client:" + clientId + ":subscription";
     }
 
+    // Client Id parsed from the client related key
+    // Returns null if the key is not a client related key
+    public static String clientId(String key) {
+        if (key == null || !key.startsWith("client:")) return null;
+        String s = key.substring("client:".length());
+        for (String suffix : CLIENT_KEY_SUFFIXES) {
+            if (s.endsWith(suffix) && s.length() > suffix.length()) return s.substring(0, s.length() - suffix.length());
+        }
+        int i = s.lastIndexOf(":in.flight:");
+        if (i > 0 && StringUtils.isNumeric(s.substring(i + ":in.flight:".length()))) return s.substring(0, i);
+        return null;
+    }
+
     // Hash of topic name's subscriptions
     // Key - Client Id (which subscribed to this topic name)
     // Value - QoS Level
     public static String topicName(List<String> topicLevels) {
-        return "topic:n:" + String.join("/", topicLevels);
+        return Topics.join("topic:n:", topicLevels);
     }
 
     // Hash of topic name's subscriptions
@@ -67,7 +89,7 @@ public class RedisKey {
     // Key - Client Id (which subscribed to this topic filter)
     // Value - QoS Level
     public static String topicFilter(List<String> topicLevels) {
-        return "topic:f:" + String.join("/", topicLevels);
+        return Topics.join("topic:f:", topicLevels);
     }
 
     // Hash of topic filter's subscriptions
@@ -81,30 +103,19 @@ public class RedisKey {
     // Key - Topic Level (child node in the topic filter tree)
     // Value - Count (how many subscriptions traverse this node, 0 means route not exist)
     public static String topicFilterChild(List<String> topicLevels) {
-        return topicLevels == null || topicLevels.isEmpty() ? "{topic:f:tree}" : "{topic:f:tree}:" + String.join("/", topicLevels);
-    }
-
-    // Key indicates next retain id for the topic name
-    public static String nextRetainId(List<String> topicLevels) {
-        return "topic:r:" + String.join("/", topicLevels) + ":rid";
-    }
-
-    // List of remain message's retain id for the topic name
-    // Value MQTT Message's Packet Id
-    public static String topicRetainList(List<String> topicLevels) {
-        return "topic:r:" + String.join("/", topicLevels);
+        return topicLevels == null || topicLevels.isEmpty() ? "{topic:f:tree}" : Topics.join("{topic:f:tree}:", topicLevels);
     }
 
     // Hash of retain message for the topic name
     // MQTT Message in Hash
-    public static String topicRemainMessage(List<String> topicLevels, int retainId) {
-        return "topic:r:" + String.join("/", topicLevels) + ":" + retainId;
+    public static String topicRetainMessage(List<String> topicLevels) {
+        return "topic:r:" + Topics.join(topicLevels) + ":msg";
     }
 
     // Hash of topic retain's children in trie tree
     // Key - Topic Level (child node in the topic retain tree)
-    // Value - Count (how many subscriptions traverse this node, 0 means route not exist)
+    // Value - Count (how many retained topics traverse this node, 0 means route not exist)
     public static String topicRetainChild(List<String> topicLevels) {
-        return topicLevels == null || topicLevels.isEmpty() ? "{topic:r:tree}" : "{topic:r:tree}:" + String.join("/", topicLevels);
+        return topicLevels == null || topicLevels.isEmpty() ? "{topic:r:tree}" : Topics.join("{topic:r:tree}:", topicLevels);
     }
 }
@@ -63,4 +63,60 @@ public class RedisLua {
                     "   return 1\n" +
                     "end\n" +
                     "return 0";
+
+    // Decrements the specified field of each hash by one
+    // Removes the field if the number reached 0, used to remove routes from the trie tree
+    // Same key and field may appear multiple times, each appearance will be decremented
+    //
+    // Keys N. Hash (trie tree node) to be decremented
+    // Args N. Field (child node) of the corresponding hash
+    // Returns OK
+    public static final String HDECRALL =
+            "for i = 1, table.getn(KEYS) do\n" +
+                    "   local count = redis.call('HINCRBY', KEYS[i], ARGV[i], -1)\n" +
+                    "   if count <= 0\n" +
+                    "   then\n" +
+                    "       redis.call('HDEL', KEYS[i], ARGV[i])\n" +
+                    "   end\n" +
+                    "end\n" +
+                    "return redis.status_reply('OK')";
+
+    // Increments the specified field of each hash by one, only if the last field not exist
+    // Used to add a new route to the trie tree, the last field marks the end of the route
+    //
+    // Keys N. Hash (trie tree node) to be incremented
+    // Args N. Field (child node) of the corresponding hash
+    // Returns 1 if route added, 0 if route already exist
+    public static final String ROUTEADD =
+            "local length = table.getn(KEYS)\n" +
+                    "if redis.call('HEXISTS', KEYS[length], ARGV[length]) == 1\n" +
+                    "then\n" +
+                    "   return 0\n" +
+                    "end\n" +
+                    "for i = 1, length do\n" +
+                    "   redis.call('HINCRBY', KEYS[i], ARGV[i], 1)\n" +
+                    "end\n" +
+                    "return 1";
+
+    // Decrements the specified field of each hash by one, only if the last field exist
+    // Removes the field if the number reached 0
+    // Used to remove a route from the trie tree, the last field marks the end of the route
+    //
+    // Keys N. Hash (trie tree node) to be decremented
+    // Args N. Field (child node) of the corresponding hash
+    // Returns 1 if route removed, 0 if route not exist
+    public static final String ROUTEDEL =
+            "local length = table.getn(KEYS)\n" +
+                    "if redis.call('HEXISTS', KEYS[length], ARGV[length]) == 0\n" +
+                    "then\n" +
+                    "   return 0\n" +
+                    "end\n" +
+                    "for i = 1, length do\n" +
+                    "   local count = redis.call('HINCRBY', KEYS[i], ARGV[i], -1)\n" +
+                    "   if count <= 0\n" +
+                    "   then\n" +
+                    "       redis.call('HDEL', KEYS[i], ARGV[i])\n" +
+                    "   end\n" +
+                    "end\n" +
+                    "return 1";
 }
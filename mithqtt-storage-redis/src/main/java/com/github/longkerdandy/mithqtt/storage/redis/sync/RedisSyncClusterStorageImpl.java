@@ -2,6 +2,7 @@ package com.github.longkerdandy.mithqtt.storage.redis.sync;
 
 import com.lambdaworks.redis.ReadFrom;
 import com.lambdaworks.redis.RedisURI;
+import com.lambdaworks.redis.api.async.*;
 import com.lambdaworks.redis.api.sync.*;
 import com.lambdaworks.redis.cluster.ClusterClientOptions;
 import com.lambdaworks.redis.cluster.ClusterTopologyRefreshOptions;
@@ -67,6 +68,30 @@ public class RedisSyncClusterStorageImpl extends RedisSyncSingleStorageImpl {
         return this.lettuceClusterConn.sync();
     }
 
+    protected RedisHashAsyncCommands<String, String> hashAsync() {
+        return this.lettuceClusterConn.async();
+    }
+
+    protected RedisKeyAsyncCommands<String, String> keyAsync() {
+        return this.lettuceClusterConn.async();
+    }
+
+    protected RedisStringAsyncCommands<String, String> stringAsync() {
+        return this.lettuceClusterConn.async();
+    }
+
+    protected RedisListAsyncCommands<String, String> listAsync() {
+        return this.lettuceClusterConn.async();
+    }
+
+    protected RedisSortedSetAsyncCommands<String, String> sortedSetAsync() {
+        return this.lettuceClusterConn.async();
+    }
+
+    protected RedisScriptingAsyncCommands<String, String> scriptAsync() {
+        return this.lettuceClusterConn.async();
+    }
+
     @Override
     public void init(AbstractConfiguration config) {
         if (!config.getString("redis.type").equals("cluster")) {
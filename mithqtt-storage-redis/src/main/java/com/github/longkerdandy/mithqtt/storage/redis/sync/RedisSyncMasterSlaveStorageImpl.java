@@ -3,6 +3,7 @@ package com.github.longkerdandy.mithqtt.storage.redis.sync;
 import com.lambdaworks.redis.ReadFrom;
 import com.lambdaworks.redis.RedisClient;
 import com.lambdaworks.redis.RedisURI;
+import com.lambdaworks.redis.api.async.*;
 import com.lambdaworks.redis.api.sync.*;
 import com.lambdaworks.redis.codec.Utf8StringCodec;
 import com.lambdaworks.redis.masterslave.MasterSlave;
@@ -64,6 +65,30 @@ public class RedisSyncMasterSlaveStorageImpl extends RedisSyncSingleStorageImpl
         return this.lettuceMasterSlaveConn.sync();
     }
 
+    protected RedisHashAsyncCommands<String, String> hashAsync() {
+        return this.lettuceMasterSlaveConn.async();
+    }
+
+    protected RedisKeyAsyncCommands<String, String> keyAsync() {
+        return this.lettuceMasterSlaveConn.async();
+    }
+
+    protected RedisStringAsyncCommands<String, String> stringAsync() {
+        return this.lettuceMasterSlaveConn.async();
+    }
+
+    protected RedisListAsyncCommands<String, String> listAsync() {
+        return this.lettuceMasterSlaveConn.async();
+    }
+
+    protected RedisSortedSetAsyncCommands<String, String> sortedSetAsync() {
+        return this.lettuceMasterSlaveConn.async();
+    }
+
+    protected RedisScriptingAsyncCommands<String, String> scriptAsync() {
+        return this.lettuceMasterSlaveConn.async();
+    }
+
     @Override
     public void init(AbstractConfiguration config) {
         if (!config.getString("redis.type").equals("master_slave")) {
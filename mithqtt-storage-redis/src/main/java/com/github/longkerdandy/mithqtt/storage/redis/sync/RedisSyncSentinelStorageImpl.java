@@ -3,6 +3,7 @@ package com.github.longkerdandy.mithqtt.storage.redis.sync;
 import com.lambdaworks.redis.ReadFrom;
 import com.lambdaworks.redis.RedisClient;
 import com.lambdaworks.redis.RedisURI;
+import com.lambdaworks.redis.api.async.*;
 import com.lambdaworks.redis.api.sync.*;
 import com.lambdaworks.redis.codec.Utf8StringCodec;
 import com.lambdaworks.redis.masterslave.MasterSlave;
@@ -65,6 +66,30 @@ public class RedisSyncSentinelStorageImpl extends RedisSyncSingleStorageImpl {
         return this.lettuceSentinelConn.sync();
     }
 
+    protected RedisHashAsyncCommands<String, String> hashAsync() {
+        return this.lettuceSentinelConn.async();
+    }
+
+    protected RedisKeyAsyncCommands<String, String> keyAsync() {
+        return this.lettuceSentinelConn.async();
+    }
+
+    protected RedisStringAsyncCommands<String, String> stringAsync() {
+        return this.lettuceSentinelConn.async();
+    }
+
+    protected RedisListAsyncCommands<String, String> listAsync() {
+        return this.lettuceSentinelConn.async();
+    }
+
+    protected RedisSortedSetAsyncCommands<String, String> sortedSetAsync() {
+        return this.lettuceSentinelConn.async();
+    }
+
+    protected RedisScriptingAsyncCommands<String, String> scriptAsync() {
+        return this.lettuceSentinelConn.async();
+    }
+
     @Override
     public void init(AbstractConfiguration config) {
         if (!config.getString("redis.type").equals("sentinel")) {
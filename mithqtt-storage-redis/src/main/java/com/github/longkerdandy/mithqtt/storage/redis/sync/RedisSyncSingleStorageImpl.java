@@ -6,11 +6,11 @@ import com.github.longkerdandy.mithqtt.api.storage.sync.ConnectionState;
 import com.github.longkerdandy.mithqtt.api.storage.sync.SyncStorage;
 import com.github.longkerdandy.mithqtt.storage.redis.RedisKey;
 import com.github.longkerdandy.mithqtt.storage.redis.RedisLua;
+import com.github.longkerdandy.mithqtt.util.LRUCache;
 import com.github.longkerdandy.mithqtt.util.Topics;
-import com.lambdaworks.redis.RedisClient;
-import com.lambdaworks.redis.RedisURI;
-import com.lambdaworks.redis.ScriptOutputType;
+import com.lambdaworks.redis.*;
 import com.lambdaworks.redis.api.StatefulRedisConnection;
+import com.lambdaworks.redis.api.async.*;
 import com.lambdaworks.redis.api.sync.*;
 import io.netty.handler.codec.mqtt.MqttPublishVariableHeader;
 import io.netty.handler.codec.mqtt.MqttQoS;
@@ -18,26 +18,40 @@ import org.apache.commons.configuration.AbstractConfiguration;
 import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.github.longkerdandy.mithqtt.storage.redis.util.Converter.mapToMessage;
 import static com.github.longkerdandy.mithqtt.storage.redis.util.Converter.messageToMap;
 import static com.github.longkerdandy.mithqtt.util.Topics.END;
+import static com.github.longkerdandy.mithqtt.util.Topics.SHARE;
 
 /**
  * Synchronized Storage for Single Redis setup
  */
 public class RedisSyncSingleStorageImpl implements SyncStorage {
 
+    // Prefix of shared subscription member in topic's subscriptions
+    private static final String SHARE_PREFIX = SHARE + "/";
+
     // Max in-flight queue size per client
     private int inFlightQueueSize;
     // Max QoS 2 ids queue size per client
     private int qos2QueueSize;
-    // Max retain queue size per topic
-    private int retainQueueSize;
+    // Local cache of retain messages (Topic : Retain Message)
+    private LRUCache<String, Optional<Message<MqttPublishVariableHeader, MqttPublishPayload>>> retainCache;
+    // Local cache of retain topics matching the topic filter (Topic Filter : List of Topic Levels)
+    private LRUCache<String, List<List<String>>> retainMatchCache;
+    // Max retain messages fetched in one pipelined batch
+    private int retainFetchSize;
+    // Pick the shared subscription member with least in-flight messages, instead of round-robin
+    private boolean shareLeastInFlight;
+    // Round-robin position of each shared subscription group (Group : Counter)
+    private final Map<String, AtomicInteger> shareCounters = new ConcurrentHashMap<>();
 
     // A scalable thread-safe Redis client. Multiple threads may share one connection if they avoid
     // blocking and transactional operations such as BLPOP and MULTI/EXEC.
@@ -45,6 +59,9 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
     // A thread-safe connection to a redis server. Multiple threads may share one StatefulRedisConnection
     private StatefulRedisConnection<String, String> lettuceConn;
 
+    // Position of the session sweeper in the key space
+    private ScanCursor sweepCursor = ScanCursor.INITIAL;
+
     protected RedisHashCommands<String, String> hash() {
         return this.lettuceConn.sync();
     }
@@ -85,6 +102,30 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
         return this.lettuceConn.sync();
     }
 
+    protected RedisHashAsyncCommands<String, String> hashAsync() {
+        return this.lettuceConn.async();
+    }
+
+    protected RedisKeyAsyncCommands<String, String> keyAsync() {
+        return this.lettuceConn.async();
+    }
+
+    protected RedisStringAsyncCommands<String, String> stringAsync() {
+        return this.lettuceConn.async();
+    }
+
+    protected RedisListAsyncCommands<String, String> listAsync() {
+        return this.lettuceConn.async();
+    }
+
+    protected RedisSortedSetAsyncCommands<String, String> sortedSetAsync() {
+        return this.lettuceConn.async();
+    }
+
+    protected RedisScriptingAsyncCommands<String, String> scriptAsync() {
+        return this.lettuceConn.async();
+    }
+
     @Override
     public void init(AbstractConfiguration config) {
         if (!config.getString("redis.type").equals("single")) {
@@ -136,7 +177,12 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
     void initParams(AbstractConfiguration config) {
         this.inFlightQueueSize = config.getInt("mqtt.inflight.queue.size", 0);
         this.qos2QueueSize = config.getInt("mqtt.qos2.queue.size", 0);
-        this.retainQueueSize = config.getInt("mqtt.retain.queue.size", 0);
+        int retainCacheSize = config.getInt("mqtt.retain.cache.size", 0);
+        long retainCacheTTL = config.getLong("mqtt.retain.cache.ttl", 0);
+        this.retainCache = new LRUCache<>(retainCacheSize, retainCacheTTL);
+        this.retainMatchCache = new LRUCache<>(retainCacheSize, retainCacheTTL);
+        this.retainFetchSize = config.getInt("mqtt.retain.fetch.size", 1000);
+        this.shareLeastInFlight = "least_inflight".equals(config.getString("mqtt.share.strategy", "round_robin"));
     }
 
     @Override
@@ -230,10 +276,87 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
 
     @Override
     public void removeAllSessionState(String clientId) {
-        removeSessionExist(clientId);
-        removeAllSubscriptions(clientId);
-        removeAllQoS2MessageId(clientId);
-        removeAllInFlightMessage(clientId);
+        // read the state snapshot in one round trip
+        RedisFuture<Map<String, String>> subscriptions = this.hashAsync().hgetall(RedisKey.subscription(clientId));
+        RedisFuture<List<String>> inFlightIds = this.listAsync().lrange(RedisKey.inFlightList(clientId), 0, -1);
+
+        // pipeline all deletions
+        List<RedisFuture<?>> futures = new ArrayList<>();
+        futures.add(this.keyAsync().del(RedisKey.session(clientId)));
+        futures.add(this.keyAsync().del(RedisKey.qos2Set(clientId)));
+        removeInFlightMessages(clientId, await(inFlightIds), futures);
+        removeSubscriptions(clientId, await(subscriptions), futures);
+        awaitAll(futures);
+    }
+
+    @Override
+    public boolean expireSessionExist(String clientId, int seconds) {
+        return this.key().expire(RedisKey.session(clientId), seconds);
+    }
+
+    @Override
+    public int sweepSessions(int count, int seconds) {
+        // scan from the last position
+        KeyScanCursor<String> cursor = this.key().scan(this.sweepCursor, ScanArgs.Builder.matches(RedisKey.CLIENT_PATTERN).limit(count));
+        this.sweepCursor = cursor.isFinished() ? ScanCursor.INITIAL : cursor;
+
+        // group scanned keys by client
+        Map<String, List<String>> clients = new HashMap<>();
+        cursor.getKeys().forEach(key -> {
+            String clientId = RedisKey.clientId(key);
+            if (clientId != null) clients.computeIfAbsent(clientId, k -> new ArrayList<>()).add(key);
+        });
+        if (clients.isEmpty()) return 0;
+
+        // -2 not exist, -1 exist without expiry
+        Map<String, RedisFuture<Long>> connections = new HashMap<>();
+        Map<String, RedisFuture<Long>> sessions = new HashMap<>();
+        clients.keySet().forEach(clientId -> {
+            connections.put(clientId, this.keyAsync().ttl(RedisKey.connection(clientId)));
+            sessions.put(clientId, this.keyAsync().ttl(RedisKey.session(clientId)));
+        });
+
+        int removed = 0;
+        for (Map.Entry<String, List<String>> client : clients.entrySet()) {
+            String clientId = client.getKey();
+            // skip connected or connecting client
+            if (await(connections.get(clientId)) != -2) continue;
+            long ttl = await(sessions.get(clientId));
+            if (ttl == -2) {
+                removeAllSessionState(clientId);
+                List<RedisFuture<?>> futures = new ArrayList<>();
+                client.getValue().forEach(key -> futures.add(this.keyAsync().del(key)));
+                futures.add(this.keyAsync().del(RedisKey.nextPacketId(clientId)));
+                awaitAll(futures);
+                removed++;
+            } else if (ttl == -1 && seconds > 0) {
+                expireSessionExist(clientId, seconds);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Wait for the asynchronous command and return its result
+     *
+     * @param future Redis Future
+     * @param <T>    Result Type
+     * @return Command Result
+     */
+    protected <T> T await(RedisFuture<T> future) {
+        return LettuceFutures.awaitOrCancel(future, RedisURI.DEFAULT_TIMEOUT, RedisURI.DEFAULT_TIMEOUT_UNIT);
+    }
+
+    /**
+     * Wait for all the asynchronous commands to complete
+     *
+     * @param futures List of Redis Future
+     */
+    protected void awaitAll(List<RedisFuture<?>> futures) {
+        if (futures.isEmpty()) return;
+        if (!LettuceFutures.awaitAll(RedisURI.DEFAULT_TIMEOUT, RedisURI.DEFAULT_TIMEOUT_UNIT, futures.toArray(new RedisFuture[futures.size()]))) {
+            throw new RedisCommandTimeoutException();
+        }
     }
 
     @Override
@@ -263,6 +386,29 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
         this.key().expire(RedisKey.inFlightMessage(clientId, packetId), ttl);
     }
 
+    @Override
+    public CompletableFuture<Void> addInFlightMessageAsync(String clientId, int packetId, Message msg, boolean dup) {
+        Map<String, String> map = messageToMap(msg);
+        map.put("dup", BooleanUtils.toString(dup, "1", "0"));
+        // the message dropped by the length limit is deleted once the script returns, a script must not touch keys
+        // not passed to it (which may live on another node of Redis Cluster)
+        // the dropped packet id could only equal the new one if reused, then the new message must be kept
+        String id = String.valueOf(packetId);
+        RedisFuture<String> pushed = this.scriptAsync().eval(RedisLua.RPUSHLIMIT, ScriptOutputType.VALUE, new String[]{RedisKey.inFlightList(clientId)},
+                id, String.valueOf(this.inFlightQueueSize));
+        CompletableFuture<Long> dropped = pushed.toCompletableFuture().thenCompose(r -> r == null || r.equals(id) ? CompletableFuture.completedFuture(0L)
+                : this.keyAsync().del(RedisKey.inFlightMessage(clientId, Integer.parseInt(r))));
+        CompletableFuture<String> stored = this.hashAsync().hmset(RedisKey.inFlightMessage(clientId, packetId), map).toCompletableFuture();
+        return CompletableFuture.allOf(dropped, stored);
+    }
+
+    @Override
+    public CompletableFuture<Void> addInFlightMessageAsync(String clientId, int packetId, Message msg, boolean dup, long ttl) {
+        CompletableFuture<Void> added = addInFlightMessageAsync(clientId, packetId, msg, dup);
+        CompletableFuture<Boolean> expired = this.keyAsync().expire(RedisKey.inFlightMessage(clientId, packetId), ttl).toCompletableFuture();
+        return CompletableFuture.allOf(added, expired);
+    }
+
     @Override
     public void removeInFlightMessage(String clientId, int packetId) {
         this.list().lrem(RedisKey.inFlightList(clientId), 0, String.valueOf(packetId));
@@ -285,10 +431,23 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
 
     @Override
     public void removeAllInFlightMessage(String clientId) {
-        List<String> ids = this.list().lrange(RedisKey.inFlightList(clientId), 0, -1);
+        List<RedisFuture<?>> futures = new ArrayList<>();
+        removeInFlightMessages(clientId, this.list().lrange(RedisKey.inFlightList(clientId), 0, -1), futures);
+        awaitAll(futures);
+    }
+
+    /**
+     * Pipeline the removal of the client's in-flight list and messages
+     *
+     * @param clientId Client Id
+     * @param ids      Packet Ids in the in-flight list
+     * @param futures  RETURN VALUE! Pending Redis Futures
+     */
+    private void removeInFlightMessages(String clientId, List<String> ids, List<RedisFuture<?>> futures) {
+        futures.add(this.keyAsync().del(RedisKey.inFlightList(clientId)));
         if (ids != null) {
             ids.forEach(packetId ->
-                    removeInFlightMessage(clientId, Integer.parseInt(packetId)));
+                    futures.add(this.keyAsync().del(RedisKey.inFlightMessage(clientId, Integer.parseInt(packetId)))));
         }
     }
 
@@ -335,16 +494,18 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
 
     @Override
     public void updateSubscription(String clientId, List<String> topicLevels, MqttQoS qos) {
-        if (Topics.isTopicFilter(topicLevels)) {
-            boolean b1 = this.hash().hset(RedisKey.subscription(clientId), String.join("/", topicLevels), String.valueOf(qos.value()));
-            boolean b2 = this.hash().hset(RedisKey.topicFilter(topicLevels), clientId, String.valueOf(qos.value()));
+        String member = subscriptionMember(clientId, topicLevels);
+        List<String> filterLevels = Topics.shareFilter(topicLevels);
+        if (Topics.isTopicFilter(filterLevels)) {
+            boolean b1 = this.hash().hset(RedisKey.subscription(clientId), Topics.join(topicLevels), String.valueOf(qos.value()));
+            boolean b2 = this.hash().hset(RedisKey.topicFilter(filterLevels), member, String.valueOf(qos.value()));
             if (b1 && b2) {
                 List<String> keys = new ArrayList<>();
                 List<String> argv = new ArrayList<>();
                 // topic filter tree
-                for (int i = 0; i < topicLevels.size(); i++) {
-                    keys.add(RedisKey.topicFilterChild(topicLevels.subList(0, i)));
-                    argv.add(topicLevels.get(i));
+                for (int i = 0; i < filterLevels.size(); i++) {
+                    keys.add(RedisKey.topicFilterChild(filterLevels.subList(0, i)));
+                    argv.add(filterLevels.get(i));
                 }
                 this.script().eval("local length = table.getn(KEYS)\n" +
                                 "for i = 1, length do\n" +
@@ -354,23 +515,25 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
                         ScriptOutputType.STATUS, keys.toArray(new String[keys.size()]), argv.toArray(new String[argv.size()]));
             }
         } else {
-            this.hash().hset(RedisKey.subscription(clientId), String.join("/", topicLevels), String.valueOf(qos.value()));
-            this.hash().hset(RedisKey.topicName(topicLevels), clientId, String.valueOf(qos.value()));
+            this.hash().hset(RedisKey.subscription(clientId), Topics.join(topicLevels), String.valueOf(qos.value()));
+            this.hash().hset(RedisKey.topicName(filterLevels), member, String.valueOf(qos.value()));
         }
     }
 
     @Override
     public void removeSubscription(String clientId, List<String> topicLevels) {
-        if (Topics.isTopicFilter(topicLevels)) {
-            long b1 = this.hash().hdel(RedisKey.subscription(clientId), String.join("/", topicLevels));
-            long b2 = this.hash().hdel(RedisKey.topicFilter(topicLevels), clientId);
+        String member = subscriptionMember(clientId, topicLevels);
+        List<String> filterLevels = Topics.shareFilter(topicLevels);
+        if (Topics.isTopicFilter(filterLevels)) {
+            long b1 = this.hash().hdel(RedisKey.subscription(clientId), Topics.join(topicLevels));
+            long b2 = this.hash().hdel(RedisKey.topicFilter(filterLevels), member);
             if (b1 == 1 && b2 == 1) {
                 List<String> keys = new ArrayList<>();
                 List<String> argv = new ArrayList<>();
                 // topic filter tree
-                for (int i = 0; i < topicLevels.size(); i++) {
-                    keys.add(RedisKey.topicFilterChild(topicLevels.subList(0, i)));
-                    argv.add(topicLevels.get(i));
+                for (int i = 0; i < filterLevels.size(); i++) {
+                    keys.add(RedisKey.topicFilterChild(filterLevels.subList(0, i)));
+                    argv.add(filterLevels.get(i));
                 }
                 this.script().eval("local length = table.getn(KEYS)\n" +
                                 "for i = 1, length do\n" +
@@ -384,16 +547,59 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
                         ScriptOutputType.STATUS, keys.toArray(new String[keys.size()]), argv.toArray(new String[argv.size()]));
             }
         } else {
-            this.hash().hdel(RedisKey.subscription(clientId), String.join("/", topicLevels));
-            this.hash().hdel(RedisKey.topicName(topicLevels), clientId);
+            this.hash().hdel(RedisKey.subscription(clientId), Topics.join(topicLevels));
+            this.hash().hdel(RedisKey.topicName(filterLevels), member);
         }
     }
 
     @Override
     public void removeAllSubscriptions(String clientId) {
-        this.hash().hgetall(RedisKey.subscription(clientId)).
-                forEach((topic, qos) ->
-                        removeSubscription(clientId, Topics.sanitize(topic)));
+        List<RedisFuture<?>> futures = new ArrayList<>();
+        removeSubscriptions(clientId, this.hash().hgetall(RedisKey.subscription(clientId)), futures);
+        awaitAll(futures);
+    }
+
+    /**
+     * Pipeline the removal of the client's subscriptions
+     * The topic filter tree is decremented for all removed topic filters in one script
+     *
+     * @param clientId      Client Id
+     * @param subscriptions Client's subscriptions: Key - Topic, Value - QoS
+     * @param futures       RETURN VALUE! Pending Redis Futures
+     */
+    private void removeSubscriptions(String clientId, Map<String, String> subscriptions, List<RedisFuture<?>> futures) {
+        futures.add(this.keyAsync().del(RedisKey.subscription(clientId)));
+        if (subscriptions == null || subscriptions.isEmpty()) return;
+
+        List<List<String>> filters = new ArrayList<>();
+        List<RedisFuture<Long>> removed = new ArrayList<>();
+        subscriptions.keySet().forEach(topic -> {
+            List<String> topicLevels = Topics.sanitize(topic);
+            String member = subscriptionMember(clientId, topicLevels);
+            List<String> filterLevels = Topics.shareFilter(topicLevels);
+            if (Topics.isTopicFilter(filterLevels)) {
+                filters.add(filterLevels);
+                removed.add(this.hashAsync().hdel(RedisKey.topicFilter(filterLevels), member));
+            } else {
+                futures.add(this.hashAsync().hdel(RedisKey.topicName(filterLevels), member));
+            }
+        });
+
+        // topic filter tree
+        List<String> keys = new ArrayList<>();
+        List<String> argv = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) {
+            if (await(removed.get(i)) == 1) {
+                List<String> topicLevels = filters.get(i);
+                for (int j = 0; j < topicLevels.size(); j++) {
+                    keys.add(RedisKey.topicFilterChild(topicLevels.subList(0, j)));
+                    argv.add(topicLevels.get(j));
+                }
+            }
+        }
+        if (!keys.isEmpty()) {
+            futures.add(this.scriptAsync().eval(RedisLua.HDECRALL, ScriptOutputType.STATUS, keys.toArray(new String[keys.size()]), argv.toArray(new String[argv.size()])));
+        }
     }
 
     /**
@@ -483,106 +689,145 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
 
     @Override
     public void getMatchSubscriptions(List<String> topicLevels, Map<String, MqttQoS> map) {
+        getMatchSubscriptions(topicLevels, null, map);
+    }
+
+    @Override
+    public void getMatchSubscriptions(List<String> topicLevels, String brokerId, Map<String, MqttQoS> map) {
         if (Topics.isTopicFilter(topicLevels)) {
             throw new IllegalArgumentException("it must be topic name not topic filter");
         }
 
+        Map<String, MqttQoS> members = new HashMap<>();
+
         // topic name
-        map.putAll(getTopicSubscriptions(topicLevels));
+        members.putAll(getTopicSubscriptions(topicLevels));
 
         // topic filter
-        getMatchSubscriptions(topicLevels, 0, map);
-    }
-
-    @Override
-    public int addRetainMessage(List<String> topicLevels, Message<MqttPublishVariableHeader, MqttPublishPayload> msg) {
-        // retainId
-        int retainId = Math.toIntExact(this.script().eval(RedisLua.INCRLIMIT, ScriptOutputType.INTEGER, new String[]{RedisKey.nextRetainId(topicLevels)}, new String[]{"65535"}));
-
-        // retain's message list
-        String r = this.script().eval(RedisLua.RPUSHLIMIT, ScriptOutputType.VALUE, new String[]{RedisKey.topicRetainList(topicLevels)}, String.valueOf(retainId), String.valueOf(this.retainQueueSize));
-        if (r != null) {
-            List<String> keys = new ArrayList<>();
-            List<String> argv = new ArrayList<>();
-            for (int i = 0; i < topicLevels.size(); i++) {
-                keys.add(RedisKey.topicRetainChild(topicLevels.subList(0, i)));
-                argv.add(topicLevels.get(i));
+        getMatchSubscriptions(topicLevels, 0, members);
+
+        // shared subscription members are grouped, only one member of each group receives the message
+        Map<String, Map<String, MqttQoS>> groups = new HashMap<>();
+        members.forEach((member, qos) -> {
+            if (member.startsWith(SHARE_PREFIX)) {
+                String[] tokens = member.split("/", 3);
+                groups.computeIfAbsent(tokens[1], g -> new HashMap<>()).put(tokens[2], qos);
+            } else {
+                mergeSubscription(map, member, qos);
             }
-            this.script().eval("local length = table.getn(KEYS)\n" +
-                            "for i = 1, length do\n" +
-                            "   local count = redis.call('HINCRBY', KEYS[i], ARGV[i], -1)\n" +
-                            "   if count == 0\n" +
-                            "   then\n" +
-                            "       redis.call('HDEL', KEYS[i], ARGV[i])\n" +
-                            "   end\n" +
-                            "end\n" +
-                            "return redis.status_reply('OK')",
-                    ScriptOutputType.STATUS, keys.toArray(new String[keys.size()]), argv.toArray(new String[argv.size()]));
-
-            this.key().del(RedisKey.topicRemainMessage(topicLevels, retainId));
-        }
+        });
+        groups.forEach((group, subscriptions) -> {
+            String clientId = selectShareMember(group, subscriptions.keySet(), brokerId);
+            mergeSubscription(map, clientId, subscriptions.get(clientId));
+        });
+    }
 
-        // retain tree
-        List<String> keys = new ArrayList<>();
-        List<String> argv = new ArrayList<>();
-        for (int i = 0; i < topicLevels.size(); i++) {
-            keys.add(RedisKey.topicRetainChild(topicLevels.subList(0, i)));
-            argv.add(topicLevels.get(i));
+    /**
+     * Merge the subscription, respecting the maximum QoS if the client already exists
+     *
+     * @param map      RETURN VALUE! Subscriptions: Key - Client Id, Value - QoS
+     * @param clientId Client Id
+     * @param qos      Subscription QoS
+     */
+    private void mergeSubscription(Map<String, MqttQoS> map, String clientId, MqttQoS qos) {
+        if (qos.value() >= map.getOrDefault(clientId, MqttQoS.AT_MOST_ONCE).value()) {
+            map.put(clientId, qos);
         }
-        this.script().eval("local length = table.getn(KEYS)\n" +
-                        "for i = 1, length do\n" +
-                        "    redis.call('HINCRBY', KEYS[i], ARGV[i], 1)\n" +
-                        "end\n" +
-                        "return redis.status_reply('OK')",
-                ScriptOutputType.STATUS, keys.toArray(new String[keys.size()]), argv.toArray(new String[argv.size()]));
-
-        // retain message
-        this.hash().hmset(RedisKey.topicRemainMessage(topicLevels, retainId), messageToMap(msg));
-
-        return retainId;
     }
 
     /**
-     * Remove the specific retain message
+     * Get the member stored in topic's subscriptions
+     * Shared subscription member is stored as $share/{group}/{clientId}
      *
+     * @param clientId    Client Id
      * @param topicLevels Topic Levels
-     * @param retainId    Retain Id
+     * @return Member
      */
-    private void removeRetainMessage(List<String> topicLevels, int retainId) {
-        // retain's message list
-        long b = this.list().lrem(RedisKey.topicRetainList(topicLevels), 1, String.valueOf(retainId));
+    private String subscriptionMember(String clientId, List<String> topicLevels) {
+        return Topics.isShared(topicLevels) ? SHARE_PREFIX + Topics.shareGroup(topicLevels) + "/" + clientId : clientId;
+    }
 
-        // retain tree
-        if (b == 1) {
-            List<String> keys = new ArrayList<>();
-            List<String> argv = new ArrayList<>();
-            for (int i = 0; i < topicLevels.size(); i++) {
-                keys.add(RedisKey.topicRetainChild(topicLevels.subList(0, i)));
-                argv.add(topicLevels.get(i));
+    /**
+     * Select one member of the shared subscription group to receive the message
+     * Members connected to the given broker are preferred, then members connected to any broker
+     * Among them, the member is picked by round-robin, or the one with least in-flight messages
+     *
+     * @param group     Group Name
+     * @param clientIds Members' Client Id
+     * @param brokerId  Broker Id, may be null
+     * @return Selected Client Id
+     */
+    private String selectShareMember(String group, Collection<String> clientIds, String brokerId) {
+        List<String> members = new ArrayList<>(clientIds);
+        Collections.sort(members);
+        if (members.size() > 1) {
+            List<RedisFuture<String>> nodes = new ArrayList<>();
+            members.forEach(clientId -> nodes.add(this.hashAsync().hget(RedisKey.connection(clientId), "node")));
+            List<String> local = new ArrayList<>();
+            List<String> connected = new ArrayList<>();
+            for (int i = 0; i < members.size(); i++) {
+                String node = await(nodes.get(i));
+                if (StringUtils.isBlank(node)) continue;
+                if (node.equals(brokerId)) local.add(members.get(i));
+                connected.add(members.get(i));
+            }
+            if (!local.isEmpty()) members = local;
+            else if (!connected.isEmpty()) members = connected;
+        }
+        if (members.size() == 1) return members.get(0);
+
+        int start = Math.floorMod(this.shareCounters.computeIfAbsent(group, g -> new AtomicInteger()).getAndIncrement(), members.size());
+        if (!this.shareLeastInFlight) return members.get(start);
+
+        List<RedisFuture<Long>> sizes = new ArrayList<>();
+        members.forEach(clientId -> sizes.add(this.listAsync().llen(RedisKey.inFlightList(clientId))));
+        String selected = null;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < members.size(); i++) {
+            int j = (start + i) % members.size();
+            long size = await(sizes.get(j));
+            if (size < min) {
+                min = size;
+                selected = members.get(j);
             }
-            this.script().eval("local length = table.getn(KEYS)\n" +
-                            "for i = 1, length do\n" +
-                            "   local count = redis.call('HINCRBY', KEYS[i], ARGV[i], -1)\n" +
-                            "   if count == 0\n" +
-                            "   then\n" +
-                            "       redis.call('HDEL', KEYS[i], ARGV[i])\n" +
-                            "   end\n" +
-                            "end\n" +
-                            "return redis.status_reply('OK')",
-                    ScriptOutputType.STATUS, keys.toArray(new String[keys.size()]), argv.toArray(new String[argv.size()]));
         }
+        return selected;
+    }
 
-        // retain message
-        this.key().del(RedisKey.topicRemainMessage(topicLevels, retainId));
+    @Override
+    public void addRetainMessage(List<String> topicLevels, Message<MqttPublishVariableHeader, MqttPublishPayload> msg) {
+        // retain message, replace the existing one
+        this.hash().hmset(RedisKey.topicRetainMessage(topicLevels), messageToMap(msg));
+        this.retainCache.remove(Topics.join(topicLevels));
+
+        // retain tree
+        long r = this.script().eval(RedisLua.ROUTEADD, ScriptOutputType.INTEGER, retainRouteKeys(topicLevels), topicLevels.toArray(new String[topicLevels.size()]));
+        if (r == 1) this.retainMatchCache.clear();
     }
 
     @Override
     public void removeAllRetainMessage(List<String> topicLevels) {
-        List<String> ids = this.list().lrange(RedisKey.topicRetainList(topicLevels), 0, -1);
-        if (ids != null) {
-            ids.forEach(retainId ->
-                    removeRetainMessage(topicLevels, Integer.parseInt(retainId)));
+        // retain tree
+        long r = this.script().eval(RedisLua.ROUTEDEL, ScriptOutputType.INTEGER, retainRouteKeys(topicLevels), topicLevels.toArray(new String[topicLevels.size()]));
+        if (r == 1) this.retainMatchCache.clear();
+
+        // retain message
+        this.key().del(RedisKey.topicRetainMessage(topicLevels));
+        this.retainCache.remove(Topics.join(topicLevels));
+    }
+
+    /**
+     * Get the retain tree nodes along the route of the topic name
+     *
+     * @param topicLevels Topic Levels
+     * @return Retain tree node keys
+     */
+    private String[] retainRouteKeys(List<String> topicLevels) {
+        String[] keys = new String[topicLevels.size()];
+        for (int i = 0; i < topicLevels.size(); i++) {
+            keys[i] = RedisKey.topicRetainChild(topicLevels.subList(0, i));
         }
+        return keys;
     }
 
     /**
@@ -661,31 +906,54 @@ public class RedisSyncSingleStorageImpl implements SyncStorage {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    public List<Message<MqttPublishVariableHeader, MqttPublishPayload>> getMatchRetainMessages(List<String> topicLevels) {
-        List<Message<MqttPublishVariableHeader, MqttPublishPayload>> r = new ArrayList<>();
+    public void getMatchRetainMessages(List<String> topicLevels, Consumer<Message<MqttPublishVariableHeader, MqttPublishPayload>> consumer) {
+        List<List<String>> topics;
         if (Topics.isTopicFilter(topicLevels)) {
-            List<List<String>> l = new ArrayList<>();
-            getMatchRetainMessages(topicLevels, 0, l);
-            l.forEach(t -> {
-                List<String> ids = this.list().lrange(RedisKey.topicRetainList(t), 0, -1);
-                if (ids != null) {
-                    ids.forEach(retainId -> {
-                        Message<MqttPublishVariableHeader, MqttPublishPayload> m = mapToMessage(this.hash().hgetall(RedisKey.topicRemainMessage(t, Integer.parseInt(retainId))));
-                        if (m != null) r.add(m);
-                    });
-                }
+            topics = this.retainMatchCache.computeIfAbsent(Topics.join(topicLevels), filter -> {
+                List<List<String>> l = new ArrayList<>();
+                getMatchRetainMessages(topicLevels, 0, l);
+                return l;
             });
         } else {
-            List<String> ids = this.list().lrange(RedisKey.topicRetainList(topicLevels), 0, -1);
-            if (ids != null) {
-                ids.forEach(retainId -> {
-                    Message<MqttPublishVariableHeader, MqttPublishPayload> m = mapToMessage(this.hash().hgetall(RedisKey.topicRemainMessage(topicLevels, Integer.parseInt(retainId))));
-                    if (m != null) r.add(m);
-                });
+            topics = Collections.singletonList(topicLevels);
+        }
+
+        // fetch retain messages in batches, all reads in a batch are pipelined
+        // cached messages are passed to the consumer immediately, others as soon as their batch arrives
+        List<String> batch = new ArrayList<>();
+        List<RedisFuture<Map<String, String>>> futures = new ArrayList<>();
+        for (List<String> t : topics) {
+            String topic = Topics.join(t);
+            Optional<Message<MqttPublishVariableHeader, MqttPublishPayload>> cached = this.retainCache.get(topic);
+            if (cached != null) {
+                cached.ifPresent(consumer);
+                continue;
+            }
+            batch.add(topic);
+            futures.add(this.hashAsync().hgetall(RedisKey.topicRetainMessage(t)));
+            if (futures.size() >= this.retainFetchSize) {
+                consumeRetainMessages(batch, futures, consumer);
             }
         }
+        consumeRetainMessages(batch, futures, consumer);
+    }
 
-        return r;
+    /**
+     * Wait for the batch of retain messages, cache them and pass them to the consumer in order
+     * The batch will be cleared
+     *
+     * @param batch    Topic names of the batch
+     * @param futures  Redis Futures of the batch
+     * @param consumer Retain Message Consumer
+     */
+    @SuppressWarnings("unchecked")
+    private void consumeRetainMessages(List<String> batch, List<RedisFuture<Map<String, String>>> futures, Consumer<Message<MqttPublishVariableHeader, MqttPublishPayload>> consumer) {
+        for (int i = 0; i < futures.size(); i++) {
+            Optional<Message<MqttPublishVariableHeader, MqttPublishPayload>> m = Optional.ofNullable(mapToMessage(await(futures.get(i))));
+            this.retainCache.put(batch.get(i), m);
+            m.ifPresent(consumer);
+        }
+        batch.clear();
+        futures.clear();
     }
 }
@@ -16,7 +16,9 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.github.longkerdandy.mithqtt.storage.redis.util.JSONs.ObjectMapper;
@@ -35,7 +37,9 @@ public class RedisSyncSingleStorageImplTest {
         map.put("redis.address", "localhost");
         map.put("mqtt.inflight.queue.size", 3);
         map.put("mqtt.qos2.queue.size", 3);
-        map.put("mqtt.retain.queue.size", 3);
+        map.put("mqtt.retain.cache.size", 100);
+        map.put("mqtt.retain.cache.ttl", 1000);
+        map.put("mqtt.retain.fetch.size", 2);
         MapConfiguration config = new MapConfiguration(map);
 
         redis = new RedisSyncSingleStorageImpl();
@@ -224,6 +228,24 @@ public class RedisSyncSingleStorageImplTest {
         assert redis.getInFlightMessage("client1", 10002) == null;
         assert redis.getInFlightMessage("client1", 10003) == null;
         assert redis.getAllInFlightMessages("client1").size() == 0;
+
+        // later commands are applied after the asynchronous add
+        redis.addInFlightMessageAsync("client1", 10004, pubrel, true);
+        pubrel = redis.getAllInFlightMessages("client1").get(0);
+        assert pubrel.variableHeader().packetId() == 10003;
+        redis.removeInFlightMessage("client1", 10004);
+        assert redis.getAllInFlightMessages("client1").size() == 0;
+
+        // the message dropped by the length limit is deleted once the asynchronous add completes
+        redis.addInFlightMessageAsync("client1", 10005, pubrel, true);
+        redis.addInFlightMessageAsync("client1", 10006, pubrel, true);
+        redis.addInFlightMessageAsync("client1", 10007, pubrel, true);
+        redis.addInFlightMessageAsync("client1", 10008, pubrel, true, 60).join();
+        assert redis.getAllInFlightMessages("client1").size() == 3;
+        assert redis.key().exists(RedisKey.inFlightMessage("client1", 10005)) == 0;
+        assert redis.key().ttl(RedisKey.inFlightMessage("client1", 10008)) > 0;
+        assert redis.key().ttl(RedisKey.inFlightMessage("client1", 10007)) == -1;
+        redis.removeAllInFlightMessage("client1");
     }
 
     @Test
@@ -310,6 +332,118 @@ public class RedisSyncSingleStorageImplTest {
         assert result.get("client3") == MqttQoS.AT_LEAST_ONCE;
     }
 
+    @Test
+    public void matchSharedSubscriptionTest() {
+        redis.updateSubscription("client1", Topics.sanitize("$share/g1/a/+"), MqttQoS.AT_LEAST_ONCE);
+        redis.updateSubscription("client2", Topics.sanitize("$share/g1/a/+"), MqttQoS.AT_LEAST_ONCE);
+        redis.updateSubscription("client3", Topics.sanitize("$share/g2/a/b"), MqttQoS.EXACTLY_ONCE);
+        redis.updateSubscription("client4", Topics.sanitize("a/#"), MqttQoS.AT_MOST_ONCE);
+
+        // one member of each group, round-robin
+        Map<String, MqttQoS> result = new HashMap<>();
+        redis.getMatchSubscriptions(Topics.sanitizeTopicName("a/b"), result);
+        assert result.size() == 3;
+        assert result.get("client3") == MqttQoS.EXACTLY_ONCE;
+        assert result.get("client4") == MqttQoS.AT_MOST_ONCE;
+        String first = result.containsKey("client1") ? "client1" : "client2";
+        result.clear();
+        redis.getMatchSubscriptions(Topics.sanitizeTopicName("a/b"), result);
+        assert result.size() == 3;
+        assert !result.containsKey(first);
+
+        // members connected to the broker are preferred
+        redis.updateConnectedNode("client1", "node1", 30);
+        redis.updateConnectedNode("client2", "node2", 30);
+        for (int i = 0; i < 3; i++) {
+            result.clear();
+            redis.getMatchSubscriptions(Topics.sanitizeTopicName("a/c"), "node2", result);
+            assert result.size() == 2;
+            assert result.get("client2") == MqttQoS.AT_LEAST_ONCE;
+        }
+
+        redis.removeSubscription("client1", Topics.sanitize("$share/g1/a/+"));
+        redis.removeAllSubscriptions("client2");
+        assert redis.getClientSubscriptions("client1").isEmpty();
+        result.clear();
+        redis.getMatchSubscriptions(Topics.sanitizeTopicName("a/c"), result);
+        assert result.size() == 1;
+        assert result.containsKey("client4");
+    }
+
+    @Test
+    public void removeAllSessionStateTest() {
+        redis.updateSessionExist("client1", false);
+        redis.updateSubscription("client1", Topics.sanitizeTopicFilter("a/+/e"), MqttQoS.AT_MOST_ONCE);
+        redis.updateSubscription("client1", Topics.sanitizeTopicFilter("a/#"), MqttQoS.AT_LEAST_ONCE);
+        redis.updateSubscription("client1", Topics.sanitizeTopicName("a/c/e"), MqttQoS.EXACTLY_ONCE);
+        redis.updateSubscription("client2", Topics.sanitizeTopicFilter("a/+/e"), MqttQoS.AT_LEAST_ONCE);
+        redis.addQoS2MessageId("client1", 10000);
+        for (int i = 10000; i < 10003; i++) {
+            redis.addInFlightMessage("client1", i, new Message<>(
+                    new MqttFixedHeader(MqttMessageType.PUBREL, false, MqttQoS.AT_LEAST_ONCE, false, 0),
+                    new MqttAdditionalHeader(MqttVersion.MQTT_3_1_1, "client1", "user1", "broker1"),
+                    MqttPacketIdVariableHeader.from(i),
+                    null), false);
+        }
+
+        redis.removeAllSessionState("client1");
+
+        assert redis.getSessionExist("client1") == -1;
+        assert redis.getClientSubscriptions("client1").isEmpty();
+        assert !redis.getTopicSubscriptions(Topics.sanitizeTopicFilter("a/+/e")).containsKey("client1");
+        assert !redis.getTopicSubscriptions(Topics.sanitizeTopicFilter("a/#")).containsKey("client1");
+        assert !redis.getTopicSubscriptions(Topics.sanitizeTopicName("a/c/e")).containsKey("client1");
+        assert !redis.removeQoS2MessageId("client1", 10000);
+        assert redis.getAllInFlightMessages("client1").isEmpty();
+        assert redis.getInFlightMessage("client1", 10001) == null;
+
+        // topic filter tree only keeps the routes of client2
+        assert redis.hash().hget(RedisKey.topicFilterChild(null), "a").equals("1");
+        assert redis.hash().hget(RedisKey.topicFilterChild(Topics.sanitizeTopicFilter("a/#").subList(0, 1)), "#") == null;
+
+        Map<String, MqttQoS> result = new HashMap<>();
+        redis.getMatchSubscriptions(Topics.sanitizeTopicName("a/c/e"), result);
+        assert result.size() == 1;
+        assert result.get("client2") == MqttQoS.AT_LEAST_ONCE;
+    }
+
+    @Test
+    public void sweepSessionsTest() {
+        // expired session
+        redis.updateSubscription("client1", Topics.sanitizeTopicFilter("a/+/e"), MqttQoS.AT_LEAST_ONCE);
+        redis.getNextPacketId("client1");
+        // disconnected session without expiry
+        redis.updateSessionExist("client2", false);
+        redis.updateSubscription("client2", Topics.sanitizeTopicName("a/c/e"), MqttQoS.AT_LEAST_ONCE);
+        // connected session
+        redis.updateSessionExist("client3", false);
+        redis.updateConnectedNode("client3", "node1", 30);
+        redis.updateSubscription("client3", Topics.sanitizeTopicName("a/c/e"), MqttQoS.AT_LEAST_ONCE);
+
+        int removed = 0;
+        for (int i = 0; i < 10; i++) {
+            removed += redis.sweepSessions(100, 60);
+        }
+
+        assert removed == 1;
+        assert redis.getClientSubscriptions("client1").isEmpty();
+        assert !redis.getTopicSubscriptions(Topics.sanitizeTopicFilter("a/+/e")).containsKey("client1");
+        assert redis.key().exists(RedisKey.nextPacketId("client1")) == 0;
+        assert redis.key().ttl(RedisKey.session("client2")) > 0;
+        assert redis.getClientSubscriptions("client2").size() == 1;
+        assert redis.key().ttl(RedisKey.session("client3")) == -1;
+        assert redis.getClientSubscriptions("client3").size() == 1;
+    }
+
+    @Test
+    public void clientIdTest() {
+        assert RedisKey.clientId(RedisKey.session("client1")).equals("client1");
+        assert RedisKey.clientId(RedisKey.inFlightList("client:1")).equals("client:1");
+        assert RedisKey.clientId(RedisKey.inFlightMessage("client1", 100)).equals("client1");
+        assert RedisKey.clientId(RedisKey.subscription("client1")).equals("client1");
+        assert RedisKey.clientId("topic:n:a/b") == null;
+    }
+
     @Test
     public void retainTest() throws IOException {
         String json = "{\"menu\": {\n" +
@@ -331,7 +465,7 @@ public class RedisSyncSingleStorageImplTest {
                 new MqttPublishPayload(ObjectMapper.writeValueAsBytes(jn)));
 
         redis.addRetainMessage(Topics.sanitize("a/b/c/d"), publish);
-        publish = redis.getMatchRetainMessages(Topics.sanitize("a/b/c/d")).get(0);
+        publish = getMatchRetainMessages(Topics.sanitize("a/b/c/d")).get(0);
 
         assert publish.fixedHeader().messageType() == MqttMessageType.PUBLISH;
         assert !publish.fixedHeader().dup();
@@ -351,17 +485,23 @@ public class RedisSyncSingleStorageImplTest {
         assert jn.get("menu").get("popup").get("menuItem").get(2).get("onclick").textValue().equals("CloseDoc()");
 
         redis.removeAllRetainMessage(Topics.sanitize("a/b/c/d"));
-        assert redis.getMatchRetainMessages(Topics.sanitize("a/b/c/d")).size() == 0;
+        assert getMatchRetainMessages(Topics.sanitize("a/b/c/d")).size() == 0;
 
         redis.addRetainMessage(Topics.sanitize("a/b/c/d"), publish);
         redis.addRetainMessage(Topics.sanitize("a/b/c/d"), publish);
 
-        assert redis.getMatchRetainMessages(Topics.sanitize("a/b/c/d")).size() == 2;
+        assert getMatchRetainMessages(Topics.sanitize("a/b/c/d")).size() == 1;
+        assert getMatchRetainMessages(Topics.sanitize("a/b/c/+")).size() == 1;
 
         redis.addRetainMessage(Topics.sanitize("a/b/c/d"), publish);
         redis.addRetainMessage(Topics.sanitize("a/b/c/d"), publish);
 
-        assert redis.getMatchRetainMessages(Topics.sanitize("a/b/c/d")).size() == 3;
+        assert getMatchRetainMessages(Topics.sanitize("a/b/c/d")).size() == 1;
+        assert getMatchRetainMessages(Topics.sanitize("a/b/#")).size() == 1;
+
+        redis.removeAllRetainMessage(Topics.sanitize("a/b/c/d"));
+        assert getMatchRetainMessages(Topics.sanitize("a/b/c/d")).size() == 0;
+        assert getMatchRetainMessages(Topics.sanitize("a/b/#")).size() == 0;
     }
 
     @Test
@@ -398,16 +538,22 @@ public class RedisSyncSingleStorageImplTest {
         redis.addRetainMessage(Topics.sanitize("foo/moo"), p4);
         redis.addRetainMessage(Topics.sanitize("foo/moo/zoo"), p5);
 
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/+")).size() == 2;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/bar/+")).size() == 1;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/#")).size() == 5;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/bar/#")).size() == 3;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/bar/zoo/#")).size() == 2;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/bar/zoo/rar/#")).size() == 1;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/bar/zoo/+")).size() == 1;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/zoo/#")).size() == 0;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/+/#")).size() == 5;
-        assert redis.getMatchRetainMessages(Topics.sanitize("foo/+/zoo/#")).size() == 3;
-        assert redis.getMatchRetainMessages(Topics.sanitize("#")).size() == 5;
+        assert getMatchRetainMessages(Topics.sanitize("foo/+")).size() == 2;
+        assert getMatchRetainMessages(Topics.sanitize("foo/bar/+")).size() == 1;
+        assert getMatchRetainMessages(Topics.sanitize("foo/#")).size() == 5;
+        assert getMatchRetainMessages(Topics.sanitize("foo/bar/#")).size() == 3;
+        assert getMatchRetainMessages(Topics.sanitize("foo/bar/zoo/#")).size() == 2;
+        assert getMatchRetainMessages(Topics.sanitize("foo/bar/zoo/rar/#")).size() == 1;
+        assert getMatchRetainMessages(Topics.sanitize("foo/bar/zoo/+")).size() == 1;
+        assert getMatchRetainMessages(Topics.sanitize("foo/zoo/#")).size() == 0;
+        assert getMatchRetainMessages(Topics.sanitize("foo/+/#")).size() == 5;
+        assert getMatchRetainMessages(Topics.sanitize("foo/+/zoo/#")).size() == 3;
+        assert getMatchRetainMessages(Topics.sanitize("#")).size() == 5;
+    }
+
+    private List<Message<MqttPublishVariableHeader, MqttPublishPayload>> getMatchRetainMessages(List<String> topicLevels) {
+        List<Message<MqttPublishVariableHeader, MqttPublishPayload>> list = new ArrayList<>();
+        redis.getMatchRetainMessages(topicLevels, list::add);
+        return list;
     }
 }